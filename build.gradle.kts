@@ -1,8 +1,10 @@
+import java.net.ServerSocket
 import java.util.*
 
 plugins {
     id("java")
     id("jacoco")
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 java {
@@ -27,6 +29,11 @@ repositories {
     mavenCentral()
 }
 
+// Training run of the aotCache task in src/aot/java, kept out of the jar and the native image
+val aot by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
 dependencies {
     implementation("com.dslplatform:dsl-json:2.0.2")
     annotationProcessor("com.dslplatform:dsl-json:2.0.2")
@@ -40,6 +47,32 @@ dependencies {
     testImplementation("ch.qos.logback:logback-classic:1.5.23")
 }
 
+// Benchmarks in src/jmh/java: ./gradlew jmh (filter with -PjmhIncludes=<regex>, more iterations with -PjmhIterations=<n>)
+// The mode comes from the benchmarks, throughput unless annotated otherwise
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(3)
+    iterations.set(providers.gradleProperty("jmhIterations").map { it.toInt() }.orElse(5))
+    fork.set(1)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.set(listOf(it)) }
+    // StartupBenchmark starts the jar, with and without AOT cache, and the native binary of build-native-image.sh,
+    // as new processes
+    jvmArgsAppend.addAll(tasks.jar.flatMap { it.archiveFile }.map {
+        listOf(
+            "-Dstartup.jar=${it.asFile.absolutePath}",
+            "-Dstartup.aot=${it.asFile.resolveSibling(it.asFile.nameWithoutExtension + ".aot").absolutePath}",
+            "-Dstartup.native=${layout.projectDirectory.file("dist/hostup-dns-client").asFile.absolutePath}"
+        )
+    })
+}
+
+tasks.named("jmh") {
+    dependsOn(tasks.jar)
+    mustRunAfter("aotCache")
+}
+
 tasks.test {
     useJUnitPlatform()
     finalizedBy(tasks.jacocoTestReport)
@@ -104,6 +137,38 @@ tasks.jar {
     isReproducibleFileOrder = true
 }
 
+// JDK AOT cache for the jar, written next to it: ./gradlew aotCache
+// Run with: java -XX:AOTCache=hostup-dns-client-<version>.aot -jar hostup-dns-client-<version>.jar
+val aotCache by tasks.registering(Exec::class) {
+    group = "build"
+    description = "Creates a JDK AOT cache for the jar from a training run of a Lego renewal against a stub API."
+    dependsOn(tasks.jar, tasks.named(aot.classesTaskName))
+    val jarFile = tasks.jar.flatMap { it.archiveFile }
+    val trainingClasses = aot.output.classesDirs
+    val aotFile = jarFile.map { it.asFile.resolveSibling(it.asFile.nameWithoutExtension + ".aot") }
+    val trainingCacheDir = layout.buildDirectory.dir("tmp/aotTraining")
+    val launcher = javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(25)) }
+    inputs.file(jarFile)
+    inputs.files(trainingClasses)
+    outputs.file(aotFile)
+    doFirst {
+        delete(trainingCacheDir)
+        val port = ServerSocket(0).use { it.localPort }
+        // The cache is only used with the same class path, so the jar is referred to like in the documented command.
+        // The training classes come after it, classes from directories are not stored in the cache.
+        workingDir(jarFile.get().asFile.parentFile)
+        environment("HOSTUP_DNS_CLIENT_API_KEY", "training-api-key")
+        environment("HOSTUP_DNS_CLIENT_BASE_URI", "http://127.0.0.1:$port/")
+        environment("HOSTUP_DNS_CLIENT_CACHE_DIR", trainingCacheDir.get().asFile.absolutePath)
+        commandLine(
+            launcher.get().executablePath.asFile.absolutePath,
+            "-XX:AOTCacheOutput=${aotFile.get().name}",
+            "-cp", (listOf(jarFile.get().asFile.name) + trainingClasses.files.map { it.absolutePath }).joinToString(File.pathSeparator),
+            "cloud.marton.hostup_dns_client.AotTraining"
+        )
+    }
+}
+
 // Simple patch bump when run explicitly: ./gradlew bumpPatchVersion
 val bumpPatchVersion by tasks.registering {
     group = "versioning"
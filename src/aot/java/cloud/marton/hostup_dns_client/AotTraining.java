@@ -0,0 +1,73 @@
+package cloud.marton.hostup_dns_client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Training run for the JDK AOT cache of the jar, see the {@code aotCache} task in {@code build.gradle.kts}.
+ * <p>
+ * Serves a stub of the API on the port of {@code HOSTUP_DNS_CLIENT_BASE_URI} and runs the commands of a Lego renewal
+ * through {@link Main}, so the classes they load and link end up in the cache. The stub speaks plain HTTP, so the TLS
+ * classes of a real run are not part of the training.
+ */
+final class AotTraining {
+
+    private static final String DOMAIN = "_acme-challenge.training.example.org.";
+    private static final String VALUE = "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI";
+    private static final String ZONES_BODY = """
+            {"success":true,"requestId":"training-request-id","data":{"zones":[\
+            {"server_id":1,"account_id":1,"domain_id":10000,"domain":"example.org"}]}}""";
+    private static final String RECORDS_BODY = """
+            {"success":true,"requestId":"training-request-id","data":{"zone":{"id":10000,"domain":"example.org","records":[\
+            {"id":30000000,"type":"TXT","name":"_acme-challenge.training.example.org","value":"\\"%s\\"","ttl":300,\
+            "status":"active","created":"2025-12-29T12:29:09.458Z"}]}}}""".formatted(VALUE);
+    private static final String SET_RECORD_BODY = """
+            {"success":true,"requestId":"training-request-id","data":{"record":{"id":30000000,"type":"TXT",\
+            "name":"_acme-challenge.training.example.org","value":"%s","ttl":300,"status":"pending"}}}""".formatted(VALUE);
+    private static final String DELETED_BODY = """
+            {"success":true,"requestId":"training-request-id","data":{"message":"DNS record deleted successfully"}}""";
+
+    private AotTraining() {
+    }
+
+    static void main(String[] args) throws IOException {
+        URI baseUri = URI.create(System.getenv("HOSTUP_DNS_CLIENT_BASE_URI"));
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), baseUri.getPort()), 0);
+        server.createContext("/", AotTraining::handle);
+        server.start();
+        try {
+            Main.main(new String[]{"--list-zones"});
+            Main.main(new String[]{"--list-records", "10000"});
+            Main.main(new String[]{"present", DOMAIN, VALUE});
+            Main.main(new String[]{"cleanup", DOMAIN, VALUE});
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (InputStream request = exchange.getRequestBody()) {
+            request.readAllBytes();
+        }
+        String path = exchange.getRequestURI().getPath();
+        String body = switch (exchange.getRequestMethod()) {
+            case "POST" -> SET_RECORD_BODY;
+            case "DELETE" -> DELETED_BODY;
+            default -> path.endsWith("/records") ? RECORDS_BODY : ZONES_BODY;
+        };
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.exceptions.CliParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * The work done before a request is sent: parsing the command line and building the request body.
+ */
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+
+    private final HostupApiClient client = new HostupApiClient("benchmark-api-key", URI.create(CliParser.HOSTUP_DNS_CLIENT_BASE_URI));
+    private final CliParser cliParser = new CliParser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "benchmark-api-key")::get);
+
+    private final String[] addRecordArgs = {
+            "-a", "10111", "TXT", "_acme-challenge.foo.example.org", "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI", "300"
+    };
+
+    private final String[] legoArgs = {
+            "present", "_acme-challenge.foo.example.org.", "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI"
+    };
+
+    @Benchmark
+    public byte[] setRecordBody() {
+        return client.setRecordBody("TXT", "_acme-challenge.foo.example.org", "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI", 300);
+    }
+
+    @Benchmark
+    public CliParser.CliOptions parseAddRecordArgs() throws CliParserException {
+        return cliParser.parseArgs(addRecordArgs);
+    }
+
+    @Benchmark
+    public CliParser.CliOptions parseLegoArgs() throws CliParserException {
+        return cliParser.parseArgs(legoArgs);
+    }
+}
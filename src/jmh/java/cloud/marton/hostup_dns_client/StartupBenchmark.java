@@ -0,0 +1,166 @@
+package cloud.marton.hostup_dns_client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time from starting the client process until the stub API receives its first request, or until the process exits
+ * for {@code --version}. Each invocation starts a new process, of the jar, of the jar with its AOT cache, or of the
+ * native binary.
+ * <p>
+ * The Gradle build passes the jar as {@code -Dstartup.jar}, the AOT cache of {@code ./gradlew aotCache} as
+ * {@code -Dstartup.aot} and the native binary of {@code ./build-native-image.sh} as {@code -Dstartup.native}. Runs
+ * whose file is missing fail, the others are still reported.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final String ZONES_BODY = """
+            {"success":true,"requestId":"benchmark-request-id","data":{"zones":[\
+            {"server_id":1,"account_id":1,"domain_id":10000,"domain":"marton.cloud"}]}}""";
+    private static final String SET_RECORD_BODY = """
+            {"success":true,"requestId":"benchmark-request-id","data":{"record":{"id":30000000,"type":"TXT",\
+            "name":"_acme-challenge.foo.marton.cloud","value":"MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI",\
+            "ttl":300,"status":"pending"}}}""";
+
+    @Param({"jar", "jar-aot", "native"})
+    String launcher;
+
+    @Param({"version", "list-zones", "lego"})
+    String command;
+
+    private HttpServer server;
+    private Path cacheDir;
+    private volatile CompletableFuture<Void> firstRequest;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void startStubApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        cacheDir = Files.createTempDirectory("hostup-dns-client-startup");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStubApi() throws IOException {
+        server.stop(0);
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        firstRequest = new CompletableFuture<>();
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws InterruptedException {
+        if (process != null && !process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+        process = null;
+    }
+
+    @Benchmark
+    public void timeToFirstRequest() throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(command())
+                // The jar is referred to by its file name, like when the AOT cache was created
+                .directory(Path.of(requiredFile("startup.jar")).getParent().toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        processBuilder.environment().put("HOSTUP_DNS_CLIENT_API_KEY", "benchmark-api-key");
+        processBuilder.environment().put("HOSTUP_DNS_CLIENT_BASE_URI", "http://127.0.0.1:%d/".formatted(server.getAddress().getPort()));
+        processBuilder.environment().put("HOSTUP_DNS_CLIENT_CACHE_DIR", cacheDir.toString());
+        // Every lego run starts cold, like the first run after the zone cache expired
+        processBuilder.environment().put("HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL", "0");
+        process = processBuilder.start();
+        if ("version".equals(command)) {
+            process.waitFor();
+        } else {
+            firstRequest.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private List<String> command() {
+        List<String> command = new ArrayList<>();
+        switch (launcher) {
+            case "jar", "jar-aot" -> {
+                command.add(ProcessHandle.current().info().command().orElse("java"));
+                if ("jar-aot".equals(launcher)) {
+                    // Fail instead of silently starting without the cache when it does not match the jar
+                    command.add("-XX:AOTMode=on");
+                    command.add("-XX:AOTCache=" + requiredFile("startup.aot"));
+                }
+                command.add("-jar");
+                command.add(Path.of(requiredFile("startup.jar")).getFileName().toString());
+            }
+            case "native" -> command.add(requiredFile("startup.native"));
+            default -> throw new IllegalArgumentException("Unknown launcher: " + launcher);
+        }
+        switch (this.command) {
+            case "version" -> command.add("--version");
+            case "list-zones" -> command.add("--list-zones");
+            case "lego" -> command.addAll(List.of("present", "_acme-challenge.foo.marton.cloud.", "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI"));
+            default -> throw new IllegalArgumentException("Unknown command: " + this.command);
+        }
+        return command;
+    }
+
+    private static String requiredFile(String property) {
+        String file = System.getProperty(property);
+        if (file == null || !Files.isRegularFile(Path.of(file))) {
+            throw new IllegalStateException("No file at -D%s=%s".formatted(property, file));
+        }
+        return file;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        firstRequest.complete(null);
+        try (InputStream request = exchange.getRequestBody()) {
+            request.readAllBytes();
+        }
+        byte[] body = ("POST".equals(exchange.getRequestMethod()) ? SET_RECORD_BODY : ZONES_BODY).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package cloud.marton.hostup_dns_client.json;
+
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ErrorResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import com.dslplatform.json.DslJson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decoding of the API responses with the converters registered by {@link DslJsonFactory}.
+ * The payloads are shaped like the real API responses, see {@code src/test/resources/hostupApiResponses}.
+ */
+public class JsonDecodeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class DnsRecordsPayload {
+
+        @Param({"10", "1000", "100000"})
+        int records;
+
+        DslJson<Object> dslJson;
+        byte[] body;
+
+        @Setup
+        public void setup() {
+            dslJson = DslJsonFactory.create();
+            StringBuilder json = new StringBuilder("""
+                    {"success":true,"timestamp":"2025-12-29T12:29:09.458Z","requestId":"benchmark-request-id",\
+                    "data":{"zone":{"id":10000,"domain":"marton.cloud","records":[""");
+            for (int i = 0; i < records; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("""
+                        {"id":%d,"type":"TXT","name":"_acme-challenge.host%d.marton.cloud",\
+                        "value":"\\"MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI\\"","ttl":300,\
+                        "status":"active","created":"2025-12-29T12:29:09.458Z"}""".formatted(30000000 + i, i));
+            }
+            json.append("]}}}");
+            body = json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ZonesPayload {
+
+        @Param({"10000"})
+        int zones;
+
+        DslJson<Object> dslJson;
+        byte[] body;
+
+        @Setup
+        public void setup() {
+            dslJson = DslJsonFactory.create();
+            StringBuilder json = new StringBuilder("""
+                    {"success":true,"requestId":"benchmark-request-id","data":{"zones":[""");
+            for (int i = 0; i < zones; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("""
+                        {"server_id":1,"account_id":2,"domain_id":%d,"domain":"domain%d.example.org"}"""
+                        .formatted(10000 + i, i));
+            }
+            json.append("]}}");
+            body = json.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ErrorPayload {
+
+        DslJson<Object> dslJson;
+        byte[] body;
+
+        @Setup
+        public void setup() {
+            dslJson = DslJsonFactory.create();
+            body = """
+                    {
+                      "error": "Not Found",
+                      "message": "dns.zone_not_found not found",
+                      "code": "NOT_FOUND",
+                      "timestamp": "2026-01-04T09:09:03.358Z",
+                      "requestId": "benchmark-request-id"
+                    }
+                    """.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public DnsRecordsResponse decodeDnsRecords(DnsRecordsPayload payload) throws IOException {
+        return payload.dslJson.deserialize(DnsRecordsResponse.class, payload.body, payload.body.length);
+    }
+
+    @Benchmark
+    public ZonesResponse decodeZones(ZonesPayload payload) throws IOException {
+        return payload.dslJson.deserialize(ZonesResponse.class, payload.body, payload.body.length);
+    }
+
+    @Benchmark
+    public ErrorResponse decodeError(ErrorPayload payload) throws IOException {
+        return payload.dslJson.deserialize(ErrorResponse.class, payload.body, payload.body.length);
+    }
+}
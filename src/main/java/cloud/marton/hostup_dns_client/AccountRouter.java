@@ -0,0 +1,176 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
+import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * Finds the Hostup account that owns a zone, when zones are spread across several accounts.
+ * <p>
+ * Each account has its own long-lived {@link HostupApiClient}, so each has its own rate limit and HTTP 429 backoff
+ * and a busy account does not slow down the others. The zones of all accounts are fetched concurrently on the first
+ * lookup, or read from the zone cache of each account. When a name is not found in cached zones, the zones are
+ * fetched once more, in case a zone was added or moved since.
+ */
+public class AccountRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(AccountRouter.class.getName());
+
+    private final List<Account> accounts;
+    private ZoneIndex<Route> zones;
+    private Map<Integer, Account> zoneAccounts;
+    private List<Failure> failures = List.of();
+    private boolean fromCache;
+
+    /**
+     * @param accounts in order of precedence, when several accounts have a zone with the same domain
+     */
+    public AccountRouter(List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            throw new IllegalArgumentException("At least one account is required");
+        }
+        this.accounts = List.copyOf(accounts);
+    }
+
+    /**
+     * @param zoneCache domain to zone ID of this account, see {@link ZoneCache#forAccount}
+     */
+    public record Account(String apiKey, HostupApiClient client, ZoneCache zoneCache) {
+        public Account {
+            Objects.requireNonNull(apiKey, "API key must not be null");
+            Objects.requireNonNull(client, "client must not be null");
+            Objects.requireNonNull(zoneCache, "zone cache must not be null");
+        }
+
+        @Override
+        public String toString() {
+            return "Account[client=" + client + "]";
+        }
+    }
+
+    /**
+     * @param zone the lowercased domain of the zone
+     */
+    public record Route(Account account, int zoneId, String zone) {
+    }
+
+    /**
+     * The zones of an account could not be fetched
+     *
+     * @param apiResponse the unsuccessful response, null when none was received
+     * @param error       why no response was received, null when there was one
+     */
+    public record Failure(Account account, ApiResponse apiResponse, Exception error) {
+    }
+
+    public List<Account> accounts() {
+        return accounts;
+    }
+
+    /**
+     * @param name a domain name, e.g. {@code _acme-challenge.www.example.org.}
+     * @return the account and zone of the longest zone domain that {@code name} is or is below
+     */
+    public synchronized Optional<Route> route(String name) throws InterruptedException {
+        String normalized = DomainNames.normalize(name);
+        if (zones == null) {
+            load(true);
+        }
+        Optional<Route> route = zones.get(normalized);
+        if (route.isEmpty() && fromCache) {
+            LOGGER.info(() -> "No cached zone for %s, fetching the zones of all accounts".formatted(normalized));
+            load(false);
+            route = zones.get(normalized);
+        }
+        return route;
+    }
+
+    /**
+     * @return the account that has the zone
+     */
+    public synchronized Optional<Account> account(int zoneId) throws InterruptedException {
+        if (zones == null) {
+            load(true);
+        }
+        if (!zoneAccounts.containsKey(zoneId) && fromCache) {
+            LOGGER.info(() -> "No cached zone %d, fetching the zones of all accounts".formatted(zoneId));
+            load(false);
+        }
+        return Optional.ofNullable(zoneAccounts.get(zoneId));
+    }
+
+    /**
+     * @return the accounts whose zones could not be fetched in the last lookup, their zones are unknown
+     */
+    public synchronized List<Failure> failures() {
+        return failures;
+    }
+
+    /**
+     * An account whose zones cannot be fetched is left out, so one revoked key or failing account does not stop the
+     * routing to the others
+     */
+    private void load(boolean useCache) throws InterruptedException {
+        List<Map<String, Integer>> zoneIds = new ArrayList<>();
+        List<CompletableFuture<ApiResponse>> fetches = new ArrayList<>();
+        for (Account account : accounts) {
+            Optional<Map<String, Integer>> cached = useCache ? account.zoneCache().read() : Optional.empty();
+            zoneIds.add(cached.orElse(null));
+            fetches.add(cached.isPresent() ? null : account.client().getZonesAsync());
+        }
+        fromCache = useCache && fetches.stream().anyMatch(Objects::isNull);
+
+        List<Failure> loadFailures = new ArrayList<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            if (fetches.get(i) == null) {
+                continue;
+            }
+            int account = i + 1;
+            ApiResponse apiResponse;
+            try {
+                apiResponse = HostupApiClient.await(fetches.get(i));
+            } catch (IOException | RateLimitException | JsonMappingException e) {
+                LOGGER.warning(() -> "Could not get the zones of account %d: %s".formatted(account, e.getMessage()));
+                loadFailures.add(new Failure(accounts.get(i), null, e));
+                continue;
+            }
+            if (!apiResponse.success()) {
+                LOGGER.warning(() -> "Could not get the zones of account %d, HTTP %d".formatted(account, apiResponse.httpStatus()));
+                loadFailures.add(new Failure(accounts.get(i), apiResponse, null));
+                continue;
+            }
+            Map<String, Integer> fetched = ZoneIndex.zoneIds(((ZonesResponse) apiResponse.parsedResponse()).data().zones());
+            accounts.get(i).zoneCache().write(fetched);
+            zoneIds.set(i, fetched);
+        }
+
+        ZoneIndex.Builder<Route> routes = new ZoneIndex.Builder<>();
+        Map<Integer, Account> byZoneId = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            if (zoneIds.get(i) == null) {
+                continue;
+            }
+            zoneIds.get(i).forEach((domain, zoneId) -> {
+                routes.put(domain, new Route(account, zoneId, domain));
+                byZoneId.putIfAbsent(zoneId, account);
+            });
+        }
+        zones = routes.build();
+        zoneAccounts = byZoneId;
+        failures = List.copyOf(loadFailures);
+    }
+}
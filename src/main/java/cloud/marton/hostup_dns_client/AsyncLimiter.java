@@ -0,0 +1,59 @@
+package cloud.marton.hostup_dns_client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous operations in flight. {@link #submit(Supplier)} blocks the submitting thread
+ * while the limit is reached, so a producer reading a long list of operations never gets ahead of the API.
+ */
+final class AsyncLimiter {
+
+    private final int limit;
+    private final Semaphore permits;
+
+    AsyncLimiter(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1, was " + limit);
+        }
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+    }
+
+    /**
+     * Starts {@code operation} as soon as fewer than {@code limit} operations are in flight
+     *
+     * @return the future of the operation, completing after its permit has been released
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) throws InterruptedException {
+        return submit(operation, (result, throwable) -> {
+        });
+    }
+
+    /**
+     * Like {@link #submit(Supplier)}, with {@code callback} run when the operation completes. The permit is released
+     * only after the callback has returned, so {@link #awaitAll()} also waits for every callback, and what the
+     * callbacks recorded is visible to its caller.
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation, BiConsumer<? super T, ? super Throwable> callback) throws InterruptedException {
+        permits.acquire();
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return future.whenComplete(callback).whenComplete((ignored, throwable) -> permits.release());
+    }
+
+    /**
+     * Blocks until every submitted operation and its callback has completed
+     */
+    void awaitAll() throws InterruptedException {
+        permits.acquire(limit);
+        permits.release(limit);
+    }
+}
@@ -0,0 +1,242 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.exceptions.ApiException;
+import cloud.marton.hostup_dns_client.json.DslJsonFactory;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.BatchOperation;
+import cloud.marton.hostup_dns_client.model.DeleteDnsRecordResponse;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ErrorResponse;
+import cloud.marton.hostup_dns_client.model.SetRecordResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import com.dslplatform.json.DslJson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the operations of a {@code --batch} file concurrently over one {@link HostupApiClient}.
+ * <p>
+ * Every non-blank line that does not start with {@code #} is one operation, either as words
+ * (values with spaces in double quotes) or as a JSON object:
+ * <pre>
+ * add &lt;zoneId&gt; &lt;type&gt; &lt;domain&gt; &lt;value&gt; &lt;ttl&gt;
+ * delete &lt;zoneId&gt; &lt;recordId&gt;
+ * list &lt;zoneId&gt;
+ * list-zones
+ * {"op":"add","zoneId":10111,"type":"TXT","domain":"foo.example.org","value":"some text","ttl":300}
+ * </pre>
+ * One tab separated result line is printed per operation as soon as it completes:
+ * {@code <line number> <op> OK|FAILED <http status> <detail>}
+ */
+public class BatchRunner {
+
+    private final HostupApiClient client;
+    private final DslJson<Object> dslJson;
+    private final int parallelism;
+
+    public BatchRunner(HostupApiClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+        this.dslJson = DslJsonFactory.shared();
+    }
+
+    /**
+     * @return the number of operations that failed
+     */
+    public int run(BufferedReader input, PrintStream output) throws IOException, InterruptedException {
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        AtomicInteger failures = new AtomicInteger();
+        int lineNumber = 0;
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int currentLine = lineNumber;
+            BatchOperation operation;
+            try {
+                operation = parse(trimmed);
+            } catch (IllegalArgumentException | IOException e) {
+                failures.incrementAndGet();
+                output.println(resultLine(currentLine, "parse", false, 0, e.getMessage()));
+                continue;
+            }
+            limiter.submit(() -> execute(operation), (apiResponse, throwable) -> {
+                if (throwable != null) {
+                    failures.incrementAndGet();
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                    int httpStatus = cause instanceof ApiException apiException ? apiException.getHttpStatusCode() : 0;
+                    output.println(resultLine(currentLine, operation.op(), false, httpStatus, String.valueOf(cause.getMessage())));
+                } else {
+                    if (!apiResponse.success()) {
+                        failures.incrementAndGet();
+                    }
+                    output.println(resultLine(currentLine, operation.op(), apiResponse.success(), apiResponse.httpStatus(), detail(apiResponse)));
+                }
+            });
+        }
+        limiter.awaitAll();
+        return failures.get();
+    }
+
+    private CompletableFuture<ApiResponse> execute(BatchOperation operation) {
+        return switch (operation.op()) {
+            case "add" -> client.setDnsRecordAsync(
+                    operation.zoneId(),
+                    operation.type(),
+                    operation.domain(),
+                    operation.value(),
+                    operation.ttl());
+            case "delete" -> client.deleteDnsRecordAsync(operation.zoneId(), operation.recordId());
+            case "list" -> client.getDnsRecordsAsync(operation.zoneId());
+            case "list-zones" -> client.getZonesAsync();
+            default -> throw new IllegalStateException("Unknown operation: " + operation.op());
+        };
+    }
+
+    BatchOperation parse(String line) throws IOException {
+        BatchOperation operation;
+        if (line.startsWith("{")) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            operation = dslJson.deserialize(BatchOperation.class, bytes, bytes.length);
+            if (operation == null) {
+                throw new IllegalArgumentException("Empty operation");
+            }
+        } else {
+            List<String> words = split(line);
+            String op = words.getFirst();
+            operation = switch (op) {
+                case "add" -> {
+                    requireWords(words, 6);
+                    yield new BatchOperation(op, parseInt(words.get(1), "zoneId"), null, words.get(2), words.get(3), words.get(4), parseInt(words.get(5), "ttl"));
+                }
+                case "delete" -> {
+                    requireWords(words, 3);
+                    yield new BatchOperation(op, parseInt(words.get(1), "zoneId"), parseInt(words.get(2), "recordId"), null, null, null, null);
+                }
+                case "list" -> {
+                    requireWords(words, 2);
+                    yield new BatchOperation(op, parseInt(words.get(1), "zoneId"), null, null, null, null, null);
+                }
+                case "list-zones" -> {
+                    requireWords(words, 1);
+                    yield new BatchOperation(op, null, null, null, null, null, null);
+                }
+                default -> throw new IllegalArgumentException("Unknown operation: " + op);
+            };
+        }
+        validate(operation);
+        return operation;
+    }
+
+    private static void validate(BatchOperation operation) {
+        switch (operation.op()) {
+            case "add" -> {
+                requireField(operation.zoneId(), "zoneId");
+                requireField(operation.type(), "type");
+                requireField(operation.domain(), "domain");
+                requireField(operation.value(), "value");
+                requireField(operation.ttl(), "ttl");
+            }
+            case "delete" -> {
+                requireField(operation.zoneId(), "zoneId");
+                requireField(operation.recordId(), "recordId");
+            }
+            case "list" -> requireField(operation.zoneId(), "zoneId");
+            case "list-zones" -> {
+            }
+            default -> throw new IllegalArgumentException("Unknown operation: " + operation.op());
+        }
+    }
+
+    private static void requireField(Object value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value for " + name);
+        }
+    }
+
+    private static void requireWords(List<String> words, int count) {
+        if (words.size() != count) {
+            throw new IllegalArgumentException("%s expects %d arguments, got %d".formatted(words.getFirst(), count - 1, words.size() - 1));
+        }
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * Splits on whitespace. Double quotes group words, a backslash escapes the next character inside quotes.
+     */
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        boolean inWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    current.append(line.charAt(++i));
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(current.toString());
+                    current.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                current.append(c);
+                inWord = true;
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inWord) {
+            words.add(current.toString());
+        }
+        return words;
+    }
+
+    private static String detail(ApiResponse apiResponse) {
+        return switch (apiResponse.parsedResponse()) {
+            case SetRecordResponse response -> "recordId=" + response.data().record().id();
+            case DeleteDnsRecordResponse response -> response.data().message();
+            case DnsRecordsResponse response -> "records=" + response.data().zone().records().size();
+            case ZonesResponse response -> "zones=" + response.data().zones().size();
+            case ErrorResponse response -> response.code() + ": " + response.message();
+            default -> "";
+        };
+    }
+
+    private static String resultLine(int lineNumber, String op, boolean success, int httpStatus, String detail) {
+        return String.join("\t",
+                Integer.toString(lineNumber),
+                op,
+                success ? "OK" : "FAILED",
+                Integer.toString(httpStatus),
+                detail.replace('\n', ' ').replace('\t', ' '));
+    }
+}
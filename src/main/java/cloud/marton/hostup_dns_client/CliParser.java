@@ -3,11 +3,21 @@ package cloud.marton.hostup_dns_client;
 import cloud.marton.hostup_dns_client.exceptions.CliParserException;
 
 import java.net.URI;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 public class CliParser {
 
     public static final String HOSTUP_DNS_CLIENT_BASE_URI = "https://cloud.hostup.se/api/";
+    public static final int DEFAULT_ZONE_CACHE_TTL_SECONDS = 3600;
+    public static final int DEFAULT_RECORD_CACHE_TTL_SECONDS = 300;
+    public static final int DEFAULT_PARALLELISM = 8;
+    public static final int DEFAULT_RATE_LIMIT = 10;
 
     private static final String USAGE = """
             Usage: hostup-dns-client
@@ -18,15 +28,41 @@ public class CliParser {
                      domain:  e.g. "foo.example.org"
                      value:   e.g. "1.2.3.4" for A record, or "some text" for TXT record
                      ttl:     Time to live in seconds
+                 --apply <file>                      Make the zones in a desired state file contain exactly its records. SOA and NS records are never deleted
               -b --base-uri <uri>                    Base URI for the Hostup API (optional, defaults to %s)
+                 --batch <file|->                    Run the operations in a batch file, or stdin for "-". One result line is printed per operation
               -d --delete-domain <domain>            Removes *ALL* records (A, TXT, etc) for the matching domain. E.g. "foo.example.org"
               -D --delete-record <zoneId> <recordId> Remove a single record by its ID. Use --list-records to find the record ID.
-              -k --api-key <key>                     API key for authentication
+                 --dry-run                           Print the changes --apply would make, without making them
+                 --export-zone <zoneId|all>          Write a zone, or all zones, as RFC 1035 zone file to stdout or --output-file
+                 --fields <field,...>                Fields of --output ndjson or tsv. Records: id,type,name,value,ttl,status,created (defaults to id,type,name,value,ttl). Zones: id,name,server_id,account_id (defaults to id,name)
+                 --hedge                             Send a GET that is slower than 95%% of the recent ones a second time, and use the first response
+                 --import <file>                     Create the records of a zone file, or a CSV file (.csv) with name,type,value[,ttl], in --zone. Existing records are skipped
+              -k --api-key <key>                     API key for authentication. Repeat it for zones in several accounts, each operation is sent to the account with the zone
               -l --list-zones                        List all DNS zones associated with an account
+                 --max-in-flight <n>                 Max API requests in flight per account, the others wait in a queue without holding a thread (optional, defaults to %d)
+                 --metrics-file <file|->             On exit, write request metrics in Prometheus text format to a file, e.g. for the node_exporter textfile collector, or to stdout for "-"
+                 --output <json|ndjson|tsv>          Output of --list-zones and --list-records: the response body as received, or one line per zone or record, written while the response is received (optional, defaults to json)
+                 --output-file <file>                Write the output of --export-zone to a file instead of stdout
+                 --parallelism <n>                   Max concurrent API requests for --apply, --batch, --delete-domain, --export-zone and --import (optional, defaults to %d)
               -r --list-records <zoneId>             Get DNS records for a domain zone
+                 --resolver <ip[:port]>              DNS resolver used to find the nameservers for --wait-propagation (optional, defaults to the first nameserver in /etc/resolv.conf)
+                 --rate-limit <n>                    Max API requests per second, lowered automatically from the rate limit headers of the API (optional, defaults to %d)
               -v --version
+                 --wait-propagation <seconds>        After --add-record of a TXT record, wait until all authoritative nameservers of the zone serve it, at most the given time
+                 --zone <zoneId>                     Zone to --import into
               -h --help
             
+            Batch file format. One operation per line, values with spaces in double quotes, or one JSON object per line
+              add <zoneId> <type> <domain> <value> <ttl>
+              delete <zoneId> <recordId>
+              list <zoneId>
+              list-zones
+              {"op":"add","zoneId":10111,"type":"TXT","domain":"foo.example.org","value":"some text","ttl":300}
+            
+            Desired state file format for --apply. Records are compared by name, type, value and ttl
+              {"zones":[{"zoneId":10111,"records":[{"type":"A","name":"www.example.org","value":"1.2.3.4","ttl":3600}]}]}
+            
             Positional mode for Lego (https://go-acme.github.io/lego/dns/exec/)
               hostup-dns-client <action> <domain> <value>
               action: present | cleanup
@@ -34,9 +70,16 @@ public class CliParser {
               hostup-dns-client "present" "_acme-challenge.my.example.org." "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI"
             
             You can also use environment variables (required for LEGO mode):
-              HOSTUP_DNS_CLIENT_API_KEY
+              HOSTUP_DNS_CLIENT_API_KEY (comma separated for several accounts)
               HOSTUP_DNS_CLIENT_BASE_URI (optional, defaults to https://cloud.hostup.se/api/)
-            """.formatted(HOSTUP_DNS_CLIENT_BASE_URI);
+              HOSTUP_DNS_CLIENT_CACHE_DIR (optional, defaults to <java.io.tmpdir>/hostup-dns-client)
+              HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL (optional, seconds Lego mode caches zone IDs, defaults to %d. 0 disables the cache)
+              HOSTUP_DNS_CLIENT_RECORD_CACHE_TTL (optional, seconds Lego mode caches the records of a zone for the cleanups of coalesced invocations, defaults to %d. 0 disables the cache)
+              HOSTUP_DNS_CLIENT_WAIT_PROPAGATION (optional, like --wait-propagation for "present" in Lego mode, defaults to 0, not waiting)
+              HOSTUP_DNS_CLIENT_RESOLVER (optional, like --resolver)
+              HOSTUP_DNS_CLIENT_COALESCE_WINDOW (optional, milliseconds Lego mode waits to handle concurrent invocations together, defaults to 0, not coalescing)
+              HOSTUP_DNS_CLIENT_HEDGE (optional, "true" is like --hedge)
+            """.formatted(HOSTUP_DNS_CLIENT_BASE_URI, HostupApiClient.DEFAULT_MAX_IN_FLIGHT, DEFAULT_PARALLELISM, DEFAULT_RATE_LIMIT, DEFAULT_ZONE_CACHE_TTL_SECONDS, DEFAULT_RECORD_CACHE_TTL_SECONDS);
 
     public interface EnvProvider {
         String get(String key);
@@ -59,12 +102,33 @@ public class CliParser {
                 HOSTUP_DNS_CLIENT_BASE_URI : env.get("HOSTUP_DNS_CLIENT_BASE_URI");
         String deleteDomain = null;
         DeleteRecord deleteRecord = null;
-        String apiKey = env.get("HOSTUP_DNS_CLIENT_API_KEY");
+        List<String> apiKeys = splitApiKeys(env.get("HOSTUP_DNS_CLIENT_API_KEY"));
+        boolean apiKeyArgument = false;
         boolean listZones = false;
         Integer listRecords = null;
+        String batch = null;
+        String apply = null;
+        boolean dryRun = false;
+        String exportZone = null;
+        String outputFile = null;
+        String importFile = null;
+        Integer zone = null;
+        int parallelism = DEFAULT_PARALLELISM;
+        int rateLimit = DEFAULT_RATE_LIMIT;
+        int maxInFlight = HostupApiClient.DEFAULT_MAX_IN_FLIGHT;
+        String metricsFile = null;
+        OutputFormat output = OutputFormat.JSON;
+        List<String> fields = null;
         boolean version = false;
         boolean help = false;
         LegoArgs legoArgs = null;
+        Path cacheDir = getCacheDir();
+        Duration zoneCacheTtl = Duration.ofSeconds(getIntEnv("HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL", DEFAULT_ZONE_CACHE_TTL_SECONDS));
+        Duration recordCacheTtl = Duration.ofSeconds(getIntEnv("HOSTUP_DNS_CLIENT_RECORD_CACHE_TTL", DEFAULT_RECORD_CACHE_TTL_SECONDS));
+        Duration waitPropagation = Duration.ofSeconds(getIntEnv("HOSTUP_DNS_CLIENT_WAIT_PROPAGATION", 0));
+        String resolver = env.get("HOSTUP_DNS_CLIENT_RESOLVER");
+        Duration coalesceWindow = Duration.ofMillis(getIntEnv("HOSTUP_DNS_CLIENT_COALESCE_WINDOW", 0));
+        boolean hedge = Boolean.parseBoolean(env.get("HOSTUP_DNS_CLIENT_HEDGE"));
 
         boolean legoMode = args.length == 3 && Arrays.stream(args).noneMatch(arg -> arg.startsWith("-"));
         if (legoMode) {
@@ -92,25 +156,101 @@ public class CliParser {
                         int ttl = getIntArgument(args, ++i, arg + " ttl");
                         addRecord = new AddRecord(zoneId, type, domain, value, ttl);
                     }
+                    case "--apply" -> apply = getStringArgument(args, ++i, arg);
                     case "-b", "--base-uri" -> baseUriString = getStringArgument(args, ++i, arg);
+                    case "--batch" -> batch = getStringArgument(args, ++i, arg);
                     case "-d", "--delete-domain" -> deleteDomain = getStringArgument(args, ++i, arg);
                     case "-D", "--delete-record" -> {
                         int zoneId = getIntArgument(args, ++i, arg + " zoneId");
                         int recordId = getIntArgument(args, ++i, arg + " recordId");
                         deleteRecord = new DeleteRecord(zoneId, recordId);
                     }
-                    case "-k", "--api-key" -> apiKey = getStringArgument(args, ++i, arg);
+                    case "--dry-run" -> dryRun = true;
+                    case "--hedge" -> hedge = true;
+                    case "--export-zone" -> {
+                        exportZone = getStringArgument(args, ++i, arg);
+                        if (!"all".equals(exportZone)) {
+                            getIntArgument(args, i, arg + " zoneId");
+                        }
+                    }
+                    case "--import" -> importFile = getStringArgument(args, ++i, arg);
+                    case "-k", "--api-key" -> {
+                        // Keys on the command line replace the ones in the environment
+                        if (!apiKeyArgument) {
+                            apiKeys = new ArrayList<>();
+                            apiKeyArgument = true;
+                        }
+                        apiKeys.addAll(splitApiKeys(getStringArgument(args, ++i, arg)));
+                    }
                     case "-l", "--list-zones" -> listZones = true;
+                    case "--metrics-file" -> metricsFile = getStringArgument(args, ++i, arg);
+                    case "--output" -> {
+                        String format = getStringArgument(args, ++i, arg);
+                        try {
+                            output = OutputFormat.valueOf(format.toUpperCase(Locale.ROOT));
+                        } catch (IllegalArgumentException e) {
+                            throw new CliParserException(arg + " must be json, ndjson or tsv, got: " + format, e);
+                        }
+                    }
+                    case "--output-file" -> outputFile = getStringArgument(args, ++i, arg);
+                    case "--fields" -> fields = Arrays.stream(getStringArgument(args, ++i, arg).split(","))
+                            .map(String::strip)
+                            .filter(field -> !field.isEmpty())
+                            .toList();
                     case "-r", "--list-records" -> listRecords = getIntArgument(args, ++i, arg);
+                    case "--resolver" -> resolver = getStringArgument(args, ++i, arg);
+                    case "--rate-limit" -> {
+                        rateLimit = getIntArgument(args, ++i, arg);
+                        if (rateLimit < 1) {
+                            throw new CliParserException(arg + " must be at least 1");
+                        }
+                    }
+                    case "--max-in-flight" -> {
+                        maxInFlight = getIntArgument(args, ++i, arg);
+                        if (maxInFlight < 1) {
+                            throw new CliParserException(arg + " must be at least 1");
+                        }
+                    }
+                    case "--parallelism" -> {
+                        parallelism = getIntArgument(args, ++i, arg);
+                        if (parallelism < 1) {
+                            throw new CliParserException(arg + " must be at least 1");
+                        }
+                    }
+                    case "--zone" -> zone = getIntArgument(args, ++i, arg);
                     case "-v", "--version" -> version = true;
+                    case "--wait-propagation" -> waitPropagation = Duration.ofSeconds(getIntArgument(args, ++i, arg));
                     case "-h", "--help" -> help = true;
                     default -> throw new CliParserException("Unknown argument: " + arg);
                 }
             }
         }
 
+        if (waitPropagation.isNegative()) {
+            throw new CliParserException("wait-propagation must not be negative");
+        }
+        if (coalesceWindow.isNegative()) {
+            throw new CliParserException("HOSTUP_DNS_CLIENT_COALESCE_WINDOW must not be negative");
+        }
+        if (output != OutputFormat.JSON && !listZones && listRecords == null) {
+            throw new CliParserException("--output applies to --list-zones and --list-records");
+        }
+        if (fields != null) {
+            if (output == OutputFormat.JSON) {
+                throw new CliParserException("--fields requires --output ndjson or tsv");
+            }
+            List<String> allowed = listRecords != null ? ListWriter.RECORD_FIELDS : ListWriter.ZONE_FIELDS;
+            if (fields.isEmpty() || !allowed.containsAll(fields)) {
+                throw new CliParserException("--fields must be some of " + String.join(",", allowed) + ", got: " + String.join(",", fields));
+            }
+        } else {
+            fields = listRecords != null ? List.of("id", "type", "name", "value", "ttl") : List.of("id", "name");
+        }
+        if (importFile != null && zone == null) {
+            throw new CliParserException("--import requires --zone");
+        }
         if (!help && !version) {
-            if (apiKey == null) {
+            if (apiKeys.isEmpty()) {
                 throw new CliParserException("api-key is required");
             }
             try {
@@ -124,15 +264,70 @@ public class CliParser {
                 baseUri,
                 deleteDomain,
                 deleteRecord,
-                apiKey,
+                apiKeys.isEmpty() ? null : apiKeys.getFirst(),
                 listZones,
                 listRecords,
+                batch,
+                apply,
+                dryRun,
+                exportZone,
+                outputFile,
+                importFile,
+                zone,
+                parallelism,
+                rateLimit,
+                metricsFile,
                 version,
                 help,
-                legoArgs
+                legoArgs,
+                cacheDir,
+                zoneCacheTtl,
+                recordCacheTtl,
+                waitPropagation,
+                resolver,
+                List.copyOf(apiKeys),
+                coalesceWindow,
+                output,
+                fields,
+                maxInFlight,
+                hedge
         );
     }
 
+    private static List<String> splitApiKeys(String value) {
+        List<String> apiKeys = new ArrayList<>();
+        if (value != null) {
+            for (String apiKey : value.split(",")) {
+                if (!apiKey.isBlank()) {
+                    apiKeys.add(apiKey.strip());
+                }
+            }
+        }
+        return apiKeys;
+    }
+
+    private Path getCacheDir() throws CliParserException {
+        String cacheDir = env.get("HOSTUP_DNS_CLIENT_CACHE_DIR");
+        try {
+            return cacheDir == null ?
+                    Path.of(System.getProperty("java.io.tmpdir"), "hostup-dns-client") : Path.of(cacheDir);
+        } catch (InvalidPathException e) {
+            throw new CliParserException("Invalid path for HOSTUP_DNS_CLIENT_CACHE_DIR: " + cacheDir, e);
+        }
+    }
+
+    private int getIntEnv(String key, int defaultValue) throws CliParserException {
+        String value = env.get(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new CliParserException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+
     private String getStringArgument(String[] args, int i, String argName) throws CliParserException {
         if (i >= args.length) {
             throw new CliParserException("Missing value for " + argName);
@@ -163,12 +358,39 @@ public class CliParser {
             String apiKey,
             boolean listZones,
             Integer listRecords,
+            String batch,
+            String apply,
+            boolean dryRun,
+            String exportZone,
+            String outputFile,
+            String importFile,
+            Integer zone,
+            int parallelism,
+            int rateLimit,
+            String metricsFile,
             boolean version,
             boolean help,
-            LegoArgs legoArgs
+            LegoArgs legoArgs,
+            Path cacheDir,
+            Duration zoneCacheTtl,
+            Duration recordCacheTtl,
+            Duration waitPropagation,
+            String resolver,
+            List<String> apiKeys,
+            Duration coalesceWindow,
+            OutputFormat output,
+            List<String> fields,
+            int maxInFlight,
+            boolean hedge
     ) {
     }
 
+    public enum OutputFormat {
+        JSON,
+        NDJSON,
+        TSV
+    }
+
     public enum LegoAction {
         PRESENT,
         CLEANUP
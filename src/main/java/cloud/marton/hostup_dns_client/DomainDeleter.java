@@ -0,0 +1,99 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+import cloud.marton.hostup_dns_client.exceptions.ApiException;
+import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
+import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements {@code --delete-domain}: removes every record whose name is the given domain.
+ * <p>
+ * The zone is resolved with one {@code getZones} call, see {@link ZoneIndex}, and the records are selected from one {@code getDnsRecords}
+ * response. The deletes run concurrently, at most {@code parallelism} at a time. A HTTP 429 pauses all of them,
+ * see {@link HostupApiClient}.
+ */
+public class DomainDeleter {
+
+    private final HostupApiClient client;
+    private final int parallelism;
+
+    public DomainDeleter(HostupApiClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+    }
+
+    public record Result(boolean success, String message, ApiResponse apiResponse) {
+    }
+
+    /**
+     * Prints one tab separated line per record as it is deleted: {@code <recordId> <type> <name> OK|FAILED <http status>}
+     */
+    public Result deleteDomain(String domain, PrintStream output) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        String name = DomainNames.normalize(domain);
+        ApiResponse zones = client.getZones();
+        if (!zones.success()) {
+            return new Result(false, "Could not get zones", zones);
+        }
+        Optional<ZonesResponse.Zone> zone = ZoneIndex.of(((ZonesResponse) zones.parsedResponse()).data().zones()).get(name);
+        if (zone.isEmpty()) {
+            return new Result(false, "Could not find a zone for domain: " + domain, zones);
+        }
+
+        ApiResponse dnsRecords = client.getDnsRecords(zone.get().domain_id());
+        if (!dnsRecords.success()) {
+            return new Result(false, "Could not get DNS records for domainId: " + zone.get().domain_id(), dnsRecords);
+        }
+        List<DnsRecordsResponse.Record> matching = ((DnsRecordsResponse) dnsRecords.parsedResponse())
+                .data()
+                .zone()
+                .records()
+                .stream()
+                .filter(r -> name.equals(DomainNames.normalize(r.name())))
+                .toList();
+        if (matching.isEmpty()) {
+            return new Result(false, "No DNS records found for domain: " + domain, dnsRecords);
+        }
+
+        int zoneId = zone.get().domain_id();
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        AtomicInteger failures = new AtomicInteger();
+        for (DnsRecordsResponse.Record record : matching) {
+            limiter.submit(() -> client.deleteDnsRecordAsync(zoneId, record.id()), (apiResponse, throwable) -> {
+                boolean success = throwable == null && apiResponse.success();
+                if (!success) {
+                    failures.incrementAndGet();
+                }
+                int httpStatus = throwable == null ? apiResponse.httpStatus() : httpStatusOf(throwable);
+                output.println(String.join("\t",
+                        Integer.toString(record.id()),
+                        record.type(),
+                        record.name(),
+                        success ? "OK" : "FAILED",
+                        Integer.toString(httpStatus)));
+            });
+        }
+        limiter.awaitAll();
+        if (failures.get() > 0) {
+            return new Result(false, "Could not delete %d of %d records for domain: %s".formatted(failures.get(), matching.size(), domain), dnsRecords);
+        }
+        return new Result(true, "Deleted %d records for domain: %s".formatted(matching.size(), domain), dnsRecords);
+    }
+
+    private static int httpStatusOf(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause instanceof ApiException apiException ? apiException.getHttpStatusCode() : 0;
+    }
+}
@@ -1,17 +1,50 @@
 package cloud.marton.hostup_dns_client;
 
+import cloud.marton.hostup_dns_client.cache.RecordCache;
+import cloud.marton.hostup_dns_client.exceptions.CircuitOpenException;
 import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
 import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.jfr.ApiRequestEvent;
+import cloud.marton.hostup_dns_client.jfr.JsonDecodeEvent;
+import cloud.marton.hostup_dns_client.jfr.RateLimitBackoffEvent;
+import cloud.marton.hostup_dns_client.json.DslJsonFactory;
+import cloud.marton.hostup_dns_client.json.JsonStreams;
+import cloud.marton.hostup_dns_client.metrics.ClientMetrics;
+import cloud.marton.hostup_dns_client.metrics.Endpoint;
 import cloud.marton.hostup_dns_client.model.*;
+import cloud.marton.hostup_dns_client.ratelimit.InFlightLimit;
+import cloud.marton.hostup_dns_client.ratelimit.RateLimitHeaders;
+import cloud.marton.hostup_dns_client.ratelimit.TokenBucket;
+import cloud.marton.hostup_dns_client.retry.CircuitBreaker;
+import cloud.marton.hostup_dns_client.retry.Hedging;
+import cloud.marton.hostup_dns_client.retry.RetryPolicy;
 import com.dslplatform.json.DslJson;
+import com.dslplatform.json.JsonWriter;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class HostupApiClient {
@@ -19,30 +52,190 @@ public class HostupApiClient {
     private static final Logger LOGGER = Logger.getLogger(HostupApiClient.class.getName());
     private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(10);
     private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    private static final int DEFAULT_MAX_RETRIES = 6;
+    private static final long DEFAULT_FIRST_BACKOFF_MILLIS = 30_000L;
+    // Virtual threads are created per task and cost no platform thread while waiting, so the executor is never sized
+    private static final Executor DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
 
     private final URI baseUri;
-    private final HttpClient client;
+    // Created on the first request, so commands that fail or finish before it do not pay for it, see httpClient()
+    private volatile HttpClient client;
     private final String apiKey;
     private final DslJson<Object> dslJson;
-    private final int maxRetries;
-    private final long firstBackoffMillis;
+    private final JsonWriter.WriteObject<SetRecordRequest> setRecordRequestWriter;
+    // Request bodies are serialized into a reused writer per thread, only the finished body is copied out
+    private final ThreadLocal<JsonWriter> jsonWriters;
+    private final RetryPolicy retryPolicy;
+    private final Hedging hedging;
+    private final CircuitBreaker circuitBreaker;
+    private final TokenBucket rateLimiter;
+    private final RecordCache recordCache;
+    private final Executor executor;
+    private final InFlightLimit inFlightLimit;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final Clock clock = Clock.systemUTC();
+    // System.nanoTime() until which every request waits after a HTTP 429, so concurrent requests back off together
+    private final AtomicLong backoffUntilNanos = new AtomicLong(System.nanoTime());
 
     public HostupApiClient(String apiKey, URI baseUri) {
-        this(apiKey, baseUri, 6, 30_000L);
+        this(builder(apiKey, baseUri));
     }
 
+    /**
+     * @param maxRetries         how often a request is sent again after a HTTP 429, see {@link RetryPolicy#standard}
+     * @param firstBackoffMillis the wait before the first retry after a HTTP 429 without {@code Retry-After}
+     */
     public HostupApiClient(String apiKey, URI baseUri, int maxRetries, long firstBackoffMillis) {
-        Objects.requireNonNull(apiKey, "API key must not be null");
-        Objects.requireNonNull(baseUri, "Base URI must not be null");
-        this.baseUri = baseUri;
-        this.apiKey = apiKey;
-        this.maxRetries = maxRetries;
-        this.firstBackoffMillis = firstBackoffMillis;
-        client = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(CONNECTION_TIMEOUT)
-                .build();
-        dslJson = cloud.marton.hostup_dns_client.json.DslJsonFactory.create();
+        this(builder(apiKey, baseUri).retryPolicy(RetryPolicy.standard(maxRetries, firstBackoffMillis)));
+    }
+
+    private HostupApiClient(Builder builder) {
+        this.baseUri = builder.baseUri;
+        this.apiKey = builder.apiKey;
+        this.retryPolicy = builder.retryPolicy;
+        this.hedging = builder.hedging;
+        this.circuitBreaker = builder.circuitBreaker;
+        circuitBreaker.addListener((from, to) -> metrics.circuitState(to.name().toLowerCase(Locale.ROOT)));
+        this.rateLimiter = builder.rateLimiter;
+        this.recordCache = builder.recordCache;
+        this.executor = builder.executor;
+        this.inFlightLimit = new InFlightLimit(builder.maxInFlight);
+        dslJson = DslJsonFactory.shared();
+        setRecordRequestWriter = Objects.requireNonNull(dslJson.tryFindWriter(SetRecordRequest.class), "No JSON writer for SetRecordRequest");
+        jsonWriters = ThreadLocal.withInitial(dslJson::newWriter);
+    }
+
+    /**
+     * @return a builder of a client with the {@linkplain #defaultRetryPolicy() default retry policy}, without
+     * hedging, circuit breaker, rate limit or record cache, on the {@linkplain #defaultExecutor() default executor}
+     * and with at most {@value #DEFAULT_MAX_IN_FLIGHT} requests in flight
+     */
+    public static Builder builder(String apiKey, URI baseUri) {
+        return new Builder(apiKey, baseUri);
+    }
+
+    public static final class Builder {
+        private final String apiKey;
+        private final URI baseUri;
+        private RetryPolicy retryPolicy = defaultRetryPolicy();
+        private Hedging hedging = Hedging.disabled();
+        private CircuitBreaker circuitBreaker = CircuitBreaker.disabled();
+        private TokenBucket rateLimiter = TokenBucket.unlimited();
+        private RecordCache recordCache = RecordCache.disabled();
+        private Executor executor = DEFAULT_EXECUTOR;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        private Builder(String apiKey, URI baseUri) {
+            this.apiKey = Objects.requireNonNull(apiKey, "API key must not be null");
+            this.baseUri = Objects.requireNonNull(baseUri, "Base URI must not be null");
+        }
+
+        /**
+         * @param retryPolicy decides which failed requests are sent again
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = Objects.requireNonNull(retryPolicy, "Retry policy must not be null");
+            return this;
+        }
+
+        /**
+         * @param hedging when a slow {@code GET} is sent a second time
+         */
+        public Builder hedging(Hedging hedging) {
+            this.hedging = Objects.requireNonNull(hedging, "Hedging must not be null");
+            return this;
+        }
+
+        /**
+         * @param circuitBreaker stops sending requests while the API is failing, its state is reported in
+         *                       {@link #metrics()}
+         */
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = Objects.requireNonNull(circuitBreaker, "Circuit breaker must not be null");
+            return this;
+        }
+
+        /**
+         * @param rateLimiter paces every request of this client. Use one client per API key, so all threads share it.
+         */
+        public Builder rateLimiter(TokenBucket rateLimiter) {
+            this.rateLimiter = Objects.requireNonNull(rateLimiter, "Rate limiter must not be null");
+            return this;
+        }
+
+        /**
+         * @param recordCache filled by {@link #getDnsRecords(int)} and kept up to date when records are added or
+         *                    deleted
+         */
+        public Builder recordCache(RecordCache recordCache) {
+            this.recordCache = Objects.requireNonNull(recordCache, "Record cache must not be null");
+            return this;
+        }
+
+        /**
+         * @param executor runs the {@link HttpClient} and every continuation of the returned futures, including the
+         *                 delayed ones
+         */
+        public Builder executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+            return this;
+        }
+
+        /**
+         * @param maxInFlight the most requests of this client that are sent or being received at a time, the others
+         *                    wait in a queue without holding a thread
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public HostupApiClient build() {
+            return new HostupApiClient(this);
+        }
+    }
+
+    /**
+     * @return the cache of DNS records per zone, disabled unless one was given to the {@link Builder}
+     */
+    public RecordCache recordCache() {
+        return recordCache;
+    }
+
+    /**
+     * @return the retry policy of clients that are not given one: 6 retries after a HTTP 429, the first after 30s
+     */
+    public static RetryPolicy defaultRetryPolicy() {
+        return RetryPolicy.standard(DEFAULT_MAX_RETRIES, DEFAULT_FIRST_BACKOFF_MILLIS);
+    }
+
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return the executor of clients that are not given one, it starts a virtual thread per task
+     */
+    public static Executor defaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * @return the executor that runs the requests of this client and their continuations
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    /**
+     * @return the request metrics of this client
+     */
+    public ClientMetrics metrics() {
+        return metrics;
     }
 
     /**
@@ -52,10 +245,35 @@ public class HostupApiClient {
      * @return {@link ApiResponse} with {@link ZonesResponse}
      */
     public ApiResponse getZones() throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        return await(getZonesAsync());
+    }
+
+    /**
+     * Non-blocking variant of {@link #getZones()}
+     *
+     * @return future {@link ApiResponse} with {@link ZonesResponse}
+     */
+    public CompletableFuture<ApiResponse> getZonesAsync() {
+        HttpRequest request = newRequestBuilder("dns/zones")
+                .GET()
+                .build();
+        return sendAsync(Endpoint.ZONES, request, ZonesResponse.class);
+    }
+
+    /**
+     * Variant of {@link #getZonesAsync()} that passes each zone to {@code consumer} as soon as it has been decoded.
+     * The consumer is called on a thread of the HTTP client.
+     *
+     * @return future {@link ApiResponse} without body and parsed response when successful, otherwise with
+     * {@link ErrorResponse}
+     */
+    public CompletableFuture<ApiResponse> streamZonesAsync(JsonStreams.ElementConsumer<ZonesResponse.Zone> consumer) {
+        Objects.requireNonNull(consumer, "consumer");
         HttpRequest request = newRequestBuilder("dns/zones")
                 .GET()
                 .build();
-        return send(request, ZonesResponse.class);
+        return sendAsync(Endpoint.ZONES, request,
+                new StreamingArrayReader<>(Endpoint.ZONES, ZonesResponse.class, ZonesResponse.Zone.class, consumer, "data", "zones"), new Call());
     }
 
     /**
@@ -65,10 +283,41 @@ public class HostupApiClient {
      * @return {@link ApiResponse} with {@link DnsRecordsResponse}
      */
     public ApiResponse getDnsRecords(int zoneId) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        return await(getDnsRecordsAsync(zoneId));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getDnsRecords(int)}
+     *
+     * @return future {@link ApiResponse} with {@link DnsRecordsResponse}
+     */
+    public CompletableFuture<ApiResponse> getDnsRecordsAsync(int zoneId) {
         HttpRequest request = newRequestBuilder("dns/zones/%d/records".formatted(zoneId))
                 .GET()
                 .build();
-        return send(request, DnsRecordsResponse.class);
+        return sendAsync(Endpoint.LIST_RECORDS, request, DnsRecordsResponse.class).thenApply(apiResponse -> {
+            if (apiResponse.success()) {
+                recordCache.put(zoneId, ((DnsRecordsResponse) apiResponse.parsedResponse()).data().zone().records());
+            }
+            return apiResponse;
+        });
+    }
+
+    /**
+     * Variant of {@link #getDnsRecordsAsync(int)} for large zones. Each record is passed to {@code consumer} as soon
+     * as it has been decoded, so memory use does not grow with the size of the zone. The consumer is called on a
+     * thread of the HTTP client, and the record cache is not updated.
+     *
+     * @return future {@link ApiResponse} without body and parsed response when successful, otherwise with
+     * {@link ErrorResponse}
+     */
+    public CompletableFuture<ApiResponse> streamDnsRecordsAsync(int zoneId, JsonStreams.ElementConsumer<DnsRecordsResponse.Record> consumer) {
+        Objects.requireNonNull(consumer, "consumer");
+        HttpRequest request = newRequestBuilder("dns/zones/%d/records".formatted(zoneId))
+                .GET()
+                .build();
+        return sendAsync(Endpoint.LIST_RECORDS, request,
+                new StreamingArrayReader<>(Endpoint.LIST_RECORDS, DnsRecordsResponse.class, DnsRecordsResponse.Record.class, consumer, "data", "zone", "records"), new Call());
     }
 
     /**
@@ -78,10 +327,27 @@ public class HostupApiClient {
      * @return {@link ApiResponse} with {@link DeleteDnsRecordResponse}
      */
     public ApiResponse deleteDnsRecord(int zoneId, int recordId) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        return await(deleteDnsRecordAsync(zoneId, recordId));
+    }
+
+    /**
+     * Non-blocking variant of {@link #deleteDnsRecord(int, int)}
+     *
+     * @return future {@link ApiResponse} with {@link DeleteDnsRecordResponse}
+     */
+    public CompletableFuture<ApiResponse> deleteDnsRecordAsync(int zoneId, int recordId) {
         HttpRequest request = newRequestBuilder("dns/zones/%d/records/%d".formatted(zoneId, recordId))
                 .DELETE()
                 .build();
-        return send(request, DeleteDnsRecordResponse.class);
+        return sendAsync(Endpoint.DELETE_RECORD, request, DeleteDnsRecordResponse.class).thenApply(apiResponse -> {
+            if (apiResponse.success()) {
+                recordCache.removed(zoneId, recordId);
+            } else {
+                // E.g. deleted by someone else, the cached zone can no longer be trusted
+                recordCache.invalidate(zoneId);
+            }
+            return apiResponse;
+        });
     }
 
     /**
@@ -97,71 +363,627 @@ public class HostupApiClient {
      * Add, change, or delete DNS records (such as A, CNAME, MX, TXT) for your domain. This is necessary when configuring services like email, subdomains, or pointing your domain to another server.
      * <a href="https://developer.hostup.se/#tag/domain-services/POST/api/dns/zones/{zoneId}/records">API Documentation</a>
      *
-     * @return {@link ApiResponse} with {@link ZonesResponse}
+     * @return {@link ApiResponse} with {@link SetRecordResponse}
      */
     public ApiResponse setDnsRecord(int zoneId, String type, String name, String value, int ttl) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
-        String body = """
-                {
-                  "type": "%s",
-                  "name": "%s",
-                  "value": "%s",
-                  "ttl": %d
-                }
-                """.formatted(type, name, value, ttl);
+        return await(setDnsRecordAsync(zoneId, type, name, value, ttl));
+    }
+
+    /**
+     * Non-blocking variant of {@link #setDnsRecord(int, String, String, String, int)}
+     *
+     * @return future {@link ApiResponse} with {@link SetRecordResponse}
+     */
+    public CompletableFuture<ApiResponse> setDnsRecordAsync(int zoneId, String type, String name, String value, int ttl) {
         HttpRequest request = newRequestBuilder("dns/zones/%d/records".formatted(zoneId))
-                .POST(HttpRequest.BodyPublishers.ofString(body))
-                .header("Content-Type", "application/json, charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(setRecordBody(type, name, value, ttl)))
+                .header("Content-Type", "application/json; charset=UTF-8")
                 .build();
-        return send(request, SetRecordResponse.class);
+        return sendAsync(Endpoint.SET_RECORD, request, SetRecordResponse.class).thenApply(apiResponse -> {
+            if (apiResponse.success()) {
+                SetRecordResponse.Record record = ((SetRecordResponse) apiResponse.parsedResponse()).data().record();
+                recordCache.added(zoneId, new DnsRecordsResponse.Record(
+                        record.id(), record.type(), record.name(), record.value(), record.ttl(), record.status(), ""));
+            }
+            return apiResponse;
+        });
+    }
+
+    byte[] setRecordBody(String type, String name, String value, int ttl) {
+        JsonWriter writer = jsonWriters.get();
+        writer.reset();
+        setRecordRequestWriter.write(writer, new SetRecordRequest(type, name, value, ttl));
+        return writer.toByteArray();
     }
 
-    private <T extends HostupApiResponse> ApiResponse send(HttpRequest request, Class<T> responseType) throws RateLimitException, JsonMappingException, IOException, InterruptedException {
-        return send(request, responseType, 0);
+    /**
+     * Waits for a future returned by one of the async methods and rethrows its failure as the checked exception
+     * the blocking methods declare
+     */
+    static ApiResponse await(CompletableFuture<ApiResponse> future) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case RateLimitException cause -> throw cause;
+                case JsonMappingException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                case Error cause -> throw cause;
+                default -> throw new IOException(e.getCause());
+            }
+        }
     }
 
-    private <T extends HostupApiResponse> ApiResponse send(HttpRequest request, Class<T> responseType, int retryCount) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+    private <T extends HostupApiResponse> CompletableFuture<ApiResponse> sendAsync(Endpoint endpoint, HttpRequest request, Class<T> responseType) {
         Objects.requireNonNull(request, "request");
         Objects.requireNonNull(responseType, "responseType");
+        BufferedBodyReader<T> bodyReader = new BufferedBodyReader<>(responseType);
+        if (hedging.enabled() && "GET".equals(request.method())) {
+            return hedged(endpoint, request, bodyReader);
+        }
+        return sendAsync(endpoint, request, bodyReader, new Call());
+    }
 
+    /**
+     * Sends the request, and once more when it has not been answered after the delay of {@link Hedging}. The first
+     * response wins and the other request is cancelled, a failure only wins when both requests failed. Only for
+     * requests without side effects and with a buffered body, a streamed body would be passed to its consumer twice.
+     */
+    private <B> CompletableFuture<ApiResponse> hedged(Endpoint endpoint, HttpRequest request, BodyReader<B> bodyReader) {
+        Hedge hedge = new Hedge();
+        sendAsync(endpoint, request, bodyReader, hedge.first)
+                .whenComplete((apiResponse, throwable) -> hedge.completed(hedge.first, apiResponse, throwable));
+        long delayNanos = hedging.delayNanos(metrics.latency(endpoint));
+        delay(delayNanos).thenRun(() -> {
+            if (!hedge.startSecond()) {
+                return;
+            }
+            LOGGER.fine(() -> "No response to %s %s after %dms, sending it again".formatted(request.method(), request.uri(), TimeUnit.NANOSECONDS.toMillis(delayNanos)));
+            metrics.hedge(endpoint);
+            sendAsync(endpoint, request, bodyReader, hedge.second)
+                    .whenComplete((apiResponse, throwable) -> hedge.completed(hedge.second, apiResponse, throwable));
+        });
+        return hedge.result;
+    }
+
+    /**
+     * Sends the request without blocking. Waits are scheduled on the delayed executor, so no thread is parked and
+     * retries do not grow the stack. Before a request is sent it waits for
+     * <ul>
+     *     <li>the shared backoff: after a HTTP 429, or when the API reports no remaining requests, every request of
+     *     this client waits, not only the rejected one</li>
+     *     <li>a permit of the {@link InFlightLimit}, held until the response body has been read</li>
+     *     <li>a token of the {@link TokenBucket} that paces all requests of this client. It is taken once the permit
+     *     is held, so requests queued for a permit do not use up tokens and then go out in a burst</li>
+     * </ul>
+     * Failed requests are retried as the {@link RetryPolicy} decides. While the {@link CircuitBreaker} is open the
+     * future fails at once with {@link CircuitOpenException}.
+     * The future fails with {@link RateLimitException}, {@link JsonMappingException} or {@link IOException}.
+     * Waits, retries and responses are recorded in {@link #metrics()} under {@code endpoint}, and as JDK Flight
+     * Recorder events, see the {@code jfr} package.
+     */
+    private <B> CompletableFuture<ApiResponse> sendAsync(Endpoint endpoint, HttpRequest request, BodyReader<B> bodyReader, Call call) {
+        if (call.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("Request was cancelled"));
+        }
+        if (circuitBreaker.isOpen()) {
+            return rejected(endpoint);
+        }
+        long backoffNanos = backoffUntilNanos.get() - System.nanoTime();
+        if (backoffNanos > 0) {
+            metrics.backoff(endpoint, backoffNanos);
+            return delay(backoffNanos).thenCompose(ignored -> sendAsync(endpoint, request, bodyReader, call));
+        }
+        return exchange(endpoint, request, bodyReader, call);
+    }
+
+    private <B> CompletableFuture<ApiResponse> exchange(Endpoint endpoint, HttpRequest request, BodyReader<B> bodyReader, Call call) {
+        return inFlightLimit.acquire().thenCompose(ignored -> {
+            AtomicBoolean held = new AtomicBoolean(true);
+            Runnable release = () -> {
+                if (held.compareAndSet(true, false)) {
+                    inFlightLimit.release();
+                }
+            };
+            CompletableFuture<ApiResponse> response;
+            try {
+                response = pace(endpoint, request, bodyReader, call, release);
+            } catch (RuntimeException e) {
+                release.run();
+                throw e;
+            }
+            return response.whenComplete((apiResponse, throwable) -> release.run());
+        });
+    }
+
+    private <B> CompletableFuture<ApiResponse> pace(Endpoint endpoint, HttpRequest request, BodyReader<B> bodyReader, Call call, Runnable release) {
+        long waitNanos = rateLimiter.reserve();
+        if (waitNanos > 0) {
+            LOGGER.fine(() -> "Pacing request %s %s by %dms".formatted(request.method(), request.uri(), TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+            metrics.paced(endpoint, waitNanos);
+            return delay(waitNanos).thenCompose(ignored -> exchange(endpoint, request, bodyReader, call, release));
+        }
+        return exchange(endpoint, request, bodyReader, call, release);
+    }
+
+    /**
+     * @param release gives the in-flight permit back, before a failed request is retried so the retry can take it again
+     */
+    private <B> CompletableFuture<ApiResponse> exchange(Endpoint endpoint, HttpRequest request, BodyReader<B> bodyReader, Call call, Runnable release) {
         LOGGER.fine(() -> "Request  %s %s".formatted(request.method(), request.uri()));
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        long permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            return rejected(endpoint);
+        }
+        ApiRequestEvent event = new ApiRequestEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpResponse<B>> sent;
+        try {
+            sent = httpClient().sendAsync(request, bodyReader.bodyHandler());
+        } catch (RuntimeException e) {
+            // Without this a half-open circuit would wait for the outcome of its probe forever
+            circuitBreaker.onCancelled(permit);
+            return CompletableFuture.failedFuture(e);
+        }
+        call.sent(sent);
+        return sent
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        if (call.isCancelled()) {
+                            circuitBreaker.onCancelled(permit);
+                        } else {
+                            metrics.transportError(endpoint);
+                            circuitBreaker.onResult(permit, true, System.nanoTime() - startNanos);
+                        }
+                        event.complete(request.method(), endpoint.pathTemplate(), request.uri().toString(), call.retries(), 0, 0);
+                        return;
+                    }
+                    // A streamed body is still being received, its bytes are counted as they are read
+                    long latencyNanos = System.nanoTime() - startNanos;
+                    metrics.response(endpoint, response.statusCode(), latencyNanos);
+                    circuitBreaker.onResult(permit, response.statusCode() >= 500, latencyNanos);
+                    long bytesReceived = response.body() instanceof byte[] bytes ? bytes.length : 0;
+                    metrics.bytesReceived(endpoint, bytesReceived);
+                    event.complete(request.method(), endpoint.pathTemplate(), request.uri().toString(), call.retries(), response.statusCode(), bytesReceived);
+                })
+                .handle((response, throwable) -> throwable == null ?
+                        onResponse(endpoint, request, bodyReader, call, release, response) :
+                        onFailure(endpoint, request, bodyReader, call, release, throwable))
+                .thenCompose(Function.identity());
+    }
+
+    private <B> CompletableFuture<ApiResponse> onResponse(Endpoint endpoint,
+                                                          HttpRequest request,
+                                                          BodyReader<B> bodyReader,
+                                                          Call call,
+                                                          Runnable release,
+                                                          HttpResponse<B> response) {
         int httpStatusCode = response.statusCode();
+        B body = response.body();
+        if (body instanceof byte[] bytes) {
+            LOGGER.fine(() -> "Response %s %s httpStatusCode: %d\n%s".formatted(request.method(), request.uri(), httpStatusCode, asString(bytes)));
+        } else {
+            LOGGER.fine(() -> "Response %s %s httpStatusCode: %d".formatted(request.method(), request.uri(), httpStatusCode));
+        }
+        RateLimitHeaders rateLimitHeaders = RateLimitHeaders.from(response.headers(), clock);
+        applyRateLimitHeaders(endpoint, rateLimitHeaders);
+        try {
+            if (httpStatusCode == 200) {
+                return CompletableFuture.completedFuture(bodyReader.read(httpStatusCode, body));
+            }
+            byte[] bytes = bodyReader.readAll(body);
+            // A HTTP 429 is retried without looking at its body
+            ApiResponse apiResponse = null;
+            JsonMappingException unreadable = null;
+            if (httpStatusCode != 429) {
+                try {
+                    apiResponse = toApiResponse(httpStatusCode, bytes, bodyReader.responseType());
+                } catch (JsonMappingException e) {
+                    unreadable = e;
+                }
+            }
+            ErrorResponse errorResponse = apiResponse != null && apiResponse.parsedResponse() instanceof ErrorResponse error ? error : null;
+            RetryPolicy.Classification classification = retryPolicy.classify(request.method(), httpStatusCode, errorResponse);
+            if (classification != RetryPolicy.Classification.FATAL && call.retries(classification) < retryPolicy.maxRetries(classification)) {
+                release.run();
+                return retry(endpoint, request, bodyReader, call, classification, rateLimitHeaders.retryAfter(), "HTTP " + httpStatusCode);
+            }
+            if (classification == RetryPolicy.Classification.RATE_LIMITED) {
+                int maxRetries = retryPolicy.maxRetries(classification);
+                return CompletableFuture.failedFuture(new RateLimitException(httpStatusCode, "Max retry (%d) attempts reached".formatted(maxRetries), asString(bytes)));
+            }
+            if (unreadable != null) {
+                throw unreadable;
+            }
+            return CompletableFuture.completedFuture(apiResponse != null ? apiResponse : toApiResponse(httpStatusCode, bytes, bodyReader.responseType()));
+        } catch (IOException | JsonMappingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @param throwable why no response was received
+     */
+    private <B> CompletableFuture<ApiResponse> onFailure(Endpoint endpoint,
+                                                         HttpRequest request,
+                                                         BodyReader<B> bodyReader,
+                                                         Call call,
+                                                         Runnable release,
+                                                         Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (call.isCancelled()) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        RetryPolicy.Classification classification = retryPolicy.classify(request.method(), cause);
+        if (classification == RetryPolicy.Classification.FATAL || call.retries(classification) >= retryPolicy.maxRetries(classification)) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        release.run();
+        return retry(endpoint, request, bodyReader, call, classification, Optional.empty(), cause.toString());
+    }
+
+    /**
+     * A rate limited request makes every request of this client back off, a transient failure only delays its own retry
+     *
+     * @param reason of the retry, for the log
+     */
+    private <B> CompletableFuture<ApiResponse> retry(Endpoint endpoint,
+                                                     HttpRequest request,
+                                                     BodyReader<B> bodyReader,
+                                                     Call call,
+                                                     RetryPolicy.Classification classification,
+                                                     Optional<Duration> retryAfter,
+                                                     String reason) {
+        int retry = call.retried(classification);
+        int maxRetries = retryPolicy.maxRetries(classification);
+        metrics.retry(endpoint);
+        if (classification == RetryPolicy.Classification.RATE_LIMITED) {
+            long sleepDuration = retryAfter
+                    .map(duration -> duration.toMillis() + jitterMillis())
+                    .orElseGet(() -> retryPolicy.backoff(classification, retry).toMillis());
+            LOGGER.warning(() -> "Rate limit reached (%s). Retry: %d/%d. Waiting %.1fs before trying again..."
+                    .formatted(reason, retry, maxRetries, sleepDuration / 1000.0));
+            backoffFor(TimeUnit.MILLISECONDS.toNanos(sleepDuration));
+            RateLimitBackoffEvent.emit(endpoint.pathTemplate(), retry, sleepDuration,
+                    retryAfter.isPresent() ? reason + " with Retry-After" : reason);
+            return sendAsync(endpoint, request, bodyReader, call);
+        }
+        long backoffMillis = retryPolicy.backoff(classification, retry).toMillis();
+        LOGGER.warning(() -> "Request %s %s failed (%s). Retry: %d/%d. Waiting %.1fs before trying again..."
+                .formatted(request.method(), request.uri(), reason, retry, maxRetries, backoffMillis / 1000.0));
+        return delay(TimeUnit.MILLISECONDS.toNanos(backoffMillis)).thenCompose(ignored -> sendAsync(endpoint, request, bodyReader, call));
+    }
+
+    private CompletableFuture<ApiResponse> rejected(Endpoint endpoint) {
+        metrics.rejected(endpoint);
+        Duration retryAfter = circuitBreaker.remainingOpen();
+        return CompletableFuture.failedFuture(new CircuitOpenException(
+                "The Hostup API is failing, not sending requests for %ds".formatted(retryAfter.toSeconds()), retryAfter));
+    }
 
-        String bodyAsString = response.body();
-        LOGGER.fine(() -> "Response %s %s httpStatusCode: %d\n%s".formatted(request.method(), request.uri(), response.statusCode(), bodyAsString));
-        if (httpStatusCode == 429) {
-            if (retryCount >= maxRetries) {
-                throw new RateLimitException(response.statusCode(), "Max retry (%d) attempts reached".formatted(maxRetries), bodyAsString);
+    /**
+     * One request and its retries. Counts the retries per classification, and cancels the exchange in flight when
+     * cancelled.
+     */
+    private static final class Call {
+
+        private final int[] retries = new int[RetryPolicy.Classification.values().length];
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<?> sent;
+
+        int retries() {
+            int total = 0;
+            for (int count : retries) {
+                total += count;
             }
-            long sleepDuration = calculateExponentialBackoff(retryCount + 1);
-            LOGGER.warning(() -> "Rate limit reached (HTTP 429). Retry: %d/%d. Waiting %.1fs before trying again..."
-                    .formatted(retryCount + 1, maxRetries, sleepDuration / 1000.0));
-            Thread.sleep(sleepDuration);
-            return send(request, responseType, retryCount + 1);
+            return total;
         }
-        if (httpStatusCode != 200) {
-            byte[] bodyBytes = bodyAsString.getBytes();
-            try {
-                ErrorResponse deserialized = dslJson.deserialize(ErrorResponse.class, bodyBytes, bodyBytes.length);
-                return new ApiResponse(false, response.statusCode(), bodyAsString, deserialized);
-            } catch (IOException e) {
-                throw new JsonMappingException(httpStatusCode, "Failed to deserialize JSON as " + responseType.getName(), bodyAsString, e);
+
+        int retries(RetryPolicy.Classification classification) {
+            return retries[classification.ordinal()];
+        }
+
+        /**
+         * @return the number of retries of this classification, including this one
+         */
+        int retried(RetryPolicy.Classification classification) {
+            return ++retries[classification.ordinal()];
+        }
+
+        void sent(CompletableFuture<?> exchange) {
+            sent = exchange;
+            if (cancelled) {
+                exchange.cancel(true);
             }
         }
-        byte[] bodyBytes = bodyAsString.getBytes();
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void cancel() {
+            cancelled = true;
+            CompletableFuture<?> exchange = sent;
+            if (exchange != null) {
+                exchange.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The two calls of a hedged request, see {@link #hedged}
+     */
+    private static final class Hedge {
+
+        private final CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+        private final Call first = new Call();
+        private final Call second = new Call();
+        private final AtomicInteger running = new AtomicInteger(1);
+
+        private Hedge() {
+            result.whenComplete((apiResponse, throwable) -> {
+                if (result.isCancelled()) {
+                    first.cancel();
+                    second.cancel();
+                }
+            });
+        }
+
+        /**
+         * @return false when the result is known already and the second call is not needed
+         */
+        boolean startSecond() {
+            running.incrementAndGet();
+            if (result.isDone()) {
+                running.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void completed(Call call, ApiResponse apiResponse, Throwable throwable) {
+            boolean last = running.decrementAndGet() == 0;
+            boolean won = throwable == null ? result.complete(apiResponse) : last && result.completeExceptionally(throwable);
+            if (won) {
+                (call == first ? second : first).cancel();
+            }
+        }
+    }
+
+    /**
+     * Building the client loads the default SSL context, which is one of the larger costs of a short-lived process
+     */
+    private HttpClient httpClient() {
+        HttpClient httpClient = client;
+        if (httpClient == null) {
+            synchronized (this) {
+                httpClient = client;
+                if (httpClient == null) {
+                    httpClient = HttpClient.newBuilder()
+                            .executor(executor)
+                            .version(HttpClient.Version.HTTP_2)
+                            .connectTimeout(CONNECTION_TIMEOUT)
+                            .build();
+                    client = httpClient;
+                }
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * How a response body is received and turned into an {@link ApiResponse}
+     */
+    private interface BodyReader<B> {
+
+        HttpResponse.BodyHandler<B> bodyHandler();
+
+        /**
+         * The type of a successful response, reported when an error response cannot be read
+         */
+        Class<? extends HostupApiResponse> responseType();
+
+        /**
+         * Reads the whole body, e.g. to report it in an exception
+         */
+        byte[] readAll(B body) throws IOException;
+
+        ApiResponse read(int httpStatusCode, B body) throws IOException, JsonMappingException;
+    }
+
+    /**
+     * Receives the whole body and deserializes it as {@code responseType}
+     */
+    private final class BufferedBodyReader<T extends HostupApiResponse> implements BodyReader<byte[]> {
+
+        private final Class<T> responseType;
+
+        private BufferedBodyReader(Class<T> responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public HttpResponse.BodyHandler<byte[]> bodyHandler() {
+            return HttpResponse.BodyHandlers.ofByteArray();
+        }
+
+        @Override
+        public Class<T> responseType() {
+            return responseType;
+        }
+
+        @Override
+        public byte[] readAll(byte[] body) {
+            return body;
+        }
+
+        @Override
+        public ApiResponse read(int httpStatusCode, byte[] body) throws JsonMappingException {
+            return toApiResponse(httpStatusCode, body, responseType);
+        }
+    }
+
+    /**
+     * Decodes the elements of the array at {@code path} of a successful response one at a time while the body is
+     * received. Error responses are small and deserialized as usual.
+     */
+    private final class StreamingArrayReader<T> implements BodyReader<InputStream> {
+
+        private final Endpoint endpoint;
+        private final Class<? extends HostupApiResponse> responseType;
+        private final Class<T> elementType;
+        private final JsonStreams.ElementConsumer<T> consumer;
+        private final String[] path;
+
+        private StreamingArrayReader(Endpoint endpoint,
+                                     Class<? extends HostupApiResponse> responseType,
+                                     Class<T> elementType,
+                                     JsonStreams.ElementConsumer<T> consumer,
+                                     String... path) {
+            this.endpoint = endpoint;
+            this.responseType = responseType;
+            this.elementType = elementType;
+            this.consumer = consumer;
+            this.path = path;
+        }
+
+        @Override
+        public HttpResponse.BodyHandler<InputStream> bodyHandler() {
+            return HttpResponse.BodyHandlers.ofInputStream();
+        }
+
+        @Override
+        public Class<? extends HostupApiResponse> responseType() {
+            return responseType;
+        }
+
+        @Override
+        public byte[] readAll(InputStream body) throws IOException {
+            try (body) {
+                byte[] bytes = body.readAllBytes();
+                metrics.bytesReceived(endpoint, bytes.length);
+                return bytes;
+            }
+        }
+
+        @Override
+        public ApiResponse read(int httpStatusCode, InputStream body) throws IOException, JsonMappingException {
+            if (httpStatusCode != 200) {
+                return toApiResponse(httpStatusCode, readAll(body), responseType);
+            }
+            JsonDecodeEvent event = new JsonDecodeEvent();
+            event.begin();
+            boolean decoded = false;
+            try (InputStream counting = new CountingInputStream(endpoint, body)) {
+                JsonStreams.forEachInArray(dslJson, counting, elementType, consumer, path);
+                decoded = true;
+            } finally {
+                event.complete(elementType, 0, decoded);
+            }
+            return new ApiResponse(true, httpStatusCode, new byte[0], null);
+        }
+    }
+
+    /**
+     * Adds the bytes read from a streamed body to the metrics of the endpoint
+     */
+    private final class CountingInputStream extends FilterInputStream {
+
+        private final Endpoint endpoint;
+
+        private CountingInputStream(Endpoint endpoint, InputStream in) {
+            super(in);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                metrics.bytesReceived(endpoint, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                metrics.bytesReceived(endpoint, read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Slows the {@link TokenBucket} down to spread the remaining requests over the rest of the rate limit window,
+     * and stops all requests until the window resets when nothing is left
+     */
+    private void applyRateLimitHeaders(Endpoint endpoint, RateLimitHeaders headers) {
+        if (headers.remaining().isEmpty() || headers.reset().isEmpty()) {
+            return;
+        }
+        long remaining = headers.remaining().getAsLong();
+        Duration reset = headers.reset().get();
+        if (remaining <= 0) {
+            LOGGER.fine(() -> "No requests remaining, waiting %ds for the rate limit window to reset".formatted(reset.toSeconds()));
+            backoffFor(reset.toNanos());
+            RateLimitBackoffEvent.emit(endpoint.pathTemplate(), 0, reset.toMillis(), "No remaining requests in rate limit window");
+        } else {
+            rateLimiter.adjustRate(remaining / (double) Math.max(1, reset.toSeconds()));
+        }
+    }
+
+    private void backoffFor(long nanos) {
+        long backoffUntil = System.nanoTime() + nanos;
+        backoffUntilNanos.accumulateAndGet(backoffUntil, (current, next) -> current - next > 0 ? current : next);
+    }
+
+    private CompletableFuture<Void> delay(long nanos) {
+        Executor delayed = CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS, executor);
+        return CompletableFuture.runAsync(() -> {
+        }, delayed);
+    }
+
+    /**
+     * Deserializes straight from the received bytes. The body is only decoded to a String when deserialization fails.
+     */
+    private <T extends HostupApiResponse> ApiResponse toApiResponse(int httpStatusCode, byte[] body, Class<T> responseType) throws JsonMappingException {
+        if (httpStatusCode != 200) {
+            ErrorResponse deserialized = deserialize(httpStatusCode, body, ErrorResponse.class, responseType);
+            return new ApiResponse(false, httpStatusCode, body, deserialized);
+        }
+        T deserialized = deserialize(httpStatusCode, body, responseType, responseType);
+        return new ApiResponse(true, httpStatusCode, body, deserialized);
+    }
+
+    /**
+     * @param expectedType reported in the exception, differs from {@code type} for error responses
+     */
+    private <T> T deserialize(int httpStatusCode, byte[] body, Class<T> type, Class<?> expectedType) throws JsonMappingException {
+        JsonDecodeEvent event = new JsonDecodeEvent();
+        event.begin();
         try {
-            T deserialized = dslJson.deserialize(responseType, bodyBytes, bodyBytes.length);
-            return new ApiResponse(true, response.statusCode(), bodyAsString, deserialized);
+            T deserialized = dslJson.deserialize(type, body, body.length);
+            event.complete(type, body.length, true);
+            return deserialized;
         } catch (IOException e) {
-            throw new JsonMappingException(httpStatusCode, "Failed to deserialize JSON as " + responseType.getName(), bodyAsString, e);
+            event.complete(type, body.length, false);
+            throw new JsonMappingException(httpStatusCode, "Failed to deserialize JSON as " + expectedType.getName(), asString(body), e);
         }
     }
 
-    private long calculateExponentialBackoff(int retryCount) {
-        int effectiveRetry = Math.max(1, retryCount);
-        long baseDelayMillis = firstBackoffMillis * (1L << (effectiveRetry - 1));
-        long jitter = (long) (Math.random() * 500L);
-        return baseDelayMillis + jitter;
+    private static String asString(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static long jitterMillis() {
+        return (long) (Math.random() * 500L);
     }
 
     private HttpRequest.Builder newRequestBuilder(String relativePath) {
@@ -1,63 +1,257 @@
 package cloud.marton.hostup_dns_client;
 
+import cloud.marton.hostup_dns_client.cache.RecordCache;
+import cloud.marton.hostup_dns_client.cache.RecordJournal;
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import cloud.marton.hostup_dns_client.dns.PropagationChecker;
 import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
 import cloud.marton.hostup_dns_client.exceptions.LegoArgumentResult;
 import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
 import cloud.marton.hostup_dns_client.model.ApiResponse;
 import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.SetRecordResponse;
 import cloud.marton.hostup_dns_client.model.ZonesResponse;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class LegoArgumentHandler {
+    private static final Logger LOGGER = Logger.getLogger(LegoArgumentHandler.class.getName());
+
     private final HostupApiClient client;
+    private final ZoneCache zoneCache;
+    private final RecordJournal recordJournal;
+    private final PropagationChecker propagationChecker;
 
     public LegoArgumentHandler(HostupApiClient client) {
+        this(client, ZoneCache.disabled(), RecordJournal.disabled());
+    }
+
+    public LegoArgumentHandler(HostupApiClient client, ZoneCache zoneCache, RecordJournal recordJournal) {
+        this(client, zoneCache, recordJournal, PropagationChecker.disabled());
+    }
+
+    /**
+     * @param propagationChecker after {@code present}, waits until the authoritative nameservers serve the record
+     */
+    public LegoArgumentHandler(HostupApiClient client, ZoneCache zoneCache, RecordJournal recordJournal, PropagationChecker propagationChecker) {
         this.client = client;
+        this.zoneCache = zoneCache;
+        this.recordJournal = recordJournal;
+        this.propagationChecker = propagationChecker;
     }
 
     public LegoArgumentResult handleLegoArgs(CliParser.LegoArgs legoArgs) throws RateLimitException,
             JsonMappingException,
             IOException,
             InterruptedException {
+        if (legoArgs.action() == CliParser.LegoAction.CLEANUP) {
+            Optional<RecordJournal.Entry> journaled = recordJournal.find(legoArgs.domain(), legoArgs.value());
+            if (journaled.isPresent()) {
+                RecordJournal.Entry entry = journaled.get();
+                ApiResponse apiResponse = client.deleteDnsRecord(entry.zoneId(), entry.recordId());
+                recordJournal.remove(entry);
+                if (apiResponse.success()) {
+                    return new LegoArgumentResult(true, "Successfully deleted DNS record", apiResponse);
+                }
+                LOGGER.info(() -> "Deleting journaled record %d in zone %d failed with HTTP %d, looking it up instead"
+                        .formatted(entry.recordId(), entry.zoneId(), apiResponse.httpStatus()));
+            }
+        }
+
+        Optional<ZoneIndex.Match<Integer>> cachedZone = zoneCache.read()
+                .flatMap(zoneIds -> ZoneIndex.ofZoneIds(zoneIds).find(legoArgs.domain()));
+        if (cachedZone.isPresent()) {
+            LegoArgumentResult result = handleZone(legoArgs, cachedZone.get().value());
+            if (result.isSuccess() || result.getApiResponse().success()) {
+                return result;
+            }
+            LOGGER.info(() -> "Request with cached zone ID %d for %s failed with HTTP %d, refreshing zone cache"
+                    .formatted(cachedZone.get().value(), cachedZone.get().domain(), result.getApiResponse().httpStatus()));
+            zoneCache.invalidate();
+        }
+
         ApiResponse zones = client.getZones();
         if (!zones.success()) {
             return new LegoArgumentResult(false, "Could not get zones", zones);
         }
-        String nakedDomain = getNakedDomain(legoArgs.domain());
-        Optional<ZonesResponse.Zone> zone = ((ZonesResponse) zones.parsedResponse())
-                .data()
-                .zones()
-                .stream()
-                .filter(z -> z.domain().equalsIgnoreCase(nakedDomain))
-                .findFirst();
+        List<ZonesResponse.Zone> zoneList = ((ZonesResponse) zones.parsedResponse()).data().zones();
+        zoneCache.write(ZoneIndex.zoneIds(zoneList));
+        Optional<ZonesResponse.Zone> zone = ZoneIndex.of(zoneList).get(legoArgs.domain());
         if (zone.isEmpty()) {
-            return new LegoArgumentResult(false, "Could not find naked domain: " + nakedDomain, zones);
+            return new LegoArgumentResult(false, "Could not find a zone for domain: " + legoArgs.domain(), zones);
+        }
+        return handleZone(legoArgs, zone.get().domain_id());
+    }
+
+    /**
+     * Handles the invocations coalesced by a {@link LegoSpool}: the zones are looked up once, then the TXT records
+     * are added, and journaled records deleted, concurrently. Invocations that fail this way, e.g. because of a stale
+     * cached zone ID, or cleanups without journal entry, are handled one by one with
+     * {@link #handleLegoArgs(CliParser.LegoArgs)}.
+     *
+     * @return one result per invocation, in the same order
+     */
+    public List<LegoArgumentResult> handleAll(List<CliParser.LegoArgs> batch, int parallelism) throws RateLimitException,
+            JsonMappingException,
+            IOException,
+            InterruptedException {
+        return handleAll(batch, parallelism, LegoSpool.ResultListener.NONE);
+    }
+
+    /**
+     * @param listener is told each result as soon as it is known, e.g. when the propagation check of its record is
+     *                 done, while the other records are still checked
+     */
+    public List<LegoArgumentResult> handleAll(List<CliParser.LegoArgs> batch,
+                                              int parallelism,
+                                              LegoSpool.ResultListener listener) throws RateLimitException,
+            JsonMappingException,
+            IOException,
+            InterruptedException {
+        LegoArgumentResult[] results = new LegoArgumentResult[batch.size()];
+        ZoneIndex<Integer> cachedZones = ZoneIndex.ofZoneIds(zoneCache.read().orElse(Map.of()));
+        if (batch.stream().anyMatch(legoArgs -> cachedZones.find(legoArgs.domain()).isEmpty())) {
+            ApiResponse zones = client.getZones();
+            if (!zones.success()) {
+                Arrays.fill(results, new LegoArgumentResult(false, "Could not get zones", zones));
+                return List.of(results);
+            }
+            Map<String, Integer> fetched = ZoneIndex.zoneIds(((ZonesResponse) zones.parsedResponse()).data().zones());
+            zoneCache.write(fetched);
+            return handleAll(batch, parallelism, listener, ZoneIndex.ofZoneIds(fetched), zones, results);
+        }
+        return handleAll(batch, parallelism, listener, cachedZones, null, results);
+    }
+
+    private List<LegoArgumentResult> handleAll(List<CliParser.LegoArgs> batch,
+                                               int parallelism,
+                                               LegoSpool.ResultListener listener,
+                                               ZoneIndex<Integer> zoneIndex,
+                                               ApiResponse zones,
+                                               LegoArgumentResult[] results) throws RateLimitException,
+            JsonMappingException,
+            IOException,
+            InterruptedException {
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        List<Integer> oneByOne = Collections.synchronizedList(new ArrayList<>());
+        // The propagation checks of the added records run at the same time, each result is reported when its check is done
+        try (ExecutorService propagationChecks = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < batch.size(); i++) {
+                int index = i;
+                CliParser.LegoArgs legoArgs = batch.get(i);
+                Integer zoneId = zoneIndex.get(legoArgs.domain()).orElse(null);
+                if (zoneId == null) {
+                    results[i] = new LegoArgumentResult(false, "Could not find a zone for domain: " + legoArgs.domain(), zones);
+                    listener.completed(i, results[i]);
+                } else if (legoArgs.action() == CliParser.LegoAction.PRESENT) {
+                    limiter.submit(() -> client.setDnsRecordAsync(zoneId, "TXT", legoArgs.domain(), legoArgs.value(), 300),
+                            (apiResponse, throwable) -> {
+                                if (throwable == null && apiResponse.success()) {
+                                    int recordId = ((SetRecordResponse) apiResponse.parsedResponse()).data().record().id();
+                                    recordJournal.record(legoArgs.domain(), legoArgs.value(), zoneId, recordId);
+                                    results[index] = new LegoArgumentResult(true, "Successfully added TXT record", apiResponse);
+                                    if (propagationChecker.isEnabled()) {
+                                        propagationChecks.submit(() -> {
+                                            awaitPropagationQuietly(legoArgs);
+                                            listener.completed(index, results[index]);
+                                        });
+                                    } else {
+                                        listener.completed(index, results[index]);
+                                    }
+                                } else {
+                                    oneByOne.add(index);
+                                }
+                            });
+                } else {
+                    Optional<RecordJournal.Entry> journaled = recordJournal.find(legoArgs.domain(), legoArgs.value());
+                    if (journaled.isEmpty()) {
+                        oneByOne.add(index);
+                        continue;
+                    }
+                    RecordJournal.Entry entry = journaled.get();
+                    limiter.submit(() -> client.deleteDnsRecordAsync(entry.zoneId(), entry.recordId()),
+                            (apiResponse, throwable) -> {
+                                if (throwable == null && apiResponse.success()) {
+                                    recordJournal.remove(entry);
+                                    results[index] = new LegoArgumentResult(true, "Successfully deleted DNS record", apiResponse);
+                                    listener.completed(index, results[index]);
+                                } else {
+                                    oneByOne.add(index);
+                                }
+                            });
+                }
+            }
+            // Waits for the callbacks too, so every entry has a result, a running propagation check or is in oneByOne
+            limiter.awaitAll();
+
+            List<Integer> remaining;
+            synchronized (oneByOne) {
+                remaining = oneByOne.stream().sorted().toList();
+            }
+            for (int index : remaining) {
+                results[index] = handleLegoArgs(batch.get(index));
+                listener.completed(index, results[index]);
+            }
         }
+        return List.of(results);
+    }
+
+    /**
+     * A failing propagation check does not fail the invocation, the record was added and is in the journal
+     */
+    private void awaitPropagationQuietly(CliParser.LegoArgs legoArgs) {
+        try {
+            awaitPropagation(propagationChecker, legoArgs.domain(), legoArgs.value());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not check the propagation of TXT record " + legoArgs.domain());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    private LegoArgumentResult handleZone(CliParser.LegoArgs legoArgs, int zoneId) throws RateLimitException,
+            JsonMappingException,
+            IOException,
+            InterruptedException {
         if (legoArgs.action() == CliParser.LegoAction.PRESENT) {
-            ApiResponse apiResponse = client.setDnsRecord(zone.get().domain_id(), "TXT", legoArgs.domain(), legoArgs.value(), 300);
+            ApiResponse apiResponse = client.setDnsRecord(zoneId, "TXT", legoArgs.domain(), legoArgs.value(), 300);
             if (!apiResponse.success()) {
                 return new LegoArgumentResult(false, "Could not add TXT record for domain: " + legoArgs.domain(), apiResponse);
             }
+            int recordId = ((SetRecordResponse) apiResponse.parsedResponse()).data().record().id();
+            recordJournal.record(legoArgs.domain(), legoArgs.value(), zoneId, recordId);
+            if (propagationChecker.isEnabled()) {
+                awaitPropagation(propagationChecker, legoArgs.domain(), legoArgs.value());
+            }
             return new LegoArgumentResult(true, "Successfully added TXT record", apiResponse);
         } else {
-            ApiResponse dnsRecords = client.getDnsRecords(zone.get().domain_id());
-            if (!dnsRecords.success()) {
-                return new LegoArgumentResult(false, "Could not get DNS records for domainId: " + zone.get().domain_id(), dnsRecords);
-            }
-            Optional<DnsRecordsResponse.Record> record = ((DnsRecordsResponse) dnsRecords.parsedResponse())
-                    .data()
-                    .zone()
-                    .records()
-                    .stream()
-                    .filter(r -> r.name().equalsIgnoreCase(legoArgs.domain()))
-                    .findFirst();
+            Optional<DnsRecordsResponse.Record> record = client.recordCache()
+                    .get(zoneId)
+                    .flatMap(records -> findChallengeRecord(records, legoArgs));
             if (record.isEmpty()) {
-                return new LegoArgumentResult(false, "Could not find DNS record for domain: " + legoArgs.domain(), dnsRecords);
+                ApiResponse dnsRecords = client.getDnsRecords(zoneId);
+                if (!dnsRecords.success()) {
+                    return new LegoArgumentResult(false, "Could not get DNS records for domainId: " + zoneId, dnsRecords);
+                }
+                record = findChallengeRecord(RecordCache.ZoneRecords.of(((DnsRecordsResponse) dnsRecords.parsedResponse())
+                        .data()
+                        .zone()
+                        .records()), legoArgs);
+                if (record.isEmpty()) {
+                    return new LegoArgumentResult(false, "Could not find DNS record for domain: " + legoArgs.domain(), dnsRecords);
+                }
             }
-            ApiResponse apiResponse = client.deleteDnsRecord(zone.get().domain_id(), record.get().id());
+            ApiResponse apiResponse = client.deleteDnsRecord(zoneId, record.get().id());
             if (!apiResponse.success()) {
                 return new LegoArgumentResult(false, "Could not delete TXT record for domain: " + legoArgs.domain(), apiResponse);
             }
@@ -65,14 +259,25 @@ public class LegoArgumentHandler {
         }
     }
 
-    private String getNakedDomain(String domain) {
-        String[] parts = domain.split("\\.");
-        if (parts.length < 2) {
-            return domain;
+    /**
+     * Only logs when the record is not served in time, the CA may still find it and Lego has its own propagation check
+     */
+    static void awaitPropagation(PropagationChecker propagationChecker, String name, String value) throws IOException, InterruptedException {
+        PropagationChecker.Result result = propagationChecker.await(name, value);
+        if (result.propagated()) {
+            LOGGER.info(() -> "TXT record %s is served by all authoritative nameservers after %dms"
+                    .formatted(name, result.elapsed().toMillis()));
         } else {
-            return parts[parts.length - 2] + "." + parts[parts.length - 1];
+            LOGGER.warning(() -> "TXT record %s is not served by %s after %ds"
+                    .formatted(name, String.join(", ", result.pending()), result.elapsed().toSeconds()));
         }
     }
 
-
+    /**
+     * Prefers the TXT record with the challenge value, so concurrent challenges for the same name are not mixed up
+     */
+    private static Optional<DnsRecordsResponse.Record> findChallengeRecord(RecordCache.ZoneRecords records, CliParser.LegoArgs legoArgs) {
+        return records.find(legoArgs.domain(), "TXT", legoArgs.value())
+                .or(() -> records.findByName(legoArgs.domain()).stream().findFirst());
+    }
 }
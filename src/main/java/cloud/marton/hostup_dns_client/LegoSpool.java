@@ -0,0 +1,321 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
+import cloud.marton.hostup_dns_client.exceptions.LegoArgumentResult;
+import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coalesces the Lego invocations that run at the same time, e.g. the one process per SAN that Traefik starts for a
+ * certificate, so they share one zone lookup instead of all listing the zones and running into HTTP 429 together.
+ * <p>
+ * Every invocation writes its action to a request file in the spool directory and tries to lock the leader lock
+ * file. The invocation that gets the lock waits {@code window} for the others, claims all request files and hands
+ * them to the {@link BatchHandler} together. It writes the result file of a request as soon as the handler reports
+ * it, and the remaining ones before it releases the lock. The other invocations wait for their result file, and
+ * become leader themselves when the lock is released without one, e.g. because their request came too late for the
+ * batch or the leader died.
+ */
+public final class LegoSpool {
+
+    private static final Logger LOGGER = Logger.getLogger(LegoSpool.class.getName());
+    /**
+     * How long a follower waits at least, for the requests of the batch themselves
+     */
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(3);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+    private static final String REQUEST = ".request";
+    private static final String CLAIMED = ".claimed";
+    private static final String RESULT = ".result";
+
+    private final Path directory;
+    private final Duration window;
+    private final Duration timeout;
+
+    /**
+     * @param window how long a leader waits for more invocations before it handles the batch
+     * @param timeout how long a follower waits for its result before it gives up
+     */
+    public LegoSpool(Path directory, Duration window, Duration timeout) {
+        this.directory = directory;
+        this.window = window;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param waits how long the leader may wait on top of the requests, e.g. for the backoffs of retries and for
+     *              propagation checks. Followers wait that much longer for their result.
+     * @return a spool directory in {@code directory} that is unique for the given API endpoint and key
+     */
+    public static LegoSpool forAccount(Path directory, URI baseUri, String apiKey, Duration window, Duration waits) {
+        return new LegoSpool(directory.resolve("spool-" + ZoneCache.accountKey(baseUri, apiKey)), window,
+                window.plus(DEFAULT_TIMEOUT).plus(waits));
+    }
+
+    public static LegoSpool disabled() {
+        return new LegoSpool(null, Duration.ZERO, DEFAULT_TIMEOUT);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    @FunctionalInterface
+    public interface BatchHandler {
+        /**
+         * @param listener may be told each result as soon as it is known, so its invocation need not wait for the
+         *                 whole batch
+         * @return one result per invocation, in the same order
+         */
+        List<LegoArgumentResult> handle(List<CliParser.LegoArgs> batch, ResultListener listener) throws IOException,
+                InterruptedException,
+                RateLimitException,
+                JsonMappingException;
+    }
+
+    @FunctionalInterface
+    public interface ResultListener {
+
+        ResultListener NONE = (index, result) -> {
+        };
+
+        /**
+         * Called at most once per invocation, possibly from several threads at the same time
+         *
+         * @param index of the invocation in the batch
+         */
+        void completed(int index, LegoArgumentResult result);
+    }
+
+    /**
+     * Handles {@code legoArgs} together with the invocations running at the same time, in this process or others
+     */
+    public LegoArgumentResult submit(CliParser.LegoArgs legoArgs, BatchHandler handler) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        if (!isEnabled()) {
+            return handler.handle(List.of(legoArgs), ResultListener.NONE).getFirst();
+        }
+        Files.createDirectories(directory);
+        // The process ID tells a new leader whether a request left behind by a dead leader is still awaited
+        String id = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+        writeAtomically(directory.resolve(id + REQUEST), toProperties(legoArgs));
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            LegoArgumentResult result = readResult(id);
+            if (result != null) {
+                return result;
+            }
+            try (FileChannel channel = FileChannel.open(directory.resolve("leader.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = tryLock(channel)) {
+                if (lock != null) {
+                    // The previous leader may have handled this request just before it released the lock
+                    result = readResult(id);
+                    return result != null ? result : lead(id, handler);
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                if (Files.deleteIfExists(directory.resolve(id + REQUEST))) {
+                    LOGGER.warning(() -> "No leader took the request for %s in %ds, handling it alone"
+                            .formatted(legoArgs.domain(), timeout.toSeconds()));
+                    return handler.handle(List.of(legoArgs), ResultListener.NONE).getFirst();
+                }
+                throw new IOException("Timed out after %ds waiting for the result for %s from the leader"
+                        .formatted(timeout.toSeconds(), legoArgs.domain()));
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Runs while holding the leader lock. Claimed requests without a result were left behind by a leader that died,
+     * they are handled again if their process is still waiting.
+     */
+    private LegoArgumentResult lead(String ownId, BatchHandler handler) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        Thread.sleep(window);
+        List<String> ids = new ArrayList<>();
+        List<CliParser.LegoArgs> batch = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + REQUEST + "," + CLAIMED + "}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.lastIndexOf('.'));
+                Path claimed = directory.resolve(id + CLAIMED);
+                try {
+                    if (name.endsWith(CLAIMED) && !isWaiting(id)) {
+                        Files.delete(file);
+                        continue;
+                    }
+                    if (name.endsWith(REQUEST)) {
+                        Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    batch.add(fromProperties(readProperties(claimed)));
+                    ids.add(id);
+                } catch (NoSuchFileException e) {
+                    // The invocation gave up waiting and removed its request
+                } catch (IOException | IllegalArgumentException e) {
+                    LOGGER.log(Level.WARNING, e, () -> "Dropping unreadable spool request " + file);
+                    Files.deleteIfExists(claimed);
+                }
+            }
+        }
+        int ownIndex = ids.indexOf(ownId);
+        if (ownIndex < 0) {
+            throw new IOException("Own request %s is missing from spool directory %s".formatted(ownId, directory));
+        }
+        LOGGER.info(() -> "Handling %d coalesced Lego invocations".formatted(ids.size()));
+
+        Set<Integer> published = ConcurrentHashMap.newKeySet();
+        ResultListener listener = (index, result) -> {
+            if (index != ownIndex && published.add(index)) {
+                try {
+                    writeResult(ids.get(index), result);
+                } catch (IOException e) {
+                    // Written again with the others once the batch is done
+                    published.remove(index);
+                    LOGGER.log(Level.WARNING, e, () -> "Could not write the result for " + batch.get(index).domain());
+                }
+            }
+        };
+        List<LegoArgumentResult> results;
+        try {
+            results = handler.handle(batch, listener);
+        } catch (IOException | InterruptedException | RateLimitException | JsonMappingException | RuntimeException e) {
+            for (int i = 0; i < ids.size(); i++) {
+                if (i != ownIndex && !published.contains(i)) {
+                    writeResult(ids.get(i), new LegoArgumentResult(false, "The leader invocation failed: " + e, null));
+                }
+            }
+            Files.deleteIfExists(directory.resolve(ownId + CLAIMED));
+            throw e;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (i != ownIndex && published.add(i)) {
+                writeResult(ids.get(i), results.get(i));
+            }
+        }
+        Files.deleteIfExists(directory.resolve(ownId + CLAIMED));
+        return results.get(ownIndex);
+    }
+
+    private void writeResult(String id, LegoArgumentResult result) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("success", Boolean.toString(result.isSuccess()));
+        properties.setProperty("message", result.getMessage());
+        ApiResponse apiResponse = result.getApiResponse();
+        if (apiResponse != null) {
+            properties.setProperty("api-success", Boolean.toString(apiResponse.success()));
+            properties.setProperty("http-status", Integer.toString(apiResponse.httpStatus()));
+            properties.setProperty("body", Base64.getEncoder().encodeToString(apiResponse.rawBody()));
+        }
+        writeAtomically(directory.resolve(id + RESULT), properties);
+        Files.deleteIfExists(directory.resolve(id + CLAIMED));
+    }
+
+    /**
+     * @return the result and removes its file, or null when there is none yet
+     */
+    private LegoArgumentResult readResult(String id) throws IOException {
+        Path file = directory.resolve(id + RESULT);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = readProperties(file);
+        Files.delete(file);
+        ApiResponse apiResponse = properties.containsKey("http-status") ?
+                new ApiResponse(Boolean.parseBoolean(properties.getProperty("api-success")),
+                        Integer.parseInt(properties.getProperty("http-status")),
+                        Base64.getDecoder().decode(properties.getProperty("body")),
+                        null) :
+                new ApiResponse(false, 0, new byte[0], null);
+        return new LegoArgumentResult(Boolean.parseBoolean(properties.getProperty("success")), properties.getProperty("message"), apiResponse);
+    }
+
+    private static boolean isWaiting(String id) {
+        try {
+            return ProcessHandle.of(Long.parseLong(id.substring(0, id.indexOf('-')))).map(ProcessHandle::isAlive).orElse(false);
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the lock, or null when another process, or another thread of this one, is the leader
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static Properties toProperties(CliParser.LegoArgs legoArgs) {
+        Properties properties = new Properties();
+        properties.setProperty("action", legoArgs.action().name());
+        properties.setProperty("domain", legoArgs.domain());
+        properties.setProperty("value", legoArgs.value());
+        return properties;
+    }
+
+    private static CliParser.LegoArgs fromProperties(Properties properties) {
+        String action = properties.getProperty("action");
+        String domain = properties.getProperty("domain");
+        String value = properties.getProperty("value");
+        if (action == null || domain == null || value == null) {
+            throw new IllegalArgumentException("Incomplete request " + properties);
+        }
+        return new CliParser.LegoArgs(CliParser.LegoAction.valueOf(action), domain, value);
+    }
+
+    private static Properties readProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+        return properties;
+    }
+
+    /**
+     * Readers only ever see complete files, the temporary file does not match their patterns
+     */
+    private static void writeAtomically(Path file, Properties properties) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tmp)) {
+                properties.store(output, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
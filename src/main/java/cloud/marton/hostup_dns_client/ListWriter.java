@@ -0,0 +1,130 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.json.DslJsonFactory;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import com.dslplatform.json.JsonWriter;
+import com.dslplatform.json.NumberConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the zones of {@code --list-zones} or the records of {@code --list-records} one per line, as NDJSON objects
+ * or tab separated values, with only the requested fields.
+ * <p>
+ * It is fed by {@link HostupApiClient#streamZonesAsync} and {@link HostupApiClient#streamDnsRecordsAsync}, so every
+ * line is written to the output as soon as its element has been decoded and nothing is collected in memory. Strings
+ * are encoded straight to bytes, JSON through one reused {@link JsonWriter}.
+ */
+final class ListWriter {
+
+    static final List<String> RECORD_FIELDS = List.of("id", "type", "name", "value", "ttl", "status", "created");
+    /**
+     * {@code id} and {@code name} are the {@code domain_id} and {@code domain} of the zone
+     */
+    static final List<String> ZONE_FIELDS = List.of("id", "name", "server_id", "account_id");
+
+    private final CliParser.OutputFormat format;
+    private final List<String> fields;
+    private final OutputStream output;
+    private final JsonWriter jsonWriter = DslJsonFactory.shared().newWriter();
+    private final byte[][] jsonKeys;
+
+    /**
+     * @param output should be buffered, it is written to once per field
+     */
+    ListWriter(CliParser.OutputFormat format, List<String> fields, OutputStream output) {
+        if (format == CliParser.OutputFormat.JSON) {
+            throw new IllegalArgumentException("JSON output is the response body, written as received");
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        this.format = format;
+        this.fields = List.copyOf(fields);
+        this.output = output;
+        jsonKeys = new byte[fields.size()][];
+        for (int i = 0; i < fields.size(); i++) {
+            jsonKeys[i] = ((i == 0 ? "{\"" : ",\"") + fields.get(i) + "\":").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    void writeRecord(DnsRecordsResponse.Record record) throws IOException {
+        beginLine();
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i)) {
+                case "id" -> writeField(i, record.id());
+                case "type" -> writeField(i, record.type());
+                case "name" -> writeField(i, record.name());
+                case "value" -> writeField(i, record.value());
+                case "ttl" -> writeField(i, record.ttl());
+                case "status" -> writeField(i, record.status());
+                case "created" -> writeField(i, record.created());
+                default -> throw new IllegalArgumentException("Unknown record field: " + fields.get(i));
+            }
+        }
+        endLine();
+    }
+
+    void writeZone(ZonesResponse.Zone zone) throws IOException {
+        beginLine();
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i)) {
+                case "id" -> writeField(i, zone.domain_id());
+                case "name" -> writeField(i, zone.domain());
+                case "server_id" -> writeField(i, zone.server_id());
+                case "account_id" -> writeField(i, zone.account_id());
+                default -> throw new IllegalArgumentException("Unknown zone field: " + fields.get(i));
+            }
+        }
+        endLine();
+    }
+
+    void flush() throws IOException {
+        output.flush();
+    }
+
+    private void beginLine() {
+        if (format == CliParser.OutputFormat.NDJSON) {
+            jsonWriter.reset();
+        }
+    }
+
+    private void writeField(int index, int value) throws IOException {
+        if (format == CliParser.OutputFormat.NDJSON) {
+            jsonWriter.writeAscii(jsonKeys[index]);
+            NumberConverter.serialize(value, jsonWriter);
+        } else {
+            separator(index);
+            output.write(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void writeField(int index, String value) throws IOException {
+        if (format == CliParser.OutputFormat.NDJSON) {
+            jsonWriter.writeAscii(jsonKeys[index]);
+            jsonWriter.writeString(value);
+        } else {
+            separator(index);
+            // Tabs and line breaks inside a value would shift the columns of the line
+            output.write(value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ').getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void separator(int index) throws IOException {
+        if (index > 0) {
+            output.write('\t');
+        }
+    }
+
+    private void endLine() throws IOException {
+        if (format == CliParser.OutputFormat.NDJSON) {
+            jsonWriter.writeByte((byte) '}');
+            jsonWriter.toStream(output);
+        }
+        output.write('\n');
+    }
+}
@@ -1,14 +1,40 @@
 package cloud.marton.hostup_dns_client;
 
+import cloud.marton.hostup_dns_client.cache.ImportCheckpoint;
+import cloud.marton.hostup_dns_client.cache.RecordCache;
+import cloud.marton.hostup_dns_client.cache.RecordJournal;
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import cloud.marton.hostup_dns_client.dns.PropagationChecker;
 import cloud.marton.hostup_dns_client.exceptions.CliParserException;
 import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
 import cloud.marton.hostup_dns_client.exceptions.LegoArgumentResult;
 import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
 import cloud.marton.hostup_dns_client.logging.LoggingConfigurator;
+import cloud.marton.hostup_dns_client.metrics.ClientMetrics;
 import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.DesiredState;
+import cloud.marton.hostup_dns_client.ratelimit.TokenBucket;
+import cloud.marton.hostup_dns_client.retry.CircuitBreaker;
+import cloud.marton.hostup_dns_client.retry.Hedging;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,6 +46,11 @@ public class Main {
 
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
 
+    /**
+     * The metrics of the client of every account, written together by the {@code --metrics-file} shutdown hook
+     */
+    private static final List<ClientMetrics> CLIENT_METRICS = new CopyOnWriteArrayList<>();
+
     static void main(String[] args) {
         try {
             CliParser cliParser = new CliParser();
@@ -33,7 +64,14 @@ public class Main {
                 System.out.println(getVersion());
                 return;
             }
-            HostupApiClient client = new HostupApiClient(options.apiKey(), options.baseUri());
+            if (options.metricsFile() != null) {
+                // A shutdown hook also covers the runs that end with System.exit(1)
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMetrics(ClientMetrics.sum(CLIENT_METRICS), options.metricsFile())));
+            }
+            AccountRouter.Account account = options.apiKeys().size() == 1 ?
+                    newAccount(options, options.apiKey()) :
+                    selectAccount(options);
+            HostupApiClient client = account.client();
             if (options.addRecord() != null) {
                 var record = options.addRecord();
                 ApiResponse apiResponse = client.setDnsRecord(
@@ -43,18 +81,106 @@ public class Main {
                         record.value(),
                         record.ttl());
                 printApiResponse(apiResponse);
+                if ("TXT".equalsIgnoreCase(record.type()) && options.waitPropagation().isPositive()) {
+                    LegoArgumentHandler.awaitPropagation(propagationChecker(options), record.domain(), record.value());
+                }
             } else if (options.deleteDomain() != null) {
-                throw new RuntimeException("Not implemented yet");
+                DomainDeleter domainDeleter = new DomainDeleter(client, options.parallelism());
+                DomainDeleter.Result result = domainDeleter.deleteDomain(options.deleteDomain(), System.out);
+                if (result.success()) {
+                    System.out.println(result.message());
+                } else {
+                    System.err.println("ERROR: " + result.message() + "\n" + result.apiResponse().body());
+                    System.exit(1);
+                }
             } else if (options.deleteRecord() != null) {
                 ApiResponse apiResponse = client.deleteDnsRecord(options.deleteRecord().zoneId(), options.deleteRecord().recordId());
                 printApiResponse(apiResponse);
             } else if (options.listZones()) {
-                printApiResponse(client.getZones());
+                if (options.apiKeys().size() > 1) {
+                    printZonesOfAllAccounts(options);
+                } else if (options.output() == CliParser.OutputFormat.JSON) {
+                    printApiResponse(client.getZones());
+                } else {
+                    streamList(client, options);
+                }
             } else if (options.listRecords() != null) {
-                printApiResponse(client.getDnsRecords(options.listRecords()));
+                if (options.output() == CliParser.OutputFormat.JSON) {
+                    printApiResponse(client.getDnsRecords(options.listRecords()));
+                } else {
+                    streamList(client, options);
+                }
+            } else if (options.batch() != null) {
+                BatchRunner batchRunner = new BatchRunner(client, options.parallelism());
+                int failures;
+                try (BufferedReader input = "-".equals(options.batch()) ?
+                        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                        Files.newBufferedReader(Path.of(options.batch()), StandardCharsets.UTF_8)) {
+                    failures = batchRunner.run(input, System.out);
+                }
+                if (failures > 0) {
+                    System.err.println("ERROR: %d batch operation(s) failed".formatted(failures));
+                    System.exit(1);
+                }
+            } else if (options.apply() != null) {
+                ZoneApplier zoneApplier = new ZoneApplier(client, options.parallelism());
+                DesiredState desiredState;
+                try (InputStream input = Files.newInputStream(Path.of(options.apply()))) {
+                    desiredState = zoneApplier.read(input);
+                }
+                ZoneApplier.Result result = zoneApplier.apply(desiredState, options.dryRun(), System.out);
+                if (result.success()) {
+                    System.out.println(result.message());
+                } else {
+                    System.err.println("ERROR: " + result.message() + (result.apiResponse() == null ? "" : "\n" + result.apiResponse().body()));
+                    System.exit(1);
+                }
+            } else if (options.exportZone() != null) {
+                ZoneExporter zoneExporter = new ZoneExporter(client, options.parallelism());
+                ZoneExporter.Result result;
+                try (Writer output = options.outputFile() == null ?
+                        new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+                            @Override
+                            public void close() throws IOException {
+                                flush();
+                            }
+                        } :
+                        Files.newBufferedWriter(Path.of(options.outputFile()), StandardCharsets.UTF_8)) {
+                    result = "all".equals(options.exportZone()) ?
+                            zoneExporter.exportAll(output) :
+                            zoneExporter.exportZone(Integer.parseInt(options.exportZone()), output);
+                }
+                if (!result.success()) {
+                    System.err.println("ERROR: " + result.message() + "\n" + result.apiResponse().body());
+                    System.exit(1);
+                }
+            } else if (options.importFile() != null) {
+                Path importFile = Path.of(options.importFile());
+                ImportCheckpoint checkpoint = ImportCheckpoint.forImport(options.cacheDir(), options.zone(), importFile);
+                ZoneImporter zoneImporter = new ZoneImporter(client, options.parallelism(), checkpoint);
+                ZoneImporter.Result result = zoneImporter.importFile(options.zone(), importFile, System.out);
+                if (result.success()) {
+                    System.out.println(result.message());
+                } else {
+                    System.err.println("ERROR: " + result.message()
+                            + (result.apiResponse().success() ? "" : "\n" + result.apiResponse().body()));
+                    System.exit(1);
+                }
             } else if (options.legoArgs() != null) {
-                LegoArgumentHandler legoArgumentHandler = new LegoArgumentHandler(client);
-                LegoArgumentResult result = legoArgumentHandler.handleLegoArgs(options.legoArgs());
+                RecordJournal recordJournal = RecordJournal.forAccount(
+                        options.cacheDir(),
+                        options.baseUri(),
+                        account.apiKey());
+                LegoArgumentHandler legoArgumentHandler = new LegoArgumentHandler(client, account.zoneCache(), recordJournal,
+                        options.waitPropagation().isPositive() ? propagationChecker(options) : PropagationChecker.disabled());
+                // The leader may sit out the backoffs of its retries and waits for the propagation, its followers with it
+                LegoSpool spool = options.coalesceWindow().isPositive() ?
+                        LegoSpool.forAccount(options.cacheDir(), options.baseUri(), account.apiKey(), options.coalesceWindow(),
+                                client.retryPolicy().retryBudget().plus(options.waitPropagation())) :
+                        LegoSpool.disabled();
+                LegoArgumentResult result = spool.isEnabled() ?
+                        spool.submit(options.legoArgs(), (batch, listener) -> legoArgumentHandler.handleAll(batch, options.parallelism(), listener)) :
+                        legoArgumentHandler.handleLegoArgs(options.legoArgs());
                 if (result.isSuccess()) {
                     System.out.println(result.getMessage() + "\n" + result.getApiResponse().body());
                 } else {
@@ -77,15 +203,150 @@ public class Main {
         }
     }
 
+    private static AccountRouter.Account newAccount(CliParser.CliOptions options, String apiKey) {
+        // One rate limiter per account, the API limits each key on its own
+        TokenBucket rateLimiter = new TokenBucket(options.rateLimit(), options.rateLimit());
+        // Cleanups of coalesced Lego invocations in the same zone find their records without downloading it again
+        RecordCache recordCache = options.legoArgs() != null ?
+                new RecordCache(options.recordCacheTtl(), RecordCache.DEFAULT_MAX_ZONES, Clock.systemUTC()) :
+                RecordCache.disabled();
+        HostupApiClient client = HostupApiClient.builder(apiKey, options.baseUri())
+                .hedging(options.hedge() ? Hedging.p95() : Hedging.disabled())
+                .circuitBreaker(CircuitBreaker.standard())
+                .rateLimiter(rateLimiter)
+                .recordCache(recordCache)
+                .maxInFlight(options.maxInFlight())
+                .build();
+        CLIENT_METRICS.add(client.metrics());
+        return new AccountRouter.Account(
+                apiKey,
+                client,
+                ZoneCache.forAccount(options.cacheDir(), options.zoneCacheTtl(), options.baseUri(), apiKey));
+    }
+
+    /**
+     * With several API keys, finds the account with the zone or domain of the operation
+     */
+    private static AccountRouter.Account selectAccount(CliParser.CliOptions options) throws CliParserException,
+            IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        if (options.listZones() || options.help() || options.version()) {
+            return newAccount(options, options.apiKey());
+        }
+        AccountRouter router = new AccountRouter(options.apiKeys().stream().map(apiKey -> newAccount(options, apiKey)).toList());
+        Integer zoneId = null;
+        String domain = null;
+        if (options.addRecord() != null) {
+            zoneId = options.addRecord().zoneId();
+        } else if (options.deleteRecord() != null) {
+            zoneId = options.deleteRecord().zoneId();
+        } else if (options.listRecords() != null) {
+            zoneId = options.listRecords();
+        } else if (options.importFile() != null) {
+            zoneId = options.zone();
+        } else if (options.exportZone() != null && !"all".equals(options.exportZone())) {
+            zoneId = Integer.parseInt(options.exportZone());
+        } else if (options.deleteDomain() != null) {
+            domain = options.deleteDomain();
+        } else if (options.legoArgs() != null) {
+            domain = options.legoArgs().domain();
+        } else {
+            throw new CliParserException("--apply, --batch and --export-zone all work on one account, give a single API key");
+        }
+        Optional<AccountRouter.Account> account = zoneId != null ?
+                router.account(zoneId) :
+                router.route(domain).map(AccountRouter.Route::account);
+        if (account.isEmpty()) {
+            for (AccountRouter.Failure failure : router.failures()) {
+                if (failure.apiResponse() != null) {
+                    System.err.writeBytes(failure.apiResponse().rawBody());
+                    System.err.println();
+                } else {
+                    System.err.println("ERROR: " + failure.error().getMessage());
+                }
+            }
+            System.err.println("ERROR: None of the %d accounts has a zone for: %s"
+                    .formatted(options.apiKeys().size(), zoneId != null ? zoneId : domain));
+            System.exit(1);
+        }
+        return account.get();
+    }
+
+    /**
+     * Prints the zone list of every account, one response per line, fetched concurrently. With {@code --output}
+     * ndjson or tsv the zones of the accounts are streamed one account after the other.
+     */
+    private static void printZonesOfAllAccounts(CliParser.CliOptions options) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        if (options.output() != CliParser.OutputFormat.JSON) {
+            for (String apiKey : options.apiKeys()) {
+                streamList(newAccount(options, apiKey).client(), options);
+            }
+            return;
+        }
+        List<CompletableFuture<ApiResponse>> zones = options.apiKeys()
+                .stream()
+                .map(apiKey -> newAccount(options, apiKey).client().getZonesAsync())
+                .toList();
+        for (CompletableFuture<ApiResponse> future : zones) {
+            printApiResponse(HostupApiClient.await(future));
+        }
+    }
+
+    /**
+     * Writes the zones, or the records of {@code --list-records}, one line each as soon as they have been decoded,
+     * see {@link ListWriter}. The buffer is small, so a pipeline sees the first lines while the rest is received.
+     */
+    private static void streamList(HostupApiClient client, CliParser.CliOptions options) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        BufferedOutputStream output = new BufferedOutputStream(System.out, 8192);
+        ListWriter listWriter = new ListWriter(options.output(), options.fields(), output);
+        ApiResponse apiResponse = HostupApiClient.await(options.listRecords() != null ?
+                client.streamDnsRecordsAsync(options.listRecords(), listWriter::writeRecord) :
+                client.streamZonesAsync(listWriter::writeZone));
+        listWriter.flush();
+        if (!apiResponse.success()) {
+            printApiResponse(apiResponse);
+        }
+    }
+
+    private static PropagationChecker propagationChecker(CliParser.CliOptions options) throws IOException {
+        return new PropagationChecker(PropagationChecker.resolver(options.resolver()), options.waitPropagation());
+    }
+
     private static void printApiResponse(ApiResponse apiResponse) {
         if (apiResponse.success()) {
-            System.out.println(apiResponse.body());
+            System.out.writeBytes(apiResponse.rawBody());
+            System.out.println();
         } else {
-            System.err.println(apiResponse.body());
+            System.err.writeBytes(apiResponse.rawBody());
+            System.err.println();
             System.exit(1);
         }
     }
 
+    /**
+     * Logging is shut down by its own shutdown hook, so errors go straight to stderr
+     */
+    private static void writeMetrics(ClientMetrics metrics, String metricsFile) {
+        try {
+            if ("-".equals(metricsFile)) {
+                Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                metrics.writePrometheus(output);
+            } else {
+                metrics.writeTo(Path.of(metricsFile));
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("ERROR: Could not write metrics to " + metricsFile + ": " + e);
+        }
+    }
+
     private static String getVersion() {
         return Main.class.getPackage().getImplementationVersion();
     }
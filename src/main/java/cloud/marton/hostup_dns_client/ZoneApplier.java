@@ -0,0 +1,208 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+import cloud.marton.hostup_dns_client.exceptions.ApiException;
+import cloud.marton.hostup_dns_client.json.DslJsonFactory;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.DesiredState;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import com.dslplatform.json.DslJson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements {@code --apply}: makes zones contain exactly the records of a {@link DesiredState} file.
+ * <p>
+ * The current records of all zones in the file are fetched concurrently. Records are compared by
+ * (name, type, value, ttl), so unchanged records cost no write calls and a changed TTL is one delete and one create.
+ * Records missing in the zone are created first, then records not in the file are deleted, at most
+ * {@code parallelism} requests at a time. SOA and NS records are never deleted.
+ */
+public class ZoneApplier {
+
+    private static final Set<String> PROTECTED_TYPES = Set.of("SOA", "NS");
+
+    private final HostupApiClient client;
+    private final DslJson<Object> dslJson;
+    private final int parallelism;
+
+    public ZoneApplier(HostupApiClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+        this.dslJson = DslJsonFactory.shared();
+    }
+
+    public record Result(boolean success, String message, ApiResponse apiResponse) {
+    }
+
+    /**
+     * The changes to one zone
+     */
+    public record Plan(int zoneId,
+                       List<DesiredState.Record> creates,
+                       List<DnsRecordsResponse.Record> deletes,
+                       int unchanged) {
+
+        public int apiCalls() {
+            return creates.size() + deletes.size();
+        }
+    }
+
+    public DesiredState read(InputStream input) throws IOException {
+        DesiredState desiredState = dslJson.deserialize(DesiredState.class, input);
+        if (desiredState == null) {
+            throw new IOException("Empty desired state file");
+        }
+        return desiredState;
+    }
+
+    /**
+     * Prints one tab separated line per change: {@code <zoneId> create|delete <type> <name> <ttl> <value> <status>}.
+     * The status is {@code PLANNED} for a dry run, otherwise {@code OK <http status>} or {@code FAILED <http status>}.
+     */
+    public Result apply(DesiredState desiredState, boolean dryRun, PrintStream output) throws InterruptedException {
+        Map<Integer, CompletableFuture<ApiResponse>> fetches = new LinkedHashMap<>();
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        for (DesiredState.Zone zone : desiredState.zones()) {
+            if (!fetches.containsKey(zone.zoneId())) {
+                fetches.put(zone.zoneId(), limiter.submit(() -> client.getDnsRecordsAsync(zone.zoneId())));
+            }
+        }
+        limiter.awaitAll();
+
+        Map<Integer, List<DesiredState.Record>> desiredByZone = new LinkedHashMap<>();
+        desiredState.zones().forEach(zone -> desiredByZone
+                .computeIfAbsent(zone.zoneId(), ignored -> new ArrayList<>())
+                .addAll(zone.records()));
+        List<Plan> plans = new ArrayList<>();
+        for (Map.Entry<Integer, List<DesiredState.Record>> desired : desiredByZone.entrySet()) {
+            int zoneId = desired.getKey();
+            ApiResponse dnsRecords;
+            try {
+                dnsRecords = fetches.get(zoneId).get();
+            } catch (ExecutionException e) {
+                return new Result(false, "Could not get DNS records for zoneId %d: %s".formatted(zoneId, e.getCause().getMessage()), null);
+            }
+            if (!dnsRecords.success()) {
+                return new Result(false, "Could not get DNS records for zoneId: " + zoneId, dnsRecords);
+            }
+            List<DnsRecordsResponse.Record> current = ((DnsRecordsResponse) dnsRecords.parsedResponse()).data().zone().records();
+            plans.add(plan(zoneId, desired.getValue(), current));
+        }
+
+        int creates = plans.stream().mapToInt(plan -> plan.creates().size()).sum();
+        int deletes = plans.stream().mapToInt(plan -> plan.deletes().size()).sum();
+        int unchanged = plans.stream().mapToInt(Plan::unchanged).sum();
+        String summary = "%d to create, %d to delete, %d unchanged in %d zones, %d write API calls"
+                .formatted(creates, deletes, unchanged, plans.size(), creates + deletes);
+        if (dryRun) {
+            for (Plan plan : plans) {
+                plan.creates().forEach(r -> output.println(changeLine(plan.zoneId(), "create", r.type(), r.name(), r.ttl(), r.value(), "PLANNED")));
+                plan.deletes().forEach(r -> output.println(changeLine(plan.zoneId(), "delete", r.type(), r.name(), r.ttl(), r.value(), "PLANNED")));
+            }
+            return new Result(true, "Dry run: " + summary, null);
+        }
+
+        AtomicInteger failures = new AtomicInteger();
+        for (Plan plan : plans) {
+            for (DesiredState.Record record : plan.creates()) {
+                limiter.submit(() -> client.setDnsRecordAsync(plan.zoneId(), record.type(), DomainNames.stripTrailingDot(record.name()), record.value(), record.ttl()),
+                        (apiResponse, throwable) -> output.println(changeLine(plan.zoneId(), "create",
+                                record.type(), record.name(), record.ttl(), record.value(), status(apiResponse, throwable, failures))));
+            }
+        }
+        limiter.awaitAll();
+        for (Plan plan : plans) {
+            for (DnsRecordsResponse.Record record : plan.deletes()) {
+                limiter.submit(() -> client.deleteDnsRecordAsync(plan.zoneId(), record.id()),
+                        (apiResponse, throwable) -> output.println(changeLine(plan.zoneId(), "delete",
+                                record.type(), record.name(), record.ttl(), record.value(), status(apiResponse, throwable, failures))));
+            }
+        }
+        limiter.awaitAll();
+        if (failures.get() > 0) {
+            return new Result(false, "%d of %d changes failed. Planned: %s".formatted(failures.get(), creates + deletes, summary), null);
+        }
+        return new Result(true, "Applied: " + summary, null);
+    }
+
+    /**
+     * Matches every desired record with at most one current record. Duplicate desired records are created once,
+     * duplicate current records beyond the desired ones are deleted.
+     */
+    static Plan plan(int zoneId, List<DesiredState.Record> desired, List<DnsRecordsResponse.Record> current) {
+        Map<Key, List<DnsRecordsResponse.Record>> currentByKey = new HashMap<>();
+        for (DnsRecordsResponse.Record record : current) {
+            currentByKey.computeIfAbsent(Key.of(record.name(), record.type(), record.value(), record.ttl()), ignored -> new ArrayList<>())
+                    .add(record);
+        }
+        Map<Key, DesiredState.Record> desiredByKey = new LinkedHashMap<>();
+        for (DesiredState.Record record : desired) {
+            desiredByKey.putIfAbsent(Key.of(record.name(), record.type(), record.value(), record.ttl()), record);
+        }
+
+        List<DesiredState.Record> creates = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<Key, DesiredState.Record> entry : desiredByKey.entrySet()) {
+            List<DnsRecordsResponse.Record> matches = currentByKey.get(entry.getKey());
+            if (matches == null || matches.isEmpty()) {
+                creates.add(entry.getValue());
+            } else {
+                matches.removeFirst();
+                unchanged++;
+            }
+        }
+        List<DnsRecordsResponse.Record> deletes = currentByKey.values()
+                .stream()
+                .flatMap(List::stream)
+                .filter(record -> !PROTECTED_TYPES.contains(record.type().toUpperCase(Locale.ROOT)))
+                .toList();
+        return new Plan(zoneId, creates, deletes, unchanged);
+    }
+
+    private static String status(ApiResponse apiResponse, Throwable throwable, AtomicInteger failures) {
+        if (throwable == null && apiResponse.success()) {
+            return "OK\t" + apiResponse.httpStatus();
+        }
+        failures.incrementAndGet();
+        if (throwable == null) {
+            return "FAILED\t" + apiResponse.httpStatus();
+        }
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return "FAILED\t" + (cause instanceof ApiException apiException ? apiException.getHttpStatusCode() : 0);
+    }
+
+    private static String changeLine(int zoneId, String change, String type, String name, int ttl, String value, String status) {
+        return String.join("\t",
+                Integer.toString(zoneId),
+                change,
+                type,
+                name,
+                Integer.toString(ttl),
+                value.replace('\n', ' ').replace('\t', ' '),
+                status);
+    }
+
+    private record Key(String name, String type, String value, int ttl) {
+
+        /**
+         * Values are compared as normalized by {@link DomainNames#normalizeValue}
+         */
+        static Key of(String name, String type, String value, int ttl) {
+            return new Key(DomainNames.normalize(name), type.toUpperCase(Locale.ROOT), DomainNames.normalizeValue(type, value), ttl);
+        }
+    }
+}
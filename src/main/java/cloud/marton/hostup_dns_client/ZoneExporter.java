@@ -0,0 +1,162 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
+import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Implements {@code --export-zone}: writes zones as RFC 1035 master files.
+ * <p>
+ * Records are written as they are decoded, see {@link HostupApiClient#streamDnsRecordsAsync}, so memory use does not
+ * depend on the size of a zone. When all zones are exported they are fetched concurrently, each into its own
+ * temporary file, and the files are copied to the output one after the other in the order of the zone list.
+ */
+public class ZoneExporter {
+
+    private static final Set<String> HOSTNAME_TYPES = Set.of("CNAME", "NS", "PTR", "MX", "SRV", "ALIAS");
+
+    private final HostupApiClient client;
+    private final int parallelism;
+
+    public ZoneExporter(HostupApiClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = parallelism;
+    }
+
+    public record Result(boolean success, String message, ApiResponse apiResponse) {
+    }
+
+    public Result exportZone(int zoneId, Writer output) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        output.write("; zone " + zoneId + "\n");
+        ApiResponse apiResponse = HostupApiClient.await(client.streamDnsRecordsAsync(zoneId, record -> writeRecord(record, output)));
+        output.flush();
+        if (!apiResponse.success()) {
+            return new Result(false, "Could not get DNS records for zoneId: " + zoneId, apiResponse);
+        }
+        return new Result(true, "Exported zone " + zoneId, apiResponse);
+    }
+
+    public Result exportAll(Writer output) throws IOException, InterruptedException, RateLimitException, JsonMappingException {
+        ApiResponse zones = client.getZones();
+        if (!zones.success()) {
+            return new Result(false, "Could not get zones", zones);
+        }
+        List<ZonesResponse.Zone> zoneList = ((ZonesResponse) zones.parsedResponse()).data().zones();
+        List<Path> files = new ArrayList<>();
+        List<CompletableFuture<ApiResponse>> exports = new ArrayList<>();
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        try {
+            for (ZonesResponse.Zone zone : zoneList) {
+                Path file = Files.createTempFile("hostup-zone-" + zone.domain_id() + "-", ".zone");
+                files.add(file);
+                exports.add(limiter.submit(() -> exportToFile(zone, file)));
+            }
+            for (int i = 0; i < zoneList.size(); i++) {
+                ApiResponse apiResponse = HostupApiClient.await(exports.get(i));
+                if (!apiResponse.success()) {
+                    return new Result(false, "Could not get DNS records for zoneId: " + zoneList.get(i).domain_id(), apiResponse);
+                }
+                try (BufferedReader reader = Files.newBufferedReader(files.get(i), StandardCharsets.UTF_8)) {
+                    reader.transferTo(output);
+                }
+                Files.delete(files.get(i));
+            }
+            output.flush();
+            return new Result(true, "Exported %d zones".formatted(zoneList.size()), zones);
+        } finally {
+            limiter.awaitAll();
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Opens the file only once the export starts, so at most {@code parallelism} files are open
+     */
+    private CompletableFuture<ApiResponse> exportToFile(ZonesResponse.Zone zone, Path file) {
+        BufferedWriter writer;
+        try {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            writer.write("; zone %s (%d)\n$ORIGIN %s\n".formatted(zone.domain(), zone.domain_id(), absolute(zone.domain())));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return client.streamDnsRecordsAsync(zone.domain_id(), record -> writeRecord(record, writer))
+                .handle((apiResponse, throwable) -> {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        if (throwable == null) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                    if (throwable != null) {
+                        throw throwable instanceof CompletionException completionException ?
+                                completionException : new CompletionException(throwable);
+                    }
+                    return apiResponse;
+                });
+    }
+
+    static void writeRecord(DnsRecordsResponse.Record record, Writer output) throws IOException {
+        output.write(String.join("\t",
+                absolute(record.name()),
+                Integer.toString(record.ttl()),
+                "IN",
+                record.type().toUpperCase(Locale.ROOT),
+                rdata(record.type().toUpperCase(Locale.ROOT), record.value())));
+        output.write('\n');
+    }
+
+    /**
+     * TXT values are quoted unless the API already did, and hostnames in the data of e.g. CNAME and MX records are
+     * made absolute
+     */
+    static String rdata(String type, String value) {
+        String trimmed = value.strip();
+        if ("TXT".equals(type) || "SPF".equals(type)) {
+            return trimmed.startsWith("\"") ? trimmed : quote(trimmed);
+        }
+        if (HOSTNAME_TYPES.contains(type)) {
+            int lastSpace = trimmed.lastIndexOf(' ');
+            return trimmed.substring(0, lastSpace + 1) + absolute(trimmed.substring(lastSpace + 1));
+        }
+        return trimmed;
+    }
+
+    /**
+     * A character string is at most 255 characters, longer values are split into several strings
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder();
+        for (int start = 0; start < value.length() || start == 0; start += 255) {
+            String part = value.substring(start, Math.min(value.length(), start + 255));
+            if (start > 0) {
+                quoted.append(' ');
+            }
+            quoted.append('"').append(part.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return quoted.toString();
+    }
+
+    private static String absolute(String name) {
+        return name.endsWith(".") ? name : name + ".";
+    }
+}
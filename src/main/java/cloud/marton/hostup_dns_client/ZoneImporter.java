@@ -0,0 +1,142 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.ImportCheckpoint;
+import cloud.marton.hostup_dns_client.cache.RecordCache;
+import cloud.marton.hostup_dns_client.exceptions.ApiException;
+import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
+import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.SetRecordResponse;
+import cloud.marton.hostup_dns_client.zonefile.CsvRecordReader;
+import cloud.marton.hostup_dns_client.zonefile.ParsedRecord;
+import cloud.marton.hostup_dns_client.zonefile.RecordReader;
+import cloud.marton.hostup_dns_client.zonefile.ZoneFileReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements {@code --import}: creates the records of a zone file, or of a CSV file ending with {@code .csv}.
+ * <p>
+ * The file is read one record at a time. Records that the zone already has, according to one
+ * {@code getDnsRecords} snapshot taken before the import, or that an earlier interrupted run created, see
+ * {@link ImportCheckpoint}, are skipped. The others are created concurrently, at most {@code parallelism} at a time
+ * and paced by the rate limiter of the client. SOA records are never imported.
+ */
+public class ZoneImporter {
+
+    public static final int DEFAULT_TTL = 3600;
+
+    private final HostupApiClient client;
+    private final int parallelism;
+    private final ImportCheckpoint checkpoint;
+
+    public ZoneImporter(HostupApiClient client, int parallelism, ImportCheckpoint checkpoint) {
+        this.client = client;
+        this.parallelism = parallelism;
+        this.checkpoint = checkpoint;
+    }
+
+    public record Result(boolean success, String message, ApiResponse apiResponse) {
+    }
+
+    /**
+     * Prints one tab separated line per record: {@code <line> <type> <name> CREATED|EXISTS|SKIPPED|FAILED <detail>}
+     */
+    public Result importFile(int zoneId, Path file, PrintStream output) throws IOException,
+            InterruptedException,
+            RateLimitException,
+            JsonMappingException {
+        ApiResponse snapshot = client.getDnsRecords(zoneId);
+        if (!snapshot.success()) {
+            return new Result(false, "Could not get DNS records for zoneId: " + zoneId, snapshot);
+        }
+        DnsRecordsResponse.Zone zone = ((DnsRecordsResponse) snapshot.parsedResponse()).data().zone();
+        try (BufferedReader input = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordReader reader = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ?
+                    new CsvRecordReader(input, DEFAULT_TTL) :
+                    new ZoneFileReader(input, zone.domain(), DEFAULT_TTL);
+            return importRecords(zoneId, reader, RecordCache.ZoneRecords.of(zone.records()), snapshot, output);
+        }
+    }
+
+    private Result importRecords(int zoneId,
+                                 RecordReader reader,
+                                 RecordCache.ZoneRecords existing,
+                                 ApiResponse snapshot,
+                                 PrintStream output) throws IOException, InterruptedException {
+        Set<String> done = checkpoint.load();
+        AsyncLimiter limiter = new AsyncLimiter(parallelism);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        int skipped = 0;
+        while (true) {
+            ParsedRecord record;
+            try {
+                record = reader.next();
+            } catch (IllegalArgumentException e) {
+                failures.incrementAndGet();
+                output.println(resultLine("-", "parse", "-", "FAILED", e.getMessage()));
+                continue;
+            }
+            if (record == null) {
+                break;
+            }
+            String line = Integer.toString(record.line());
+            if ("SOA".equals(record.type())) {
+                skipped++;
+                output.println(resultLine(line, record.type(), record.name(), "SKIPPED", "SOA records are managed by Hostup"));
+                continue;
+            }
+            // Also skips records listed twice in the file
+            if (existing.find(record.name(), record.type(), record.value()).isPresent()
+                    || !done.add(ImportCheckpoint.key(record.name(), record.type(), record.value()))) {
+                skipped++;
+                output.println(resultLine(line, record.type(), record.name(), "EXISTS", ""));
+                continue;
+            }
+            limiter.submit(() -> client.setDnsRecordAsync(zoneId, record.type(), record.name(), record.value(), record.ttl()),
+                    (apiResponse, throwable) -> {
+                        if (throwable == null && apiResponse.success()) {
+                            int recordId = ((SetRecordResponse) apiResponse.parsedResponse()).data().record().id();
+                            checkpoint.created(record.name(), record.type(), record.value(), recordId);
+                            created.incrementAndGet();
+                            output.println(resultLine(line, record.type(), record.name(), "CREATED", "recordId=" + recordId));
+                        } else {
+                            failures.incrementAndGet();
+                            output.println(resultLine(line, record.type(), record.name(), "FAILED", failureDetail(apiResponse, throwable)));
+                        }
+                    });
+        }
+        // Also waits for the callbacks, so no checkpoint entry is written after close
+        limiter.awaitAll();
+        checkpoint.close(failures.get() == 0);
+        String summary = "%d created, %d skipped, %d failed".formatted(created.get(), skipped, failures.get());
+        if (failures.get() > 0) {
+            return new Result(false, "Import incomplete, run it again to continue: " + summary, snapshot);
+        }
+        return new Result(true, "Import complete: " + summary, snapshot);
+    }
+
+    private static String failureDetail(ApiResponse apiResponse, Throwable throwable) {
+        if (throwable == null) {
+            return "HTTP " + apiResponse.httpStatus();
+        }
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return cause instanceof ApiException apiException ?
+                "HTTP " + apiException.getHttpStatusCode() + " " + cause.getMessage() : String.valueOf(cause.getMessage());
+    }
+
+    private static String resultLine(String line, String type, String name, String status, String detail) {
+        return String.join("\t", line, type, name, status, detail.replace('\n', ' ').replace('\t', ' '));
+    }
+}
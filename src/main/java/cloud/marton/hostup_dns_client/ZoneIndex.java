@@ -0,0 +1,137 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Finds the zone a domain name belongs to: the zone with the longest domain that the name is, or is below.
+ * <p>
+ * Zone domains are stored in a trie of their labels in reverse order, {@code org -> example -> sub}, so a lookup
+ * takes one step per label of the name, however many zones there are. Unlike taking the last two labels of the name
+ * this finds zones like {@code example.co.uk} and delegated subzones. Case and trailing dots are ignored. An index is
+ * not modified after it is built and can be shared between threads.
+ *
+ * @param <V> what is looked up, e.g. the zone ID
+ */
+public final class ZoneIndex<V> {
+
+    private final Node<V> root;
+    private final int size;
+
+    private ZoneIndex(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    private static final class Node<V> {
+        private final Map<String, Node<V>> children = new HashMap<>(4);
+        private String domain;
+        private V value;
+    }
+
+    /**
+     * @param domain the zone domain, lowercased and without trailing dot
+     */
+    public record Match<V>(String domain, V value) {
+    }
+
+    /**
+     * @return an index of the zones by domain, the first one wins when a domain is listed twice
+     */
+    public static ZoneIndex<ZonesResponse.Zone> of(List<ZonesResponse.Zone> zones) {
+        Builder<ZonesResponse.Zone> builder = new Builder<>();
+        for (ZonesResponse.Zone zone : zones) {
+            builder.put(zone.domain(), zone);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param zoneIds domain to zone ID, e.g. from the zone cache
+     */
+    public static ZoneIndex<Integer> ofZoneIds(Map<String, Integer> zoneIds) {
+        Builder<Integer> builder = new Builder<>();
+        zoneIds.forEach(builder::put);
+        return builder.build();
+    }
+
+    /**
+     * @return domain to zone ID, e.g. for the zone cache. The domains are normalized like the index does, the first
+     * zone wins when a domain is listed twice.
+     */
+    public static Map<String, Integer> zoneIds(List<ZonesResponse.Zone> zones) {
+        Map<String, Integer> zoneIds = new HashMap<>();
+        for (ZonesResponse.Zone zone : zones) {
+            zoneIds.putIfAbsent(DomainNames.normalize(zone.domain()), zone.domain_id());
+        }
+        return zoneIds;
+    }
+
+    public static final class Builder<V> {
+        private final Node<V> root = new Node<>();
+        private int size;
+
+        /**
+         * Adds a zone, unless a zone with the same domain was added before
+         */
+        public Builder<V> put(String domain, V value) {
+            String name = DomainNames.normalize(domain);
+            Node<V> node = root;
+            int end = name.length();
+            while (end > 0) {
+                int start = name.lastIndexOf('.', end - 1) + 1;
+                node = node.children.computeIfAbsent(name.substring(start, end), ignored -> new Node<>());
+                end = start - 1;
+            }
+            if (node.domain == null) {
+                node.domain = name;
+                node.value = value;
+                size++;
+            }
+            return this;
+        }
+
+        public ZoneIndex<V> build() {
+            return new ZoneIndex<>(root, size);
+        }
+    }
+
+    /**
+     * @param name a domain name, e.g. {@code _acme-challenge.www.example.co.uk.}
+     * @return the zone with the longest domain that {@code name} is, or is below
+     */
+    public Optional<Match<V>> find(String name) {
+        String normalized = DomainNames.normalize(name);
+        Node<V> node = root;
+        Node<V> longest = null;
+        int end = normalized.length();
+        while (end > 0) {
+            int start = normalized.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(normalized.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.domain != null) {
+                longest = node;
+            }
+            end = start - 1;
+        }
+        return longest == null ? Optional.empty() : Optional.of(new Match<>(longest.domain, longest.value));
+    }
+
+    /**
+     * @return the value of the zone that {@code name} belongs to, see {@link #find(String)}
+     */
+    public Optional<V> get(String name) {
+        return find(name).map(Match::value);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,39 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive locks on files in the cache directory that work across processes and across threads of one process.
+ */
+final class FileLocks {
+
+    // FileLock is held per JVM, so threads of this process have to take turns before locking the file
+    private static final Object JVM_LOCK = new Object();
+
+    private FileLocks() {
+    }
+
+    /**
+     * Runs {@code action} while holding an exclusive lock on {@code <file>.lock}
+     */
+    static void withLock(Path file, IoAction action) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        synchronized (JVM_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                action.run();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,28 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Short hashes to name files in the cache directory after a value, e.g. an API key, without revealing it.
+ */
+final class Hashes {
+
+    private Hashes() {
+    }
+
+    /**
+     * @return the first 8 bytes of the SHA-256 of {@code value} in UTF-8, as 16 hex digits
+     */
+    static String shortHash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(Arrays.copyOf(digest, 8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only progress file of an {@code --import}, so an interrupted import continues where it stopped.
+ * <p>
+ * Every created record is appended as one line and flushed before the next one. The file is deleted once the import
+ * has completed without failures. I/O problems are logged and only cost the ability to resume.
+ */
+public final class ImportCheckpoint {
+
+    private static final Logger LOGGER = Logger.getLogger(ImportCheckpoint.class.getName());
+
+    private final Path file;
+    private BufferedWriter writer;
+
+    public ImportCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return a checkpoint file in {@code directory} that is unique for the zone and import file
+     */
+    public static ImportCheckpoint forImport(Path directory, int zoneId, Path source) {
+        String sourceKey = Hashes.shortHash(source.toAbsolutePath().normalize().toString());
+        return new ImportCheckpoint(directory.resolve("import-" + zoneId + "-" + sourceKey + ".checkpoint"));
+    }
+
+    public static ImportCheckpoint disabled() {
+        return new ImportCheckpoint(null);
+    }
+
+    /**
+     * @return the keys of the records created by earlier runs, see {@link #key(String, String, String)}
+     */
+    public Set<String> load() {
+        Set<String> done = new HashSet<>();
+        if (file == null || !Files.isRegularFile(file)) {
+            return done;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 4) {
+                    done.add(key(decode(fields[1]), fields[2], decode(fields[3])));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Ignoring unreadable import checkpoint " + file);
+        }
+        return done;
+    }
+
+    public synchronized void created(String name, String type, String value, int recordId) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                Files.createDirectories(file.getParent());
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(String.join("\t", Integer.toString(recordId), encode(name), type, encode(value)));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not write import checkpoint " + file);
+        }
+    }
+
+    /**
+     * Closes the file, and deletes it when the import is {@code complete}
+     */
+    public synchronized void close(boolean complete) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            if (complete) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not close import checkpoint " + file);
+        }
+    }
+
+    public static String key(String name, String type, String value) {
+        return DomainNames.normalize(name) + "\t" + type.toUpperCase(Locale.ROOT) + "\t" + value;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
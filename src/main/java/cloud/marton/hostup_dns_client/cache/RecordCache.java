@@ -0,0 +1,174 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory cache of the DNS records per zone, for long-running and batch use of one client.
+ * <p>
+ * A zone is cached when its records are fetched and then kept up to date from the responses of adding and deleting
+ * records, without fetching it again. Zones expire {@code ttl} after they were fetched, and the least recently used
+ * zone is evicted when more than {@code maxZones} are cached.
+ */
+public final class RecordCache {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final int DEFAULT_MAX_ZONES = 64;
+
+    private final Duration ttl;
+    private final int maxZones;
+    private final Clock clock;
+    private final LinkedHashMap<Integer, ZoneRecords> zones;
+
+    public RecordCache(Duration ttl, int maxZones, Clock clock) {
+        this.ttl = ttl;
+        this.maxZones = maxZones;
+        this.clock = clock;
+        this.zones = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ZoneRecords> eldest) {
+                return size() > RecordCache.this.maxZones;
+            }
+        };
+    }
+
+    public RecordCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ZONES, Clock.systemUTC());
+    }
+
+    public static RecordCache disabled() {
+        return new RecordCache(Duration.ZERO, 0, Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return ttl.isPositive() && maxZones > 0;
+    }
+
+    /**
+     * @return the records of the zone, or empty when the zone is not cached or has expired
+     */
+    public synchronized Optional<ZoneRecords> get(int zoneId) {
+        ZoneRecords records = zones.get(zoneId);
+        if (records == null) {
+            return Optional.empty();
+        }
+        if (Duration.between(records.fetchedAt, clock.instant()).compareTo(ttl) > 0) {
+            zones.remove(zoneId);
+            return Optional.empty();
+        }
+        return Optional.of(records);
+    }
+
+    /**
+     * Replaces the cached records of the zone with a freshly fetched list
+     */
+    public synchronized void put(int zoneId, List<DnsRecordsResponse.Record> records) {
+        if (isEnabled()) {
+            zones.put(zoneId, new ZoneRecords(records, clock.instant()));
+        }
+    }
+
+    /**
+     * Adds a created record to the zone, if the zone is cached
+     */
+    public void added(int zoneId, DnsRecordsResponse.Record record) {
+        get(zoneId).ifPresent(records -> records.add(record));
+    }
+
+    /**
+     * Removes a deleted record from the zone, if the zone is cached
+     */
+    public void removed(int zoneId, int recordId) {
+        get(zoneId).ifPresent(records -> records.remove(recordId));
+    }
+
+    public synchronized void invalidate(int zoneId) {
+        zones.remove(zoneId);
+    }
+
+    /**
+     * The records of one zone, indexed by name and by (name, type, value). Names are compared case-insensitively and
+     * without a trailing dot, TXT values with or without surrounding double quotes.
+     */
+    public static final class ZoneRecords {
+
+        private final Instant fetchedAt;
+        private final Map<Integer, DnsRecordsResponse.Record> byId = new HashMap<>();
+        private final Map<String, List<DnsRecordsResponse.Record>> byName = new HashMap<>();
+        private final Map<Key, DnsRecordsResponse.Record> byKey = new HashMap<>();
+
+        private ZoneRecords(List<DnsRecordsResponse.Record> records, Instant fetchedAt) {
+            this.fetchedAt = fetchedAt;
+            records.forEach(this::add);
+        }
+
+        /**
+         * @return the records indexed without caching them
+         */
+        public static ZoneRecords of(List<DnsRecordsResponse.Record> records) {
+            return new ZoneRecords(records, Instant.EPOCH);
+        }
+
+        public synchronized List<DnsRecordsResponse.Record> findByName(String name) {
+            return List.copyOf(byName.getOrDefault(DomainNames.normalize(name), List.of()));
+        }
+
+        public synchronized Optional<DnsRecordsResponse.Record> find(String name, String type, String value) {
+            return Optional.ofNullable(byKey.get(Key.of(name, type, value)));
+        }
+
+        public synchronized int size() {
+            return byId.size();
+        }
+
+        synchronized void add(DnsRecordsResponse.Record record) {
+            remove(record.id());
+            byId.put(record.id(), record);
+            byName.computeIfAbsent(DomainNames.normalize(record.name()), ignored -> new ArrayList<>()).add(record);
+            byKey.putIfAbsent(Key.of(record.name(), record.type(), record.value()), record);
+        }
+
+        synchronized void remove(int recordId) {
+            DnsRecordsResponse.Record record = byId.remove(recordId);
+            if (record == null) {
+                return;
+            }
+            String name = DomainNames.normalize(record.name());
+            List<DnsRecordsResponse.Record> sameName = byName.get(name);
+            sameName.removeIf(r -> r.id() == recordId);
+            if (sameName.isEmpty()) {
+                byName.remove(name);
+            }
+            Key key = Key.of(record.name(), record.type(), record.value());
+            if (byKey.get(key) == record) {
+                byKey.remove(key);
+                // Another record with the same name, type and value takes over the key
+                sameName.stream()
+                        .filter(r -> Key.of(r.name(), r.type(), r.value()).equals(key))
+                        .findFirst()
+                        .ifPresent(r -> byKey.put(key, r));
+            }
+        }
+    }
+
+    /**
+     * Values are compared as normalized by {@link DomainNames#normalizeValue}, the same as {@code --apply} compares them
+     */
+    private record Key(String name, String type, String value) {
+
+        static Key of(String name, String type, String value) {
+            return new Key(DomainNames.normalize(name), type.toUpperCase(Locale.ROOT), DomainNames.normalizeValue(type, value));
+        }
+    }
+}
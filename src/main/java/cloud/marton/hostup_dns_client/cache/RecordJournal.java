@@ -0,0 +1,136 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the records created by Lego {@code present}, keyed by (domain, value).
+ * <p>
+ * {@code cleanup} uses the journal to delete the record directly by its ID instead of listing the whole zone.
+ * Every line is either a created record or a removal of one. The file is truncated once no created record is left.
+ * I/O problems are logged and treated as a missing entry, so callers can fall back to looking the record up.
+ */
+public final class RecordJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(RecordJournal.class.getName());
+    private static final String CREATED = "created";
+    private static final String REMOVED = "removed";
+
+    private final Path file;
+
+    public RecordJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return a journal file in {@code directory} that is unique for the given API endpoint and key
+     */
+    public static RecordJournal forAccount(Path directory, URI baseUri, String apiKey) {
+        return new RecordJournal(directory.resolve("records-" + ZoneCache.accountKey(baseUri, apiKey) + ".journal"));
+    }
+
+    public static RecordJournal disabled() {
+        return new RecordJournal(null);
+    }
+
+    public record Entry(String domain, String value, int zoneId, int recordId) {
+    }
+
+    public void record(String domain, String value, int zoneId, int recordId) {
+        append(new Entry(DomainNames.normalize(domain), value, zoneId, recordId), CREATED);
+    }
+
+    /**
+     * @return the most recently created record for (domain, value) that has not been removed yet
+     */
+    public Optional<Entry> find(String domain, String value) {
+        if (file == null || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        String normalizedDomain = DomainNames.normalize(domain);
+        try {
+            return readLiveEntries().stream()
+                    .filter(e -> e.domain().equals(normalizedDomain) && e.value().equals(value))
+                    .reduce((first, second) -> second);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Ignoring unreadable record journal " + file);
+            return Optional.empty();
+        }
+    }
+
+    public void remove(Entry entry) {
+        append(entry, REMOVED);
+    }
+
+    private void append(Entry entry, String operation) {
+        if (file == null) {
+            return;
+        }
+        try {
+            FileLocks.withLock(file, () -> {
+                if (REMOVED.equals(operation) && Files.isRegularFile(file)) {
+                    List<Entry> live = readLiveEntries();
+                    if (live.size() == 1 && live.getFirst().equals(entry)) {
+                        Files.write(file, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+                        return;
+                    }
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writer.write(String.join("\t",
+                            operation,
+                            Integer.toString(entry.zoneId()),
+                            Integer.toString(entry.recordId()),
+                            encode(entry.domain()),
+                            encode(entry.value())));
+                    writer.newLine();
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not write record journal " + file);
+        }
+    }
+
+    private List<Entry> readLiveEntries() throws IOException {
+        Map<Integer, Entry> live = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Malformed journal line: " + line);
+            }
+            Entry entry = new Entry(decode(fields[3]), decode(fields[4]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+            if (CREATED.equals(fields[0])) {
+                live.put(entry.recordId(), entry);
+            } else {
+                live.remove(entry.recordId());
+            }
+        }
+        return List.copyOf(live.values());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of the zones (domain to domain_id) of one Hostup account.
+ * <p>
+ * The cache file is shared by every process using the same cache directory, e.g. the parallel Lego processes
+ * spawned for one certificate. Writers hold an exclusive file lock and replace the file atomically, so readers
+ * never see a partially written cache. I/O problems are logged and treated as a cache miss.
+ */
+public final class ZoneCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ZoneCache.class.getName());
+    private static final String FETCHED_AT_KEY = "fetched-at";
+    private static final String ZONE_KEY_PREFIX = "zone.";
+
+    private final Path file;
+    private final Duration ttl;
+    private final Clock clock;
+
+    public ZoneCache(Path file, Duration ttl, Clock clock) {
+        this.file = file;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a cache file in {@code directory} that is unique for the given API endpoint and key
+     */
+    public static ZoneCache forAccount(Path directory, Duration ttl, URI baseUri, String apiKey) {
+        Path file = directory.resolve("zones-" + accountKey(baseUri, apiKey) + ".properties");
+        return new ZoneCache(file, ttl, Clock.systemUTC());
+    }
+
+    public static ZoneCache disabled() {
+        return new ZoneCache(null, Duration.ZERO, Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return file != null && ttl.isPositive();
+    }
+
+    /**
+     * @return lowercased domain to domain_id, or empty when the cache is disabled, missing, unreadable or expired
+     */
+    public Optional<Map<String, Integer>> read() {
+        if (!isEnabled() || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+            long fetchedAt = Long.parseLong(properties.getProperty(FETCHED_AT_KEY, "0"));
+            if (clock.millis() - fetchedAt > ttl.toMillis()) {
+                LOGGER.fine(() -> "Zone cache %s has expired".formatted(file));
+                return Optional.empty();
+            }
+            Map<String, Integer> zones = new HashMap<>();
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(ZONE_KEY_PREFIX)) {
+                    zones.put(key.substring(ZONE_KEY_PREFIX.length()), Integer.parseInt(properties.getProperty(key)));
+                }
+            }
+            return Optional.of(zones);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Ignoring unreadable zone cache " + file);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the cached zones
+     *
+     * @param zones domain to domain_id. Domains are stored lowercased.
+     */
+    public void write(Map<String, Integer> zones) {
+        if (!isEnabled()) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty(FETCHED_AT_KEY, Long.toString(clock.millis()));
+        zones.forEach((domain, id) -> properties.setProperty(ZONE_KEY_PREFIX + domain.toLowerCase(Locale.ROOT), Integer.toString(id)));
+        try {
+            FileLocks.withLock(file, () -> {
+                Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                try {
+                    try (OutputStream output = Files.newOutputStream(tmp)) {
+                        properties.store(output, "hostup-dns-client zone cache");
+                    }
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not write zone cache " + file);
+        }
+    }
+
+    /**
+     * Removes the cache file, e.g. when a cached zone ID is rejected by the API
+     */
+    public void invalidate() {
+        if (file == null) {
+            return;
+        }
+        try {
+            FileLocks.withLock(file, () -> Files.deleteIfExists(file));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not invalidate zone cache " + file);
+        }
+    }
+
+    /**
+     * @return a short hash of the API endpoint and key, to name per-account files without revealing the key
+     */
+    public static String accountKey(URI baseUri, String apiKey) {
+        return Hashes.shortHash(baseUri + "\n" + apiKey);
+    }
+}
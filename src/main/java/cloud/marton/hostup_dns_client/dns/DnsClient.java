@@ -0,0 +1,114 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Minimal DNS client over UDP. All queries of a {@link #queryAll(List, Duration)} call are sent at once from one
+ * non-blocking channel and the answers are collected by a single selector loop, so asking ten nameservers takes as
+ * long as asking the slowest one.
+ */
+public final class DnsClient implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(DnsClient.class.getName());
+    private static final Duration RETRANSMIT_INTERVAL = Duration.ofSeconds(1);
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SecureRandom random = new SecureRandom();
+
+    public DnsClient() throws IOException {
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(null);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * @param server           nameserver to ask
+     * @param recursionDesired see {@link DnsMessage#query(int, String, int, boolean)}
+     */
+    public record Query(InetSocketAddress server, String name, int type, boolean recursionDesired) {
+    }
+
+    /**
+     * Sends every query, and sends it again each second until it is answered or {@code timeout} has passed
+     *
+     * @return the response to each query, in the order of {@code queries}, empty when there was none in time
+     */
+    public List<Optional<DnsMessage>> queryAll(List<Query> queries, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        // Random IDs make it harder to spoof an answer, matching on the sender address too is cheap
+        Map<Integer, Integer> pendingById = new HashMap<>();
+        List<byte[]> packets = new ArrayList<>(queries.size());
+        List<Optional<DnsMessage>> responses = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            int id;
+            do {
+                id = random.nextInt(0x10000);
+            } while (pendingById.containsKey(id));
+            pendingById.put(id, i);
+            Query query = queries.get(i);
+            packets.add(DnsMessage.query(id, query.name(), query.type(), query.recursionDesired()));
+            responses.add(Optional.empty());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.MAX_UDP_PAYLOAD);
+        long nextSend = System.nanoTime();
+        while (!pendingById.isEmpty()) {
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                break;
+            }
+            if (now - nextSend >= 0) {
+                for (int index : pendingById.values()) {
+                    channel.send(ByteBuffer.wrap(packets.get(index)), queries.get(index).server());
+                }
+                nextSend = now + RETRANSMIT_INTERVAL.toNanos();
+            }
+            long waitNanos = Math.min(deadline, nextSend) - now;
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+            selector.selectedKeys().clear();
+            SocketAddress sender;
+            while ((sender = channel.receive(buffer.clear())) != null) {
+                buffer.flip();
+                DnsMessage response;
+                try {
+                    response = DnsMessage.parse(buffer);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.fine(() -> "Ignoring malformed DNS response: " + e.getMessage());
+                    continue;
+                }
+                Integer index = pendingById.get(response.id());
+                if (index != null && queries.get(index).server().equals(sender)) {
+                    pendingById.remove(response.id());
+                    responses.set(index, Optional.of(response));
+                }
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            selector.close();
+        }
+    }
+}
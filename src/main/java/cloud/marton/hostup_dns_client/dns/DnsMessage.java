@@ -0,0 +1,184 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The parts of the RFC 1035 wire format needed to look up nameservers and TXT records.
+ *
+ * @param id           matches a response to its query
+ * @param rcode        0 for no error, 3 for a name that does not exist
+ * @param truncated    the response did not fit, answers may be missing
+ * @param answers      answer section
+ * @param authorities  authority section
+ * @param additionals  additional section, e.g. the addresses of the nameservers in a referral
+ */
+public record DnsMessage(int id,
+                         int rcode,
+                         boolean truncated,
+                         List<ResourceRecord> answers,
+                         List<ResourceRecord> authorities,
+                         List<ResourceRecord> additionals) {
+
+    public static final int TYPE_A = 1;
+    public static final int TYPE_NS = 2;
+    public static final int TYPE_CNAME = 5;
+    public static final int TYPE_TXT = 16;
+    private static final int TYPE_OPT = 41;
+    private static final int CLASS_IN = 1;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_TRUNCATED = 0x0200;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+    /**
+     * Advertised with EDNS, large enough for a few TXT records and small enough to avoid IP fragmentation
+     */
+    public static final int MAX_UDP_PAYLOAD = 1232;
+
+    /**
+     * @param name lowercase and without trailing dot
+     * @param data the nameserver or alias for NS and CNAME, the address for A, the joined character strings for TXT,
+     *             empty for other types
+     */
+    public record ResourceRecord(String name, int type, String data) {
+    }
+
+    /**
+     * @param recursionDesired true for a resolver, false for an authoritative nameserver that should only answer from
+     *                         its own zone data
+     */
+    public static byte[] query(int id, String name, int type, boolean recursionDesired) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 2 + name.length() + 4 + 11);
+        buffer.putShort((short) id);
+        buffer.putShort((short) (recursionDesired ? FLAG_RECURSION_DESIRED : 0));
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 1);
+        writeName(buffer, name);
+        buffer.putShort((short) type);
+        buffer.putShort((short) CLASS_IN);
+        // EDNS OPT record: root name, type, UDP payload size as class, no extended flags, no options
+        buffer.put((byte) 0);
+        buffer.putShort((short) TYPE_OPT);
+        buffer.putShort((short) MAX_UDP_PAYLOAD);
+        buffer.putInt(0);
+        buffer.putShort((short) 0);
+        byte[] query = new byte[buffer.position()];
+        buffer.flip().get(query);
+        return query;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the message is not a well-formed response
+     */
+    public static DnsMessage parse(ByteBuffer buffer) {
+        try {
+            int id = Short.toUnsignedInt(buffer.getShort());
+            int flags = Short.toUnsignedInt(buffer.getShort());
+            if ((flags & FLAG_RESPONSE) == 0) {
+                throw new IllegalArgumentException("Not a response");
+            }
+            int questions = Short.toUnsignedInt(buffer.getShort());
+            int answerCount = Short.toUnsignedInt(buffer.getShort());
+            int authorityCount = Short.toUnsignedInt(buffer.getShort());
+            int additionalCount = Short.toUnsignedInt(buffer.getShort());
+            for (int i = 0; i < questions; i++) {
+                readName(buffer);
+                buffer.position(buffer.position() + 4);
+            }
+            return new DnsMessage(id,
+                    flags & 0xF,
+                    (flags & FLAG_TRUNCATED) != 0,
+                    readRecords(buffer, answerCount),
+                    readRecords(buffer, authorityCount),
+                    readRecords(buffer, additionalCount));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated DNS message", e);
+        }
+    }
+
+    private static List<ResourceRecord> readRecords(ByteBuffer buffer, int count) {
+        List<ResourceRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readName(buffer);
+            int type = Short.toUnsignedInt(buffer.getShort());
+            buffer.getShort(); // class
+            buffer.getInt(); // ttl
+            int length = Short.toUnsignedInt(buffer.getShort());
+            int end = buffer.position() + length;
+            String data = switch (type) {
+                case TYPE_NS, TYPE_CNAME -> readName(buffer);
+                case TYPE_A -> "%d.%d.%d.%d".formatted(buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF);
+                case TYPE_TXT -> readCharacterStrings(buffer, end);
+                default -> "";
+            };
+            buffer.position(end);
+            records.add(new ResourceRecord(name, type, data));
+        }
+        return records;
+    }
+
+    private static String readCharacterStrings(ByteBuffer buffer, int end) {
+        StringBuilder text = new StringBuilder();
+        while (buffer.position() < end) {
+            byte[] bytes = new byte[buffer.get() & 0xFF];
+            buffer.get(bytes);
+            text.append(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a possibly compressed name, RFC 1035 section 4.1.4
+     */
+    private static String readName(ByteBuffer buffer) {
+        StringBuilder name = new StringBuilder();
+        int position = buffer.position();
+        int resumeAt = -1;
+        for (int jumps = 0; ; ) {
+            int length = buffer.get(position) & 0xFF;
+            if ((length & 0xC0) == 0xC0) {
+                if (++jumps > 64) {
+                    throw new IllegalArgumentException("Compression loop in DNS name");
+                }
+                if (resumeAt < 0) {
+                    resumeAt = position + 2;
+                }
+                position = ((length & 0x3F) << 8) | (buffer.get(position + 1) & 0xFF);
+                continue;
+            }
+            position++;
+            if (length == 0) {
+                break;
+            }
+            if (!name.isEmpty()) {
+                name.append('.');
+            }
+            byte[] label = new byte[length];
+            buffer.get(position, label);
+            name.append(new String(label, StandardCharsets.US_ASCII));
+            position += length;
+        }
+        buffer.position(resumeAt < 0 ? position : resumeAt);
+        return name.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static void writeName(ByteBuffer buffer, String name) {
+        String absolute = DomainNames.stripTrailingDot(name);
+        if (!absolute.isEmpty()) {
+            for (String label : absolute.split("\\.")) {
+                byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+                if (bytes.length == 0 || bytes.length > 63) {
+                    throw new IllegalArgumentException("Invalid DNS name: " + name);
+                }
+                buffer.put((byte) bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        buffer.put((byte) 0);
+    }
+}
@@ -0,0 +1,42 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import java.util.Locale;
+
+/**
+ * Domain names and record values as they are compared. The API, zone files and users write the same name with or
+ * without trailing dot and in any case, and TXT values with or without surrounding double quotes.
+ */
+public final class DomainNames {
+
+    private DomainNames() {
+    }
+
+    /**
+     * @return {@code name} lowercased and without trailing dot, e.g. {@code www.example.org} for
+     * {@code WWW.Example.org.}
+     */
+    public static String normalize(String name) {
+        return stripTrailingDot(name.toLowerCase(Locale.ROOT));
+    }
+
+    public static String stripTrailingDot(String name) {
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * @param type the record type, in any case
+     * @return the value of a record as it is compared: TXT values without surrounding double quotes, the API adds
+     * them, other values like CNAME and MX targets {@linkplain #normalize normalized} like a name
+     */
+    public static String normalizeValue(String type, String value) {
+        return "TXT".equalsIgnoreCase(type) ? unquote(value) : normalize(value);
+    }
+
+    /**
+     * @return {@code value} without one pair of surrounding double quotes, escapes inside are kept
+     */
+    public static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ?
+                value.substring(1, value.length() - 1) : value;
+    }
+}
@@ -0,0 +1,220 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Waits until every authoritative nameserver of a zone serves a TXT record, e.g. the ACME challenge that was just
+ * added, so the CA does not look it up before it is visible.
+ * <p>
+ * The zone is the closest parent of the record name that has NS records. Its nameservers are looked up with the
+ * resolver, and each of them is then asked directly, without recursion, so no cache sits between the answer and the
+ * zone data.
+ */
+public final class PropagationChecker {
+
+    private static final Logger LOGGER = Logger.getLogger(PropagationChecker.class.getName());
+    private static final Path RESOLV_CONF = Path.of("/etc/resolv.conf");
+    private static final int DNS_PORT = 53;
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(2);
+    private static final Duration LOOKUP_TIMEOUT = Duration.ofSeconds(5);
+
+    private final InetSocketAddress resolver;
+    private final int nameserverPort;
+    private final Duration timeout;
+    private final Duration pollInterval;
+
+    /**
+     * @param timeout how long {@link #await(String, String)} waits at most, {@link Duration#ZERO} disables it
+     */
+    public PropagationChecker(InetSocketAddress resolver, Duration timeout) {
+        this(resolver, DNS_PORT, timeout, POLL_INTERVAL);
+    }
+
+    /**
+     * @param nameserverPort port of the authoritative nameservers, only differs from 53 in tests
+     */
+    PropagationChecker(InetSocketAddress resolver, int nameserverPort, Duration timeout, Duration pollInterval) {
+        this.resolver = resolver;
+        this.nameserverPort = nameserverPort;
+        this.timeout = timeout;
+        this.pollInterval = pollInterval;
+    }
+
+    public static PropagationChecker disabled() {
+        return new PropagationChecker(null, DNS_PORT, Duration.ZERO, POLL_INTERVAL);
+    }
+
+    public boolean isEnabled() {
+        return !timeout.isZero();
+    }
+
+    /**
+     * @param propagated true when all nameservers serve the record
+     * @param pending    the nameservers that did not serve it before the timeout
+     */
+    public record Result(boolean propagated, List<String> pending, Duration elapsed) {
+    }
+
+    /**
+     * @param name  the name of the TXT record, e.g. {@code _acme-challenge.www.example.org}
+     * @param value the value of the TXT record, with or without surrounding quotes
+     */
+    public Result await(String name, String value) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        if (!isEnabled()) {
+            return new Result(true, List.of(), Duration.ZERO);
+        }
+        long deadline = start + timeout.toNanos();
+        String expected = DomainNames.unquote(value);
+        try (DnsClient dnsClient = new DnsClient()) {
+            Map<InetSocketAddress, String> pending = nameservers(dnsClient, DomainNames.normalize(name), deadline);
+            if (pending.isEmpty()) {
+                return new Result(false, List.of("no nameservers found for " + name), elapsed(start));
+            }
+            while (true) {
+                long roundStart = System.nanoTime();
+                List<InetSocketAddress> servers = new ArrayList<>(pending.keySet());
+                List<DnsClient.Query> queries = servers.stream()
+                        .map(server -> new DnsClient.Query(server, name, DnsMessage.TYPE_TXT, false))
+                        .toList();
+                Duration roundTimeout = Duration.ofNanos(Math.max(1, Math.min(pollInterval.toNanos(), deadline - roundStart)));
+                List<Optional<DnsMessage>> responses = dnsClient.queryAll(queries, roundTimeout);
+                for (int i = 0; i < servers.size(); i++) {
+                    if (responses.get(i).filter(response -> serves(response, name, expected)).isPresent()) {
+                        String nameserver = pending.remove(servers.get(i));
+                        LOGGER.fine(() -> "%s serves the TXT record of %s".formatted(nameserver, name));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return new Result(true, List.of(), elapsed(start));
+                }
+                long now = System.nanoTime();
+                if (now - deadline >= 0) {
+                    return new Result(false, List.copyOf(pending.values()), elapsed(start));
+                }
+                long sleepNanos = Math.min(roundStart + pollInterval.toNanos(), deadline) - now;
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the addresses of the authoritative nameservers of the zone of {@code name}, mapped to their names
+     */
+    private Map<InetSocketAddress, String> nameservers(DnsClient dnsClient, String name, long deadline) throws IOException {
+        Duration lookupTimeout = Duration.ofNanos(Math.max(1, Math.min(LOOKUP_TIMEOUT.toNanos(), deadline - System.nanoTime())));
+        Optional<DnsMessage> nsResponse = Optional.empty();
+        Set<String> names = new LinkedHashSet<>();
+        for (String zone = name; names.isEmpty() && zone.contains("."); zone = zone.substring(zone.indexOf('.') + 1)) {
+            String candidate = zone;
+            nsResponse = dnsClient.queryAll(
+                    List.of(new DnsClient.Query(resolver, candidate, DnsMessage.TYPE_NS, true)), lookupTimeout).getFirst();
+            if (nsResponse.isEmpty()) {
+                LOGGER.warning(() -> "Resolver %s did not answer the NS query for %s".formatted(resolver, candidate));
+                return Map.of();
+            }
+            for (DnsMessage.ResourceRecord record : nsResponse.get().answers()) {
+                if (record.type() == DnsMessage.TYPE_NS && record.name().equals(candidate)) {
+                    names.add(record.data());
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            return Map.of();
+        }
+        Map<InetSocketAddress, String> addresses = new LinkedHashMap<>();
+        // Resolvers usually add the addresses of the nameservers, only the missing ones are looked up
+        for (DnsMessage.ResourceRecord record : nsResponse.get().additionals()) {
+            if (record.type() == DnsMessage.TYPE_A && names.contains(record.name())) {
+                addresses.put(address(record.data()), record.name());
+            }
+        }
+        List<String> unresolved = names.stream().filter(ns -> !addresses.containsValue(ns)).toList();
+        if (!unresolved.isEmpty()) {
+            List<DnsClient.Query> queries = unresolved.stream()
+                    .map(ns -> new DnsClient.Query(resolver, ns, DnsMessage.TYPE_A, true))
+                    .toList();
+            List<Optional<DnsMessage>> responses = dnsClient.queryAll(queries, lookupTimeout);
+            for (int i = 0; i < unresolved.size(); i++) {
+                String ns = unresolved.get(i);
+                responses.get(i).stream()
+                        .flatMap(response -> response.answers().stream())
+                        .filter(record -> record.type() == DnsMessage.TYPE_A)
+                        .forEach(record -> addresses.put(address(record.data()), ns));
+            }
+        }
+        LOGGER.fine(() -> "Authoritative nameservers for %s: %s".formatted(name, addresses));
+        return addresses;
+    }
+
+    private static boolean serves(DnsMessage response, String name, String expected) {
+        String lowerCaseName = DomainNames.normalize(name);
+        return response.rcode() == 0 && response.answers().stream()
+                .anyMatch(record -> record.type() == DnsMessage.TYPE_TXT
+                        && record.name().equals(lowerCaseName)
+                        && record.data().equals(expected));
+    }
+
+    private InetSocketAddress address(String ipAddress) {
+        try {
+            // A literal address, so nothing is looked up
+            return new InetSocketAddress(InetAddress.getByName(ipAddress), nameserverPort);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid address: " + ipAddress, e);
+        }
+    }
+
+    /**
+     * @param address {@code host}, {@code host:port} or {@code [ipv6]:port}, null for the first nameserver of
+     *                {@code /etc/resolv.conf}
+     */
+    public static InetSocketAddress resolver(String address) throws IOException {
+        if (address == null) {
+            return systemResolver();
+        }
+        URI uri;
+        try {
+            uri = URI.create("dns://" + address.strip());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid resolver address: " + address, e);
+        }
+        if (uri.getHost() == null) {
+            throw new IOException("Invalid resolver address: " + address);
+        }
+        String host = uri.getHost().startsWith("[") ? uri.getHost().substring(1, uri.getHost().length() - 1) : uri.getHost();
+        return new InetSocketAddress(InetAddress.getByName(host), uri.getPort() < 0 ? DNS_PORT : uri.getPort());
+    }
+
+    private static InetSocketAddress systemResolver() throws IOException {
+        if (Files.isReadable(RESOLV_CONF)) {
+            for (String line : Files.readAllLines(RESOLV_CONF)) {
+                String[] fields = line.strip().split("\\s+");
+                if (fields.length >= 2 && fields[0].equals("nameserver")) {
+                    return new InetSocketAddress(InetAddress.getByName(fields[1]), DNS_PORT);
+                }
+            }
+        }
+        throw new IOException("No nameserver in %s, set a resolver".formatted(RESOLV_CONF));
+    }
+
+    private static Duration elapsed(long start) {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,25 @@
+package cloud.marton.hostup_dns_client.exceptions;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A request was not sent because the circuit breaker of the client is open, the Hostup API has been failing. It is
+ * an {@link IOException} like the failures it stands in for, so callers need no extra handling to fail fast.
+ */
+public final class CircuitOpenException extends IOException {
+
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long the circuit stays open, after that one request is let through to probe the API
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
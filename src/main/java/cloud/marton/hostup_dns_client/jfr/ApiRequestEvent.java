@@ -0,0 +1,65 @@
+package cloud.marton.hostup_dns_client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One HTTP request to the Hostup API, from sending it until the response was received. A retried request is one
+ * event per attempt.
+ * <p>
+ * Like all JDK Flight Recorder events it does nothing unless a recording is running with it enabled. Native images
+ * built without {@code --enable-monitoring=jfr} never record it.
+ */
+@Name("cloud.marton.hostup_dns_client.ApiRequest")
+@Label("Hostup API Request")
+@Category({"Hostup DNS Client", "API"})
+@Description("HTTP request to the Hostup API")
+@StackTrace(false)
+public final class ApiRequestEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Endpoint")
+    @Description("Path relative to the base URI, with placeholders instead of IDs")
+    String endpoint;
+
+    @Label("URI")
+    String uri;
+
+    @Label("Attempt")
+    @Description("0 for the first attempt, incremented for each retry after a HTTP 429 or a transient failure")
+    int attempt;
+
+    @Label("Status Code")
+    @Description("HTTP status code, 0 when the request failed without response")
+    int statusCode;
+
+    @Label("Bytes Received")
+    @Description("Size of the response body, 0 when the body is streamed")
+    @DataAmount
+    long bytes;
+
+    /**
+     * Ends the event and commits it when it is enabled and long enough for the recording
+     *
+     * @param statusCode 0 when the request failed without response
+     */
+    public void complete(String method, String endpoint, String uri, int attempt, int statusCode, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.method = method;
+            this.endpoint = endpoint;
+            this.uri = uri;
+            this.attempt = attempt;
+            this.statusCode = statusCode;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package cloud.marton.hostup_dns_client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Deserialization of a response body. For a streamed record list it covers reading the body from the network too.
+ */
+@Name("cloud.marton.hostup_dns_client.JsonDecode")
+@Label("Hostup JSON Decode")
+@Category({"Hostup DNS Client", "JSON"})
+@Description("Deserialization of an API response")
+@StackTrace(false)
+public final class JsonDecodeEvent extends Event {
+
+    @Label("Type")
+    String type;
+
+    @Label("Bytes")
+    @Description("Size of the decoded JSON, 0 when the body is streamed")
+    @DataAmount
+    long bytes;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+     * Ends the event and commits it when it is enabled and long enough for the recording
+     */
+    public void complete(Class<?> type, long bytes, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.type = type.getName();
+            this.bytes = bytes;
+            this.success = success;
+            commit();
+        }
+    }
+}
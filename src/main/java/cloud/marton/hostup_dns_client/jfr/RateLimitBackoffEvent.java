@@ -0,0 +1,48 @@
+package cloud.marton.hostup_dns_client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The client stopped sending requests, after a HTTP 429 or because the API reported no remaining requests in the
+ * rate limit window. The wait itself is scheduled without blocking a thread, so the event is instant and the length of
+ * the wait is in {@code sleep}.
+ */
+@Name("cloud.marton.hostup_dns_client.RateLimitBackoff")
+@Label("Hostup API Rate Limit Backoff")
+@Category({"Hostup DNS Client", "API"})
+@Description("All requests of the client wait before they are sent")
+@StackTrace(false)
+public final class RateLimitBackoffEvent extends Event {
+
+    @Label("Endpoint")
+    @Description("Endpoint of the request that triggered the backoff")
+    String endpoint;
+
+    @Label("Retry")
+    @Description("Number of the upcoming retry, 0 when the backoff was not caused by a HTTP 429")
+    int retry;
+
+    @Label("Sleep")
+    @Timespan(Timespan.MILLISECONDS)
+    long sleep;
+
+    @Label("Reason")
+    String reason;
+
+    public static void emit(String endpoint, int retry, long sleepMillis, String reason) {
+        RateLimitBackoffEvent event = new RateLimitBackoffEvent();
+        if (event.shouldCommit()) {
+            event.endpoint = endpoint;
+            event.retry = retry;
+            event.sleep = sleepMillis;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
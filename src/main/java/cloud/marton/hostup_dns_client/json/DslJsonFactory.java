@@ -6,25 +6,44 @@ import com.dslplatform.json.runtime.Settings;
 /**
  * Factory class to create and configure DslJson instances with generated converters.
  * This is so that GraalVM native images find all the necessary classes at build time.
+ * <p>
+ * The native image initializes this class at build time, see {@code META-INF/native-image}, so {@link #shared()} is
+ * already in the image heap when the binary starts.
  */
 public final class DslJsonFactory {
 
+    private static final DslJson<Object> SHARED = create();
+
     private DslJsonFactory() {
     }
 
+    /**
+     * DslJson is thread safe, only its readers and writers are not, so one instance serves the whole application
+     *
+     * @return the instance created when this class was initialized
+     */
+    public static DslJson<Object> shared() {
+        return SHARED;
+    }
+
     public static DslJson<Object> create() {
 
         // Create DslJson with runtime Settings (works for generated converters)
         DslJson<Object> dslJson = new DslJson<>(Settings.withRuntime());
 
         // Explicitly register generated converters into this instance
+        new cloud.marton.hostup_dns_client.model._BatchOperation_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DeleteDnsRecordResponse$Data_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DeleteDnsRecordResponse_DslJsonConverter().configure(dslJson);
+        new cloud.marton.hostup_dns_client.model._DesiredState$Record_DslJsonConverter().configure(dslJson);
+        new cloud.marton.hostup_dns_client.model._DesiredState$Zone_DslJsonConverter().configure(dslJson);
+        new cloud.marton.hostup_dns_client.model._DesiredState_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DnsRecordsResponse$Data_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DnsRecordsResponse$Record_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DnsRecordsResponse$Zone_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._DnsRecordsResponse_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._ErrorResponse_DslJsonConverter().configure(dslJson);
+        new cloud.marton.hostup_dns_client.model._SetRecordRequest_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._SetRecordResponse$Data_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._SetRecordResponse$Record_DslJsonConverter().configure(dslJson);
         new cloud.marton.hostup_dns_client.model._SetRecordResponse_DslJsonConverter().configure(dslJson);
@@ -0,0 +1,84 @@
+package cloud.marton.hostup_dns_client.json;
+
+import com.dslplatform.json.DslJson;
+import com.dslplatform.json.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the elements of one array in a JSON document one at a time, so only one element is in memory
+ * regardless of the size of the document.
+ */
+public final class JsonStreams {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private JsonStreams() {
+    }
+
+    public interface ElementConsumer<T> {
+        void accept(T element) throws IOException;
+    }
+
+    /**
+     * @param path the object keys leading to the array, e.g. {@code "data", "zone", "records"}
+     * @return the number of elements passed to {@code consumer}
+     * @throws IOException if the document is not valid JSON, a key of the path is missing, or {@code consumer} fails
+     */
+    public static <T> int forEachInArray(DslJson<Object> dslJson,
+                                         InputStream input,
+                                         Class<T> elementType,
+                                         ElementConsumer<T> consumer,
+                                         String... path) throws IOException {
+        JsonReader.ReadObject<T> elementReader = dslJson.tryFindReader(elementType);
+        if (elementReader == null) {
+            throw new IOException("No JSON reader for " + elementType.getName());
+        }
+        JsonReader<Object> reader = dslJson.newReader(input, new byte[BUFFER_SIZE]);
+        reader.getNextToken();
+        for (String key : path) {
+            enterField(reader, key);
+        }
+        if (reader.last() != '[') {
+            throw new IOException("Expecting an array at " + String.join(".", path));
+        }
+        int count = 0;
+        byte next = reader.getNextToken();
+        while (next != ']') {
+            T element = elementReader.read(reader);
+            if (element == null) {
+                throw new IOException("Unexpected null in " + String.join(".", path));
+            }
+            consumer.accept(element);
+            count++;
+            next = reader.getNextToken();
+            if (next == ',') {
+                next = reader.getNextToken();
+            } else if (next != ']') {
+                throw new IOException("Expecting ',' or ']' in " + String.join(".", path));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves the reader, positioned at the start of an object, to the start of the value of {@code key}
+     */
+    private static void enterField(JsonReader<Object> reader, String key) throws IOException {
+        if (reader.last() != '{') {
+            throw new IOException("Expecting an object before " + key);
+        }
+        byte next = reader.getNextToken();
+        while (next == '"') {
+            if (key.equals(reader.readKey())) {
+                return;
+            }
+            next = reader.skip();
+            if (next == ',') {
+                next = reader.getNextToken();
+            }
+        }
+        throw new IOException("Missing " + key);
+    }
+}
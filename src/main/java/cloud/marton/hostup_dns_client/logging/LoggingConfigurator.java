@@ -1,21 +1,35 @@
 package cloud.marton.hostup_dns_client.logging;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.logging.LogManager;
 
+/**
+ * Applies {@code logging.properties}. The file is read when this class is initialized, which the native image does at
+ * build time, so the binary does not look up the resource on every start.
+ */
 public final class LoggingConfigurator {
     private static final String CONFIG_PATH = "/logging.properties";
+    private static final byte[] CONFIG = readConfig();
 
     private LoggingConfigurator() {
     }
 
     public static void configure() {
+        try {
+            LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(CONFIG));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load logging configuration", e);
+        }
+    }
+
+    private static byte[] readConfig() {
         try (InputStream input = LoggingConfigurator.class.getResourceAsStream(CONFIG_PATH)) {
             if (input == null) {
                 throw new IllegalStateException("Missing logging configuration file: " + CONFIG_PATH);
             }
-            LogManager.getLogManager().readConfiguration(input);
+            return input.readAllBytes();
         } catch (IOException e) {
             throw new IllegalStateException("Failed to load logging configuration", e);
         }
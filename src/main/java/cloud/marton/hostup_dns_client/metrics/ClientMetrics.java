@@ -0,0 +1,260 @@
+package cloud.marton.hostup_dns_client.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Counters and latency histograms of the requests of one {@link cloud.marton.hostup_dns_client.HostupApiClient},
+ * per {@link Endpoint}.
+ * <p>
+ * Everything is recorded with {@link LongAdder}s, so recording never blocks a request. The metrics are written in the
+ * Prometheus text exposition format, e.g. for the textfile collector of node_exporter, see
+ * {@link #writeTo(Path)}.
+ */
+public final class ClientMetrics {
+
+    /**
+     * The states of the circuit breaker, as reported to {@link #circuitState(String)}, from the healthiest
+     */
+    private static final List<String> CIRCUIT_STATES = List.of("closed", "half_open", "open");
+
+    private final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<>(Endpoint.class);
+    private final LongAdder circuitOpened = new LongAdder();
+    private volatile String circuitState = "closed";
+
+    public ClientMetrics() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoints.put(endpoint, new EndpointMetrics());
+        }
+    }
+
+    /**
+     * @return the metrics of all {@code metrics} added up, e.g. of the clients of several accounts. The circuit state
+     * is the least healthy one of them.
+     */
+    public static ClientMetrics sum(List<ClientMetrics> metrics) {
+        ClientMetrics sum = new ClientMetrics();
+        for (ClientMetrics client : metrics) {
+            for (Map.Entry<Endpoint, EndpointMetrics> entry : client.endpoints.entrySet()) {
+                EndpointMetrics from = entry.getValue();
+                EndpointMetrics to = sum.endpoints.get(entry.getKey());
+                to.latency.add(from.latency);
+                from.responses.forEach((httpStatusCode, count) ->
+                        to.responses.computeIfAbsent(httpStatusCode, ignored -> new LongAdder()).add(count.sum()));
+                to.transportErrors.add(from.transportErrors.sum());
+                to.retries.add(from.retries.sum());
+                to.hedges.add(from.hedges.sum());
+                to.rejected.add(from.rejected.sum());
+                to.backoffNanos.add(from.backoffNanos.sum());
+                to.pacingNanos.add(from.pacingNanos.sum());
+                to.bytesReceived.add(from.bytesReceived.sum());
+            }
+            sum.circuitOpened.add(client.circuitOpened.sum());
+            if (CIRCUIT_STATES.indexOf(client.circuitState) > CIRCUIT_STATES.indexOf(sum.circuitState)) {
+                sum.circuitState = client.circuitState;
+            }
+        }
+        return sum;
+    }
+
+    private static final class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+        private final LongAdder transportErrors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder backoffNanos = new LongAdder();
+        private final LongAdder pacingNanos = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+    }
+
+    /**
+     * A response was received {@code nanos} after the request was sent, retries are recorded as separate responses
+     */
+    public void response(Endpoint endpoint, int httpStatusCode, long nanos) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        metrics.latency.record(nanos);
+        metrics.responses.computeIfAbsent(httpStatusCode, ignored -> new LongAdder()).increment();
+    }
+
+    /**
+     * The request failed without response, e.g. connection refused or timed out
+     */
+    public void transportError(Endpoint endpoint) {
+        endpoints.get(endpoint).transportErrors.increment();
+    }
+
+    public void retry(Endpoint endpoint) {
+        endpoints.get(endpoint).retries.increment();
+    }
+
+    /**
+     * A second request was sent because the first one was slower than usual
+     */
+    public void hedge(Endpoint endpoint) {
+        endpoints.get(endpoint).hedges.increment();
+    }
+
+    /**
+     * The request was not sent because the circuit breaker was open
+     */
+    public void rejected(Endpoint endpoint) {
+        endpoints.get(endpoint).rejected.increment();
+    }
+
+    /**
+     * @param state one of {@code closed}, {@code open} and {@code half_open}
+     */
+    public void circuitState(String state) {
+        if (!CIRCUIT_STATES.contains(state)) {
+            throw new IllegalArgumentException("Unknown circuit state: " + state);
+        }
+        if (state.equals("open")) {
+            circuitOpened.increment();
+        }
+        circuitState = state;
+    }
+
+    public String circuitState() {
+        return circuitState;
+    }
+
+    /**
+     * A request waited {@code nanos} for the shared backoff after a HTTP 429 or an exhausted rate limit window
+     */
+    public void backoff(Endpoint endpoint, long nanos) {
+        endpoints.get(endpoint).backoffNanos.add(nanos);
+    }
+
+    /**
+     * A request waited {@code nanos} for a token of the rate limiter
+     */
+    public void paced(Endpoint endpoint, long nanos) {
+        endpoints.get(endpoint).pacingNanos.add(nanos);
+    }
+
+    public void bytesReceived(Endpoint endpoint, long bytes) {
+        endpoints.get(endpoint).bytesReceived.add(bytes);
+    }
+
+    public long responses(Endpoint endpoint, int httpStatusCode) {
+        LongAdder count = endpoints.get(endpoint).responses.get(httpStatusCode);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long retries(Endpoint endpoint) {
+        return endpoints.get(endpoint).retries.sum();
+    }
+
+    public long hedges(Endpoint endpoint) {
+        return endpoints.get(endpoint).hedges.sum();
+    }
+
+    public long rejections(Endpoint endpoint) {
+        return endpoints.get(endpoint).rejected.sum();
+    }
+
+    public long pacedNanos(Endpoint endpoint) {
+        return endpoints.get(endpoint).pacingNanos.sum();
+    }
+
+    public long bytesReceived(Endpoint endpoint) {
+        return endpoints.get(endpoint).bytesReceived.sum();
+    }
+
+    public LatencyHistogram latency(Endpoint endpoint) {
+        return endpoints.get(endpoint).latency;
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format
+     */
+    public void writePrometheus(Writer output) throws IOException {
+        output.write("# HELP hostup_api_request_duration_seconds Time from sending a request until its response was received\n");
+        output.write("# TYPE hostup_api_request_duration_seconds histogram\n");
+        for (Map.Entry<Endpoint, EndpointMetrics> entry : endpoints.entrySet()) {
+            String endpoint = entry.getKey().label();
+            long[] counts = entry.getValue().latency.cumulativeCounts();
+            for (int i = 0; i < LatencyHistogram.BUCKET_BOUNDS_SECONDS.length; i++) {
+                output.write("hostup_api_request_duration_seconds_bucket{endpoint=\"%s\",le=\"%s\"} %d\n"
+                        .formatted(endpoint, LatencyHistogram.BUCKET_BOUNDS_SECONDS[i], counts[i]));
+            }
+            long count = counts[counts.length - 1];
+            output.write("hostup_api_request_duration_seconds_bucket{endpoint=\"%s\",le=\"+Inf\"} %d\n".formatted(endpoint, count));
+            output.write("hostup_api_request_duration_seconds_sum{endpoint=\"%s\"} %s\n".formatted(endpoint, entry.getValue().latency.sumSeconds()));
+            output.write("hostup_api_request_duration_seconds_count{endpoint=\"%s\"} %d\n".formatted(endpoint, count));
+        }
+
+        output.write("# HELP hostup_api_responses_total Responses received, by HTTP status code\n");
+        output.write("# TYPE hostup_api_responses_total counter\n");
+        for (Map.Entry<Endpoint, EndpointMetrics> entry : endpoints.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> response : new TreeMap<>(entry.getValue().responses).entrySet()) {
+                output.write("hostup_api_responses_total{endpoint=\"%s\",code=\"%d\"} %d\n"
+                        .formatted(entry.getKey().label(), response.getKey(), response.getValue().sum()));
+            }
+        }
+
+        writeCounter(output, "hostup_api_transport_errors_total", "Requests that failed without response",
+                metrics -> Long.toString(metrics.transportErrors.sum()));
+        writeCounter(output, "hostup_api_retries_total", "Requests sent again after a HTTP 429 or a transient failure",
+                metrics -> Long.toString(metrics.retries.sum()));
+        writeCounter(output, "hostup_api_hedged_requests_total", "Second requests sent because the first one was slow",
+                metrics -> Long.toString(metrics.hedges.sum()));
+        writeCounter(output, "hostup_api_rejected_requests_total", "Requests failed without sending them because the circuit breaker was open",
+                metrics -> Long.toString(metrics.rejected.sum()));
+        writeCounter(output, "hostup_api_backoff_seconds_total", "Time requests waited for the backoff after a HTTP 429 or an exhausted rate limit",
+                metrics -> Double.toString(metrics.backoffNanos.sum() / 1e9));
+        writeCounter(output, "hostup_api_pacing_seconds_total", "Time requests waited for the client side rate limiter",
+                metrics -> Double.toString(metrics.pacingNanos.sum() / 1e9));
+        writeCounter(output, "hostup_api_response_bytes_total", "Bytes of response bodies received",
+                metrics -> Long.toString(metrics.bytesReceived.sum()));
+
+        output.write("# HELP hostup_api_circuit_state State of the circuit breaker, 1 for the current state\n");
+        output.write("# TYPE hostup_api_circuit_state gauge\n");
+        String current = circuitState;
+        for (String state : CIRCUIT_STATES) {
+            output.write("hostup_api_circuit_state{state=\"%s\"} %d\n".formatted(state, state.equals(current) ? 1 : 0));
+        }
+        output.write("# HELP hostup_api_circuit_opened_total Times the circuit breaker opened\n");
+        output.write("# TYPE hostup_api_circuit_opened_total counter\n");
+        output.write("hostup_api_circuit_opened_total %d\n".formatted(circuitOpened.sum()));
+        output.flush();
+    }
+
+    private void writeCounter(Writer output, String name, String help, Function<EndpointMetrics, String> value) throws IOException {
+        output.write("# HELP %s %s\n".formatted(name, help));
+        output.write("# TYPE %s counter\n".formatted(name));
+        for (Map.Entry<Endpoint, EndpointMetrics> entry : endpoints.entrySet()) {
+            output.write("%s{endpoint=\"%s\"} %s\n".formatted(name, entry.getKey().label(), value.apply(entry.getValue())));
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to {@code file} and moves it in place, so a scraper never reads a partial file
+     */
+    public void writeTo(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer output = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writePrometheus(output);
+        }
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cloud.marton.hostup_dns_client.metrics;
+
+/**
+ * The API endpoints the client calls, used as {@code endpoint} label of the metrics
+ */
+public enum Endpoint {
+    ZONES("zones", "GET", "dns/zones"),
+    LIST_RECORDS("records_list", "GET", "dns/zones/{zoneId}/records"),
+    SET_RECORD("record_set", "POST", "dns/zones/{zoneId}/records"),
+    DELETE_RECORD("record_delete", "DELETE", "dns/zones/{zoneId}/records/{recordId}");
+
+    private final String label;
+    private final String method;
+    private final String pathTemplate;
+
+    Endpoint(String label, String method, String pathTemplate) {
+        this.label = label;
+        this.method = method;
+        this.pathTemplate = pathTemplate;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    /**
+     * @return the path relative to the base URI, with placeholders instead of IDs
+     */
+    public String pathTemplate() {
+        return pathTemplate;
+    }
+}
@@ -0,0 +1,106 @@
+package cloud.marton.hostup_dns_client.metrics;
+
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed buckets. Recording is lock-free, one {@link LongAdder} increment per bucket hit, so
+ * concurrent requests do not contend on it.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in seconds. The API usually answers in tens of milliseconds, and a request is cut
+     * off after 30 seconds.
+     */
+    static final double[] BUCKET_BOUNDS_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_SECONDS.length; i++) {
+            BUCKET_BOUNDS_NANOS[i] = (long) (BUCKET_BOUNDS_SECONDS[i] * 1_000_000_000L);
+        }
+    }
+
+    // The last bucket counts the observations above the largest bound
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    /**
+     * Adds the observations of {@code other} to this histogram
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i].add(other.buckets[i].sum());
+        }
+        sumNanos.add(other.sumNanos.sum());
+    }
+
+    /**
+     * @return the number of observations less than or equal to each bound, and the total count as last element
+     */
+    public long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            counts[i] = count;
+        }
+        return counts;
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a quantile like Prometheus' {@code histogram_quantile}, interpolating linearly inside the bucket
+     *
+     * @param quantile between 0 and 1, e.g. 0.95
+     * @return the estimate, or the largest bound when the quantile is above it. Empty without observations.
+     */
+    public OptionalLong quantileNanos(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1, was " + quantile);
+        }
+        long[] counts = cumulativeCounts();
+        long count = counts[counts.length - 1];
+        if (count == 0) {
+            return OptionalLong.empty();
+        }
+        double rank = quantile * count;
+        for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+            if (counts[i] >= rank) {
+                long lower = i == 0 ? 0 : BUCKET_BOUNDS_NANOS[i - 1];
+                long below = i == 0 ? 0 : counts[i - 1];
+                long inBucket = counts[i] - below;
+                double fraction = inBucket == 0 ? 1 : (rank - below) / inBucket;
+                return OptionalLong.of(lower + (long) ((BUCKET_BOUNDS_NANOS[i] - lower) * fraction));
+            }
+        }
+        return OptionalLong.of(BUCKET_BOUNDS_NANOS[BUCKET_BOUNDS_NANOS.length - 1]);
+    }
+
+    public double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+}
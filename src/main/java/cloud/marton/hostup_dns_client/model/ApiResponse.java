@@ -1,4 +1,46 @@
 package cloud.marton.hostup_dns_client.model;
 
-public record ApiResponse(boolean success, int httpStatus, String body, HostupApiResponse parsedResponse) {
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Two responses are equal when their bodies have the same bytes, not only when they share the array.
+ *
+ * @param rawBody the response body bytes as received. The body is only decoded to a String by {@link #body()}.
+ */
+public record ApiResponse(boolean success, int httpStatus, byte[] rawBody, HostupApiResponse parsedResponse) {
+
+    public ApiResponse(boolean success, int httpStatus, String body, HostupApiResponse parsedResponse) {
+        this(success, httpStatus, body == null ? null : body.getBytes(StandardCharsets.UTF_8), parsedResponse);
+    }
+
+    /**
+     * @return the response body decoded as UTF-8. Decodes on every call, prefer {@link #rawBody()} for output.
+     */
+    public String body() {
+        return rawBody == null ? null : new String(rawBody, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ApiResponse other
+                && success == other.success
+                && httpStatus == other.httpStatus
+                && Arrays.equals(rawBody, other.rawBody)
+                && Objects.equals(parsedResponse, other.parsedResponse);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(success, httpStatus, Arrays.hashCode(rawBody), parsedResponse);
+    }
+
+    @Override
+    public String toString() {
+        return "ApiResponse[success=" + success
+                + ", httpStatus=" + httpStatus
+                + ", body=" + body()
+                + ", parsedResponse=" + parsedResponse + "]";
+    }
 }
@@ -0,0 +1,19 @@
+package cloud.marton.hostup_dns_client.model;
+
+import com.dslplatform.json.CompiledJson;
+import com.dslplatform.json.JsonAttribute;
+
+/**
+ * One line of a {@code --batch} file in JSON lines format, e.g.
+ * {@code {"op":"add","zoneId":10111,"type":"TXT","domain":"foo.example.org","value":"some text","ttl":300}}
+ */
+@CompiledJson()
+public record BatchOperation(
+        @JsonAttribute(mandatory = true, nullable = false) String op,
+        Integer zoneId,
+        Integer recordId,
+        String type,
+        String domain,
+        String value,
+        Integer ttl) {
+}
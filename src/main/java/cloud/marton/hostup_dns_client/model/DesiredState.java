@@ -0,0 +1,27 @@
+package cloud.marton.hostup_dns_client.model;
+
+import com.dslplatform.json.CompiledJson;
+import com.dslplatform.json.JsonAttribute;
+
+import java.util.List;
+
+/**
+ * The records zones should have, read from an {@code --apply} file, e.g.
+ * {@code {"zones":[{"zoneId":10111,"records":[{"type":"A","name":"www.example.org","value":"1.2.3.4","ttl":3600}]}]}}
+ */
+@CompiledJson()
+public record DesiredState(
+        @JsonAttribute(mandatory = true, nullable = false) List<Zone> zones) {
+
+    public record Zone(
+            @JsonAttribute(mandatory = true, nullable = false) int zoneId,
+            @JsonAttribute(mandatory = true, nullable = false) List<Record> records) {
+    }
+
+    public record Record(
+            @JsonAttribute(mandatory = true, nullable = false) String type,
+            @JsonAttribute(mandatory = true, nullable = false) String name,
+            @JsonAttribute(mandatory = true, nullable = false) String value,
+            @JsonAttribute(mandatory = true, nullable = false) int ttl) {
+    }
+}
@@ -0,0 +1,16 @@
+package cloud.marton.hostup_dns_client.model;
+
+import com.dslplatform.json.CompiledJson;
+import com.dslplatform.json.JsonAttribute;
+
+/**
+ * Body of the add DNS record request.
+ * <a href="https://developer.hostup.se/#tag/domain-services/POST/api/dns/zones/{zoneId}/records">API Documentation</a>
+ */
+@CompiledJson()
+public record SetRecordRequest(
+        @JsonAttribute(mandatory = true, nullable = false) String type,
+        @JsonAttribute(mandatory = true, nullable = false) String name,
+        @JsonAttribute(mandatory = true, nullable = false) String value,
+        @JsonAttribute(mandatory = true, nullable = false) int ttl) {
+}
@@ -0,0 +1,70 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caps the number of requests one {@link cloud.marton.hostup_dns_client.HostupApiClient} has in flight.
+ * <p>
+ * Unlike a {@link java.util.concurrent.Semaphore} it never blocks: a request over the cap gets a future that
+ * completes when an earlier request releases its permit, in the order the requests arrived. So thousands of queued
+ * operations cost a future each, not a thread each.
+ */
+public final class InFlightLimit {
+
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private final int limit;
+    private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    public InFlightLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1, was " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public static InFlightLimit unlimited() {
+        return new InFlightLimit(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return a future that completes once the caller holds a permit, it has to {@link #release()} it exactly once
+     */
+    public synchronized CompletableFuture<Void> acquire() {
+        if (inFlight < limit) {
+            inFlight++;
+            return ACQUIRED;
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        waiting.add(permit);
+        return permit;
+    }
+
+    /**
+     * Hands the permit to the longest waiting caller, whose continuation runs on this thread
+     */
+    public void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        next.complete(null);
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of callers waiting for a permit
+     */
+    public synchronized int waiting() {
+        return waiting.size();
+    }
+}
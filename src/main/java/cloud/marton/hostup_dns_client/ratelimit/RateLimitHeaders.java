@@ -0,0 +1,72 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import java.net.http.HttpHeaders;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * The rate limit headers of a response: {@code Retry-After} and {@code X-RateLimit-Limit},
+ * {@code X-RateLimit-Remaining}, {@code X-RateLimit-Reset}. Missing or malformed headers are empty.
+ *
+ * @param reset      time until the current rate limit window resets
+ * @param retryAfter time the server asks the client to wait before retrying
+ */
+public record RateLimitHeaders(OptionalLong limit, OptionalLong remaining, Optional<Duration> reset, Optional<Duration> retryAfter) {
+
+    // X-RateLimit-Reset values above this are epoch seconds, smaller values are seconds until the reset
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    public static RateLimitHeaders from(HttpHeaders headers, Clock clock) {
+        return new RateLimitHeaders(
+                parseLong(headers, "X-RateLimit-Limit"),
+                parseLong(headers, "X-RateLimit-Remaining"),
+                parseReset(headers, clock),
+                parseRetryAfter(headers, clock));
+    }
+
+    private static OptionalLong parseLong(HttpHeaders headers, String name) {
+        Optional<String> value = headers.firstValue(name);
+        if (value.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(value.get().trim()));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static Optional<Duration> parseReset(HttpHeaders headers, Clock clock) {
+        OptionalLong reset = parseLong(headers, "X-RateLimit-Reset");
+        if (reset.isEmpty()) {
+            return Optional.empty();
+        }
+        long seconds = reset.getAsLong() > EPOCH_SECONDS_THRESHOLD ?
+                reset.getAsLong() - clock.instant().getEpochSecond() : reset.getAsLong();
+        return Optional.of(Duration.ofSeconds(Math.max(0, seconds)));
+    }
+
+    private static Optional<Duration> parseRetryAfter(HttpHeaders headers, Clock clock) {
+        Optional<String> value = headers.firstValue("Retry-After").map(String::trim);
+        if (value.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value.get()))));
+        } catch (NumberFormatException ignored) {
+            // Not delay-seconds, try HTTP-date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.get(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration untilDate = Duration.between(clock.instant(), date.toInstant());
+            return Optional.of(untilDate.isNegative() ? Duration.ZERO : untilDate);
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+}
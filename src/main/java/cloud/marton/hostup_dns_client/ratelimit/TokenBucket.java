@@ -0,0 +1,88 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that paces the requests of one {@link cloud.marton.hostup_dns_client.HostupApiClient} across all
+ * threads using it.
+ * <p>
+ * Callers reserve a token before each request and wait for the returned delay. The bucket never blocks itself, so it
+ * works for both blocking and asynchronous callers. The rate starts at the configured maximum and is lowered when the
+ * API reports a smaller remaining budget, see {@link #adjustRate(double)}.
+ */
+public final class TokenBucket {
+
+    private static final double MIN_PERMITS_PER_SECOND = 0.01;
+
+    private final double maxPermitsPerSecond;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param maxPermitsPerSecond sustained request rate. {@link Double#POSITIVE_INFINITY} disables pacing.
+     * @param capacity            number of requests that can be sent back to back after an idle period
+     */
+    public TokenBucket(double maxPermitsPerSecond, double capacity) {
+        this(maxPermitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double maxPermitsPerSecond, double capacity, LongSupplier nanoTime) {
+        if (!(maxPermitsPerSecond > 0) || !(capacity >= 1)) {
+            throw new IllegalArgumentException("rate must be positive and capacity at least 1");
+        }
+        this.maxPermitsPerSecond = maxPermitsPerSecond;
+        this.capacity = capacity;
+        this.nanoTime = nanoTime;
+        this.permitsPerSecond = maxPermitsPerSecond;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoTime.getAsLong();
+    }
+
+    public static TokenBucket unlimited() {
+        return new TokenBucket(Double.POSITIVE_INFINITY, 1);
+    }
+
+    /**
+     * Takes one token
+     *
+     * @return nanoseconds the caller has to wait before sending its request, 0 when it may send right away
+     */
+    public synchronized long reserve() {
+        if (Double.isInfinite(permitsPerSecond)) {
+            return 0;
+        }
+        refill();
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerSecond * 1_000_000_000L);
+    }
+
+    /**
+     * Sets the rate to what the API says is left, but never above the configured maximum. An
+     * {@linkplain #unlimited() unlimited} bucket stays unlimited.
+     */
+    public synchronized void adjustRate(double permitsPerSecond) {
+        if (Double.isInfinite(maxPermitsPerSecond)) {
+            return;
+        }
+        refill();
+        this.permitsPerSecond = Math.max(MIN_PERMITS_PER_SECOND, Math.min(maxPermitsPerSecond, permitsPerSecond));
+    }
+
+    public synchronized double rate() {
+        return permitsPerSecond;
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        if (!Double.isInfinite(permitsPerSecond)) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * permitsPerSecond);
+        }
+        lastRefillNanos = now;
+    }
+}
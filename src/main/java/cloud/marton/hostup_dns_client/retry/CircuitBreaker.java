@@ -0,0 +1,253 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Stops a client from sending requests while the Hostup API is failing, so callers fail at once instead of each
+ * waiting for timeouts and backoffs.
+ * <ul>
+ *     <li>{@link State#CLOSED}: the outcomes of the last {@code windowSize} requests are kept. Once there are at least
+ *     {@code minimumCalls} of them, and the share of failed or of slow ones reaches its threshold, the circuit
+ *     opens.</li>
+ *     <li>{@link State#OPEN}: no request is sent for {@code openDuration}.</li>
+ *     <li>{@link State#HALF_OPEN}: a single request is let through as a probe, the others are rejected. When it
+ *     succeeds in time the circuit closes with an empty window, otherwise it opens again.</li>
+ * </ul>
+ * A failure is a request without response or with a HTTP 5xx response. A HTTP 429 is not, it is handled by the
+ * backoff of the client.
+ * <p>
+ * Each state change starts a new generation. A permit is only valid in the generation it was acquired in, so the
+ * outcome of a request sent before the last state change, e.g. one still in flight when the circuit opened, neither
+ * counts in the new window nor is taken for the probe.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /**
+     * Returned by {@link #tryAcquire()} when the request must not be sent
+     */
+    public static final long REJECTED = -1;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public interface Listener {
+        void stateChanged(State from, State to);
+    }
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // The sliding window, a ring buffer of the outcomes of the last requests
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long generation;
+    private long openUntilNanos;
+    private boolean probing;
+
+    /**
+     * @param failureRateThreshold  share of failed requests in the window that opens the circuit, e.g. 0.5
+     * @param slowCall              a request is slow when its response takes at least this long
+     * @param slowCallRateThreshold share of slow requests in the window that opens the circuit
+     */
+    public CircuitBreaker(int windowSize,
+                          int minimumCalls,
+                          double failureRateThreshold,
+                          Duration slowCall,
+                          double slowCallRateThreshold,
+                          Duration openDuration) {
+        this(true, windowSize, minimumCalls, failureRateThreshold, slowCall, slowCallRateThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(boolean enabled,
+                   int windowSize,
+                   int minimumCalls,
+                   double failureRateThreshold,
+                   Duration slowCall,
+                   double slowCallRateThreshold,
+                   Duration openDuration,
+                   LongSupplier nanoTime) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+        }
+        this.enabled = enabled;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCall.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker(false, 1, 1, 1, Duration.ZERO, 1, Duration.ZERO, System::nanoTime);
+    }
+
+    /**
+     * Opens when half of the last 20 requests, and at least 10, failed, or when 80% took 10s or longer, for 30s
+     */
+    public static CircuitBreaker standard() {
+        return new CircuitBreaker(20, 10, 0.5, Duration.ofSeconds(10), 0.8, Duration.ofSeconds(30));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return a permit to send a request now, or {@link #REJECTED}. A request that was sent has to report its outcome
+     * with the permit to {@link #onResult} or {@link #onCancelled}.
+     */
+    public synchronized long tryAcquire() {
+        if (!enabled) {
+            return generation;
+        }
+        return switch (state) {
+            case CLOSED -> generation;
+            case OPEN -> {
+                if (nanoTime.getAsLong() - openUntilNanos < 0) {
+                    yield REJECTED;
+                }
+                transition(State.HALF_OPEN);
+                LOGGER.info("Circuit breaker half-open, sending one request to probe the API");
+                probing = true;
+                yield generation;
+            }
+            case HALF_OPEN -> {
+                if (probing) {
+                    yield REJECTED;
+                }
+                probing = true;
+                yield generation;
+            }
+        };
+    }
+
+    /**
+     * @return whether requests are rejected without a probe, so a caller need not wait for its turn to find out
+     */
+    public synchronized boolean isOpen() {
+        return enabled && state == State.OPEN && nanoTime.getAsLong() - openUntilNanos < 0;
+    }
+
+    /**
+     * @return how long the circuit stays open, zero when it is not open
+     */
+    public synchronized Duration remainingOpen() {
+        return isOpen() ? Duration.ofNanos(openUntilNanos - nanoTime.getAsLong()) : Duration.ZERO;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * @param permit       from {@link #tryAcquire()} when the request was sent
+     * @param failure      no response was received, or a HTTP 5xx
+     * @param latencyNanos from sending the request until its response, or its failure
+     */
+    public synchronized void onResult(long permit, boolean failure, long latencyNanos) {
+        if (!enabled) {
+            return;
+        }
+        if (permit != generation) {
+            LOGGER.fine(() -> "Circuit breaker ignores the outcome of a request sent before it was " + state.name().toLowerCase(Locale.ROOT));
+            return;
+        }
+        boolean slowCall = latencyNanos >= slowCallNanos;
+        switch (state) {
+            case HALF_OPEN -> {
+                probing = false;
+                if (failure || slowCall) {
+                    open("the probe " + (failure ? "failed" : "was slow"));
+                } else {
+                    reset();
+                    transition(State.CLOSED);
+                    LOGGER.info("Circuit breaker closed, the API answered the probe");
+                }
+            }
+            case CLOSED -> {
+                record(failure, slowCall);
+                if (calls < minimumCalls) {
+                    return;
+                }
+                if (failures >= failureRateThreshold * calls) {
+                    open("%d of the last %d requests failed".formatted(failures, calls));
+                } else if (slowCalls >= slowCallRateThreshold * calls) {
+                    open("%d of the last %d requests took %ds or longer".formatted(slowCalls, calls, TimeUnit.NANOSECONDS.toSeconds(slowCallNanos)));
+                }
+            }
+            case OPEN -> {
+                // No permits are handed out while open
+            }
+        }
+    }
+
+    /**
+     * A request that was let through was cancelled before its outcome was known, e.g. the slower one of a hedged pair,
+     * or could not be sent at all
+     */
+    public synchronized void onCancelled(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void reset() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void open(String reason) {
+        openUntilNanos = nanoTime.getAsLong() + openNanos;
+        transition(State.OPEN);
+        LOGGER.warning(() -> "Circuit breaker opened, %s. Requests fail at once for %ds".formatted(reason, TimeUnit.NANOSECONDS.toSeconds(openNanos)));
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        generation++;
+        for (Listener listener : listeners) {
+            listener.stateChanged(from, to);
+        }
+    }
+}
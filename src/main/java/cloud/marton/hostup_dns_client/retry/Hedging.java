@@ -0,0 +1,53 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import cloud.marton.hostup_dns_client.metrics.LatencyHistogram;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * When a {@code GET} is hedged: if it has not been answered after the {@code quantile} of the recent latency of its
+ * endpoint, the same request is sent a second time. The first response wins and the other request is cancelled, so a
+ * single slow connection or server does not hold the caller up to the request timeout.
+ *
+ * @param quantile of the latency of the endpoint, e.g. 0.95 sends a second request for about one in twenty
+ * @param minDelay lower bound of the delay, so a fast API is not asked twice for every little delay
+ * @param maxDelay upper bound of the delay, and the delay until {@link #MIN_SAMPLES} latencies have been recorded
+ */
+public record Hedging(boolean enabled, double quantile, Duration minDelay, Duration maxDelay) {
+
+    public static final int MIN_SAMPLES = 20;
+
+    public Hedging {
+        if (quantile <= 0 || quantile >= 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1, was " + quantile);
+        }
+        Objects.requireNonNull(minDelay, "minDelay");
+        Objects.requireNonNull(maxDelay, "maxDelay");
+        if (minDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalArgumentException("minDelay must not be greater than maxDelay");
+        }
+    }
+
+    public static Hedging disabled() {
+        return new Hedging(false, 0.95, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * Hedges after the 95th percentile of the latency, at least 50ms and at most 5s
+     */
+    public static Hedging p95() {
+        return new Hedging(true, 0.95, Duration.ofMillis(50), Duration.ofSeconds(5));
+    }
+
+    /**
+     * @return how long to wait for the first request before sending the second one
+     */
+    public long delayNanos(LatencyHistogram latency) {
+        if (latency.count() < MIN_SAMPLES) {
+            return maxDelay.toNanos();
+        }
+        long estimate = latency.quantileNanos(quantile).orElse(maxDelay.toNanos());
+        return Math.clamp(estimate, minDelay.toNanos(), maxDelay.toNanos());
+    }
+}
@@ -0,0 +1,70 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import cloud.marton.hostup_dns_client.model.ErrorResponse;
+
+import java.time.Duration;
+
+/**
+ * Decides which failed requests of a {@link cloud.marton.hostup_dns_client.HostupApiClient} are sent again, how often
+ * and after how long. Failures are classified, and every {@link Classification} has its own budget of retries per
+ * request, so a few HTTP 503 do not use up the retries left for a later HTTP 429.
+ */
+public interface RetryPolicy {
+
+    enum Classification {
+        /**
+         * Not retried, the response or exception is returned as is
+         */
+        FATAL,
+        /**
+         * Retried after the {@code Retry-After} of the response or the backoff, and every request of the client waits
+         * with it
+         */
+        RATE_LIMITED,
+        /**
+         * Retried after the backoff, only this request waits
+         */
+        TRANSIENT
+    }
+
+    /**
+     * @param method        the HTTP method of the request
+     * @param errorResponse the parsed body, null for HTTP 429 and when the body is not an {@link ErrorResponse}
+     */
+    Classification classify(String method, int httpStatusCode, ErrorResponse errorResponse);
+
+    /**
+     * @param failure why no response was received, e.g. a {@link java.net.ConnectException}
+     */
+    Classification classify(String method, Throwable failure);
+
+    /**
+     * @return how often a request may be retried for failures of this classification
+     */
+    int maxRetries(Classification classification);
+
+    /**
+     * @param retry 1 for the first retry of this classification
+     */
+    Duration backoff(Classification classification, int retry);
+
+    /**
+     * @return how long one request may wait at most for backoffs, when it uses up the retries of every classification
+     */
+    default Duration retryBudget() {
+        Duration budget = Duration.ZERO;
+        for (Classification classification : Classification.values()) {
+            for (int retry = 1; retry <= maxRetries(classification); retry++) {
+                budget = budget.plus(backoff(classification, retry));
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * @see StandardRetryPolicy#of(int, long)
+     */
+    static RetryPolicy standard(int maxRateLimitRetries, long firstRateLimitBackoffMillis) {
+        return StandardRetryPolicy.of(maxRateLimitRetries, firstRateLimitBackoffMillis);
+    }
+}
@@ -0,0 +1,126 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import cloud.marton.hostup_dns_client.exceptions.CircuitOpenException;
+import cloud.marton.hostup_dns_client.model.ErrorResponse;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The default {@link RetryPolicy}:
+ * <ul>
+ *     <li>HTTP 429 is {@link Classification#RATE_LIMITED}</li>
+ *     <li>a connection that could not be established is {@link Classification#TRANSIENT} for every method, the request
+ *     was never sent</li>
+ *     <li>for {@code GET}, the {@code transientStatusCodes}, the {@code transientErrorCodes} and any other
+ *     {@link java.io.IOException}, e.g. a timeout, are {@link Classification#TRANSIENT}. A {@code POST} or {@code DELETE}
+ *     may have been carried out before the response was lost. Sending a {@code POST} again could add a record twice.
+ *     Sending a {@code DELETE} again could delete a record that replaced the deleted one, or get a HTTP 404 that
+ *     reports a successful delete as a failure.</li>
+ *     <li>everything else is {@link Classification#FATAL}, also a {@link CircuitOpenException}</li>
+ * </ul>
+ * Backoffs double with every retry, from the first backoff up to two minutes, plus up to 500ms of jitter.
+ *
+ * @param transientErrorCodes {@link ErrorResponse#code()} values worth retrying, whatever the status code
+ */
+public record StandardRetryPolicy(int maxRateLimitRetries,
+                                  Duration firstRateLimitBackoff,
+                                  int maxTransientRetries,
+                                  Duration firstTransientBackoff,
+                                  Set<Integer> transientStatusCodes,
+                                  Set<String> transientErrorCodes) implements RetryPolicy {
+
+    public static final int DEFAULT_MAX_TRANSIENT_RETRIES = 3;
+    private static final Duration DEFAULT_FIRST_TRANSIENT_BACKOFF = Duration.ofMillis(500);
+    private static final Set<Integer> DEFAULT_TRANSIENT_STATUS_CODES = Set.of(500, 502, 503, 504);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(2);
+
+    public StandardRetryPolicy {
+        if (maxRateLimitRetries < 0 || maxTransientRetries < 0) {
+            throw new IllegalArgumentException("max retries must not be negative");
+        }
+        Objects.requireNonNull(firstRateLimitBackoff, "firstRateLimitBackoff");
+        Objects.requireNonNull(firstTransientBackoff, "firstTransientBackoff");
+        transientStatusCodes = Set.copyOf(transientStatusCodes);
+        transientErrorCodes = Set.copyOf(transientErrorCodes);
+    }
+
+    /**
+     * @param maxRateLimitRetries         how often a request is sent again after a HTTP 429
+     * @param firstRateLimitBackoffMillis the wait before the first of them, when the response has no {@code Retry-After}
+     */
+    public static StandardRetryPolicy of(int maxRateLimitRetries, long firstRateLimitBackoffMillis) {
+        return new StandardRetryPolicy(maxRateLimitRetries, Duration.ofMillis(firstRateLimitBackoffMillis),
+                DEFAULT_MAX_TRANSIENT_RETRIES, DEFAULT_FIRST_TRANSIENT_BACKOFF, DEFAULT_TRANSIENT_STATUS_CODES, Set.of());
+    }
+
+    public StandardRetryPolicy withTransientRetries(int maxTransientRetries, Duration firstTransientBackoff) {
+        return new StandardRetryPolicy(maxRateLimitRetries, firstRateLimitBackoff, maxTransientRetries, firstTransientBackoff,
+                transientStatusCodes, transientErrorCodes);
+    }
+
+    public StandardRetryPolicy withTransientErrorCodes(Set<String> transientErrorCodes) {
+        return new StandardRetryPolicy(maxRateLimitRetries, firstRateLimitBackoff, maxTransientRetries, firstTransientBackoff,
+                transientStatusCodes, transientErrorCodes);
+    }
+
+    @Override
+    public Classification classify(String method, int httpStatusCode, ErrorResponse errorResponse) {
+        if (httpStatusCode == 429) {
+            return Classification.RATE_LIMITED;
+        }
+        if (!isIdempotent(method)) {
+            return Classification.FATAL;
+        }
+        if (transientStatusCodes.contains(httpStatusCode)
+                || errorResponse != null && transientErrorCodes.contains(errorResponse.code())) {
+            return Classification.TRANSIENT;
+        }
+        return Classification.FATAL;
+    }
+
+    @Override
+    public Classification classify(String method, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof CircuitOpenException) {
+            return Classification.FATAL;
+        }
+        if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+            return Classification.TRANSIENT;
+        }
+        if (cause instanceof IOException && isIdempotent(method)) {
+            return Classification.TRANSIENT;
+        }
+        return Classification.FATAL;
+    }
+
+    @Override
+    public int maxRetries(Classification classification) {
+        return switch (classification) {
+            case FATAL -> 0;
+            case RATE_LIMITED -> maxRateLimitRetries;
+            case TRANSIENT -> maxTransientRetries;
+        };
+    }
+
+    @Override
+    public Duration backoff(Classification classification, int retry) {
+        Duration first = switch (classification) {
+            case FATAL -> Duration.ZERO;
+            case RATE_LIMITED -> firstRateLimitBackoff;
+            case TRANSIENT -> firstTransientBackoff;
+        };
+        int effectiveRetry = Math.min(Math.max(1, retry), 31);
+        long baseDelayMillis = Math.min(MAX_BACKOFF.toMillis(), first.toMillis() * (1L << (effectiveRetry - 1)));
+        return Duration.ofMillis(baseDelayMillis + (long) (Math.random() * 500L));
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+}
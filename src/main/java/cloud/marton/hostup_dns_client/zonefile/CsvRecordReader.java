@@ -0,0 +1,95 @@
+package cloud.marton.hostup_dns_client.zonefile;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads records from CSV with the columns {@code name,type,value[,ttl]}, e.g.
+ * {@code www.example.org,A,1.2.3.4,3600}. Fields with commas or quotes are quoted with {@code "}, and a quote inside
+ * is doubled. An optional header line starting with {@code name,} is skipped, as are blank lines and lines starting
+ * with {@code #}.
+ */
+public final class CsvRecordReader implements RecordReader {
+
+    private final BufferedReader input;
+    private final int defaultTtl;
+    private int lineNumber;
+
+    public CsvRecordReader(BufferedReader input, int defaultTtl) {
+        this.input = input;
+        this.defaultTtl = defaultTtl;
+    }
+
+    @Override
+    public ParsedRecord next() throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")
+                    || (lineNumber == 1 && trimmed.toLowerCase(Locale.ROOT).startsWith("name,"))) {
+                continue;
+            }
+            List<String> fields = split(lineNumber, line);
+            if (fields.size() < 3 || fields.size() > 4) {
+                throw new IllegalArgumentException("Line %d: expected name,type,value[,ttl], got %d fields".formatted(lineNumber, fields.size()));
+            }
+            int ttl = defaultTtl;
+            if (fields.size() == 4 && !fields.get(3).isBlank()) {
+                try {
+                    ttl = Integer.parseInt(fields.get(3).strip());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Line %d: invalid ttl %s".formatted(lineNumber, fields.get(3)), e);
+                }
+            }
+            String name = DomainNames.normalize(fields.get(0).strip());
+            String type = fields.get(1).strip().toUpperCase(Locale.ROOT);
+            String value = fields.get(2);
+            if ("TXT".equals(type)) {
+                value = DomainNames.unquote(value);
+            }
+            return new ParsedRecord(lineNumber,
+                    name,
+                    type,
+                    value,
+                    ttl);
+        }
+        return null;
+    }
+
+    static List<String> split(int lineNumber, String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("Line %d: unterminated quote".formatted(lineNumber));
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,10 @@
+package cloud.marton.hostup_dns_client.zonefile;
+
+/**
+ * A record read from an import file, in the form the API expects: absolute names without trailing dot, and TXT
+ * values without quotes
+ *
+ * @param line the line of the import file the record starts on
+ */
+public record ParsedRecord(int line, String name, String type, String value, int ttl) {
+}
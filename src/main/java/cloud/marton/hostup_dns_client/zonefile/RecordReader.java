@@ -0,0 +1,15 @@
+package cloud.marton.hostup_dns_client.zonefile;
+
+import java.io.IOException;
+
+/**
+ * Reads the records of an import file one at a time
+ */
+public interface RecordReader {
+
+    /**
+     * @return the next record, or {@code null} at the end of the file
+     * @throws IllegalArgumentException if the next record is malformed. The reader continues after it.
+     */
+    ParsedRecord next() throws IOException;
+}
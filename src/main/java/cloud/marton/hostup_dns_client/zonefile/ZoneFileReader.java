@@ -0,0 +1,239 @@
+package cloud.marton.hostup_dns_client.zonefile;
+
+import cloud.marton.hostup_dns_client.dns.DomainNames;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads RFC 1035 master files, e.g. exported by another DNS provider.
+ * <p>
+ * Supports {@code $ORIGIN} and {@code $TTL}, comments, records spanning lines in parentheses, omitted owner, TTL
+ * and class, {@code @} and relative names. {@code $INCLUDE} is not supported.
+ */
+public final class ZoneFileReader implements RecordReader {
+
+    private static final Set<String> CLASSES = Set.of("IN", "CH", "HS", "CS");
+    private static final Set<String> HOSTNAME_TYPES = Set.of("CNAME", "NS", "PTR", "MX", "SRV", "ALIAS", "DNAME");
+    private static final Pattern TTL = Pattern.compile("(\\d+)([smhdw]?)", Pattern.CASE_INSENSITIVE);
+
+    private final BufferedReader input;
+    private String origin;
+    private int defaultTtl;
+    private String previousOwner;
+    private int lineNumber;
+
+    /**
+     * @param origin the zone, used for relative names until a {@code $ORIGIN} directive
+     * @param defaultTtl used for records without TTL until a {@code $TTL} directive
+     */
+    public ZoneFileReader(BufferedReader input, String origin, int defaultTtl) {
+        this.input = input;
+        this.origin = DomainNames.normalize(origin);
+        this.defaultTtl = defaultTtl;
+    }
+
+    @Override
+    public ParsedRecord next() throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            int firstLine = lineNumber;
+            boolean ownerOmitted = !line.isEmpty() && Character.isWhitespace(line.charAt(0));
+            List<String> tokens = new ArrayList<>();
+            int openParentheses = tokenize(line, tokens, 0);
+            while (openParentheses > 0) {
+                String continuation = input.readLine();
+                if (continuation == null) {
+                    throw new IllegalArgumentException("Line %d: unbalanced parentheses".formatted(firstLine));
+                }
+                lineNumber++;
+                openParentheses = tokenize(continuation, tokens, openParentheses);
+            }
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            String first = tokens.getFirst();
+            if (!ownerOmitted && first.startsWith("$")) {
+                directive(firstLine, first.toUpperCase(Locale.ROOT), tokens);
+                continue;
+            }
+            return record(firstLine, ownerOmitted, tokens);
+        }
+        return null;
+    }
+
+    private void directive(int line, String directive, List<String> tokens) {
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("Line %d: missing value for %s".formatted(line, directive));
+        }
+        switch (directive) {
+            case "$ORIGIN" -> origin = absoluteName(line, tokens.get(1));
+            case "$TTL" -> defaultTtl = parseTtl(tokens.get(1))
+                    .orElseThrow(() -> new IllegalArgumentException("Line %d: invalid $TTL %s".formatted(line, tokens.get(1))));
+            default -> throw new IllegalArgumentException("Line %d: unsupported directive %s".formatted(line, directive));
+        }
+    }
+
+    private ParsedRecord record(int line, boolean ownerOmitted, List<String> tokens) {
+        int index = 0;
+        String owner;
+        if (ownerOmitted) {
+            if (previousOwner == null) {
+                throw new IllegalArgumentException("Line %d: missing owner name".formatted(line));
+            }
+            owner = previousOwner;
+        } else {
+            owner = absoluteName(line, tokens.get(index++));
+        }
+        previousOwner = owner;
+
+        int ttl = defaultTtl;
+        // TTL and class may be omitted and come in either order
+        for (int i = 0; i < 2 && index < tokens.size(); i++) {
+            String token = tokens.get(index);
+            OptionalInt parsedTtl = parseTtl(token);
+            if (parsedTtl.isPresent()) {
+                ttl = parsedTtl.getAsInt();
+                index++;
+            } else if (CLASSES.contains(token.toUpperCase(Locale.ROOT))) {
+                index++;
+            }
+        }
+        if (index >= tokens.size()) {
+            throw new IllegalArgumentException("Line %d: missing record type".formatted(line));
+        }
+        String type = tokens.get(index++).toUpperCase(Locale.ROOT);
+        List<String> rdata = tokens.subList(index, tokens.size());
+        if (rdata.isEmpty()) {
+            throw new IllegalArgumentException("Line %d: missing data for %s record".formatted(line, type));
+        }
+        return new ParsedRecord(line, owner, type, value(line, type, rdata), ttl);
+    }
+
+    private String value(int line, String type, List<String> rdata) {
+        if ("TXT".equals(type) || "SPF".equals(type)) {
+            StringBuilder value = new StringBuilder();
+            for (String token : rdata) {
+                value.append(token.startsWith("\"") ? unquote(token) : token);
+            }
+            return value.toString();
+        }
+        if (HOSTNAME_TYPES.contains(type)) {
+            List<String> parts = new ArrayList<>(rdata);
+            parts.set(parts.size() - 1, absoluteName(line, parts.getLast()));
+            return String.join(" ", parts);
+        }
+        return String.join(" ", rdata);
+    }
+
+    /**
+     * @return the name relative to the current origin, lowercased and without trailing dot
+     */
+    private String absoluteName(int line, String name) {
+        if ("@".equals(name)) {
+            return requireOrigin(line);
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        if (lowerCase.endsWith(".")) {
+            return DomainNames.stripTrailingDot(lowerCase);
+        }
+        return lowerCase + "." + requireOrigin(line);
+    }
+
+    private String requireOrigin(int line) {
+        if (origin.isEmpty()) {
+            throw new IllegalArgumentException("Line %d: relative name without $ORIGIN".formatted(line));
+        }
+        return origin;
+    }
+
+    /**
+     * Splits on whitespace outside double quotes and drops comments and parentheses
+     *
+     * @return the number of parentheses still open at the end of the line
+     */
+    private static int tokenize(String line, List<String> tokens, int openParentheses) {
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                current.append(c);
+                if (c == '\\' && i + 1 < line.length()) {
+                    current.append(line.charAt(++i));
+                } else if (c == '"') {
+                    inQuotes = false;
+                }
+            } else if (c == ';') {
+                break;
+            } else if (c == '"') {
+                inQuotes = true;
+                current.append(c);
+            } else if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+                if (!current.isEmpty()) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+                openParentheses += c == '(' ? 1 : c == ')' ? -1 : 0;
+            } else {
+                current.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("Unterminated quote in: " + line);
+        }
+        if (!current.isEmpty()) {
+            tokens.add(current.toString());
+        }
+        return openParentheses;
+    }
+
+    private static String unquote(String token) {
+        String inner = token.substring(1, token.endsWith("\"") && token.length() > 1 ? token.length() - 1 : token.length());
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < inner.length(); i++) {
+            char c = inner.charAt(i);
+            if (c == '\\' && i + 1 < inner.length()) {
+                value.append(inner.charAt(++i));
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * @return seconds for e.g. {@code 3600}, {@code 1h} or {@code 1h30m}, or empty if the token is not a TTL
+     */
+    static OptionalInt parseTtl(String token) {
+        Matcher matcher = TTL.matcher(token);
+        long seconds = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            long unit = switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+                case "m" -> 60;
+                case "h" -> 3600;
+                case "d" -> 86400;
+                case "w" -> 604800;
+                default -> 1;
+            };
+            if (matcher.group(1).length() > 10) {
+                return OptionalInt.empty();
+            }
+            seconds += Long.parseLong(matcher.group(1)) * unit;
+            end = matcher.end();
+        }
+        if (end == 0 || end != token.length() || seconds > Integer.MAX_VALUE) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of((int) seconds);
+    }
+}
@@ -0,0 +1,152 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountRouterTest {
+
+    private static WireMockServer wireMockServer;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() {
+        wireMockServer.resetAll();
+        stubZones("key-1", zone(10000, "example.org"));
+        stubZones("key-2", zone(20000, "example.com") + "," + zone(20001, "sub.example.org"));
+    }
+
+    @Test
+    void routesToAccountWithLongestMatchingZone() throws Exception {
+        AccountRouter router = router(ZoneCache.disabled(), ZoneCache.disabled());
+
+        AccountRouter.Route route = router.route("_acme-challenge.www.example.com.").orElseThrow();
+        assertEquals("key-2", route.account().apiKey());
+        assertEquals(20000, route.zoneId());
+        assertEquals("example.com", route.zone());
+        assertEquals(20001, router.route("www.Sub.Example.org").orElseThrow().zoneId());
+        assertEquals("key-1", router.route("www.example.org").orElseThrow().account().apiKey());
+        assertTrue(router.route("example.net").isEmpty());
+
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")).withHeader("X-API-Key", equalTo("key-1")));
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")).withHeader("X-API-Key", equalTo("key-2")));
+    }
+
+    @Test
+    void findsAccountOfZoneId() throws Exception {
+        AccountRouter router = router(ZoneCache.disabled(), ZoneCache.disabled());
+
+        assertEquals("key-1", router.account(10000).orElseThrow().apiKey());
+        assertEquals("key-2", router.account(20001).orElseThrow().apiKey());
+        assertTrue(router.account(99999).isEmpty());
+    }
+
+    @Test
+    void usesZoneCachesAndRefetchesUnknownNames() throws Exception {
+        ZoneCache first = zoneCache("first");
+        ZoneCache second = zoneCache("second");
+        first.write(Map.of("example.org", 10000));
+        second.write(Map.of("example.com", 20000));
+        AccountRouter router = router(first, second);
+
+        assertEquals(20000, router.route("www.example.com").orElseThrow().zoneId());
+        wireMockServer.verify(0, getRequestedFor(urlPathEqualTo("/dns/zones")));
+
+        assertEquals("key-2", router.route("www.sub.example.org").orElseThrow().account().apiKey());
+        wireMockServer.verify(2, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        assertEquals(Map.of("example.com", 20000, "sub.example.org", 20001), second.read().orElseThrow());
+    }
+
+    @Test
+    void accountWithFailingZoneListIsReported() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .withHeader("X-API-Key", equalTo("key-1"))
+                .willReturn(aResponse()
+                        .withStatus(401)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                                {
+                                  "error": "Unauthorized",
+                                  "message": "Invalid API key",
+                                  "code": "UNAUTHORIZED",
+                                  "timestamp": "2025-12-28T19:49:08.139Z",
+                                  "requestId": "mocked-request-id"
+                                }
+                                """)));
+        AccountRouter router = router(ZoneCache.disabled(), ZoneCache.disabled());
+
+        assertEquals(20000, router.route("example.com").orElseThrow().zoneId());
+        assertTrue(router.route("example.org").isEmpty());
+        assertEquals(1, router.failures().size());
+        assertEquals(401, router.failures().getFirst().apiResponse().httpStatus());
+    }
+
+    @Test
+    void accountWithoutResponseDoesNotStopRouting() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .withHeader("X-API-Key", equalTo("key-1"))
+                .willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        AccountRouter router = router(ZoneCache.disabled(), ZoneCache.disabled());
+
+        assertEquals("key-2", router.route("www.example.com").orElseThrow().account().apiKey());
+        assertEquals(1, router.failures().size());
+        AccountRouter.Failure failure = router.failures().getFirst();
+        assertEquals("key-1", failure.account().apiKey());
+        assertNull(failure.apiResponse());
+        assertNotNull(failure.error());
+    }
+
+    private AccountRouter router(ZoneCache first, ZoneCache second) {
+        return new AccountRouter(List.of(account("key-1", first), account("key-2", second)));
+    }
+
+    private static AccountRouter.Account account(String apiKey, ZoneCache zoneCache) {
+        return new AccountRouter.Account(apiKey, new HostupApiClient(apiKey, URI.create(wireMockServer.baseUrl() + "/"), 2, 10L), zoneCache);
+    }
+
+    private ZoneCache zoneCache(String name) {
+        return new ZoneCache(tempDir.resolve(name + ".properties"), Duration.ofMinutes(5), Clock.systemUTC());
+    }
+
+    private static String zone(int zoneId, String domain) {
+        return "{\"server_id\":\"20\",\"account_id\":\"%d\",\"domain_id\":\"%d\",\"domain\":\"%s\"}"
+                .formatted(zoneId / 10000, zoneId, domain);
+    }
+
+    private static void stubZones(String apiKey, String zones) {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .withHeader("X-API-Key", equalTo(apiKey))
+                .willReturn(okJson("{\"success\":true,\"requestId\":\"mocked-request-id\",\"data\":{\"zones\":[" + zones + "]}}")));
+    }
+}
@@ -0,0 +1,137 @@
+package cloud.marton.hostup_dns_client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+
+    private static final Path RESPONSES_DIR = Path.of("src", "test", "resources", "hostupApiResponses");
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .willReturn(okJson(Files.readString(RESPONSES_DIR.resolve("listZones.json"), StandardCharsets.UTF_8))));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(Files.readString(RESPONSES_DIR.resolve("getDnsRecords.json"), StandardCharsets.UTF_8))));
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson("""
+                        {
+                          "success": true,
+                          "requestId": "mocked-request-id",
+                          "data": {
+                            "record": {"id": 30000000, "type": "TXT", "name": "foo.marton.cloud", "value": "\\"some text\\"", "ttl": 300, "status": "pending"}
+                          }
+                        }
+                        """)));
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/20000"))
+                .willReturn(okJson("""
+                        {"success": true, "requestId": "mocked-request-id", "data": {"message": "DNS record deleted successfully"}}
+                        """)));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @Test
+    void runsEveryOperationAndPrintsOneLineEach() throws Exception {
+        String batch = """
+                # comment
+                add 10000 TXT foo.marton.cloud "some text" 300
+                delete 10000 20000
+                
+                list 10000
+                list-zones
+                {"op":"add","zoneId":10000,"type":"TXT","domain":"foo.marton.cloud","value":"some text","ttl":300}
+                """;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int failures = new BatchRunner(client, 2).run(new BufferedReader(new StringReader(batch)), new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertEquals(0, failures);
+        List<String> lines = Arrays.stream(output.toString(StandardCharsets.UTF_8).split("\n")).sorted().toList();
+        assertEquals(List.of(
+                "2\tadd\tOK\t200\trecordId=30000000",
+                "3\tdelete\tOK\t200\tDNS record deleted successfully",
+                "5\tlist\tOK\t200\trecords=3",
+                "6\tlist-zones\tOK\t200\tzones=2",
+                "7\tadd\tOK\t200\trecordId=30000000"), lines);
+        wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records"))
+                .withRequestBody(matchingJsonPath("$.value", equalTo("some text"))));
+    }
+
+    @Test
+    void slowFailureIsCountedBeforeRunReturns() throws Exception {
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/20001"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withHeader("Content-Type", "application/json")
+                        .withFixedDelay(300)
+                        .withBody("""
+                                {"error":"Not Found","message":"DNS record not found","code":"NOT_FOUND","timestamp":"2026-01-03T20:27:22.879Z","requestId":"mocked-request-id"}
+                                """)));
+        String batch = """
+                delete 10000 20001
+                list 10000
+                """;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int failures = new BatchRunner(client, 2).run(new BufferedReader(new StringReader(batch)), new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertEquals(1, failures);
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().sorted().toList();
+        assertEquals(2, lines.size(), () -> "every result is printed before run returns: " + lines);
+        assertTrue(lines.getFirst().startsWith("1\tdelete\tFAILED\t404\t"), lines::getFirst);
+    }
+
+    @Test
+    void invalidLinesAreReportedAsFailures() throws Exception {
+        String batch = """
+                add 10000 TXT foo.marton.cloud
+                remove 10000 20000
+                delete 10000 not-a-number
+                {"op":"delete","zoneId":10000}
+                """;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int failures = new BatchRunner(client, 2).run(new BufferedReader(new StringReader(batch)), new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertEquals(4, failures);
+        assertTrue(output.toString(StandardCharsets.UTF_8).lines().allMatch(line -> line.contains("\tparse\tFAILED\t")));
+    }
+
+    @Test
+    void splitHonorsQuotes() {
+        assertEquals(List.of("add", "1", "TXT", "a.b", "x \"y\" z", "300"),
+                BatchRunner.split("add 1  TXT a.b \"x \\\"y\\\" z\" 300"));
+        assertEquals(List.of("list", ""), BatchRunner.split("list \"\""));
+        assertThrows(IllegalArgumentException.class, () -> BatchRunner.split("add \"unterminated"));
+    }
+}
@@ -10,6 +10,9 @@ import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -194,6 +197,37 @@ class CliParserTest {
         assertNull(opts.legoArgs());
     }
 
+    @Test
+    void severalApiKeys() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "env-key-1, env-key-2"));
+        CliOptions opts = p.parseArgs(new String[]{"present", "_acme-challenge.my.example.org.", "value"});
+        assertEquals("env-key-1", opts.apiKey());
+        assertEquals(List.of("env-key-1", "env-key-2"), opts.apiKeys());
+
+        opts = p.parseArgs(new String[]{"-k", "cli-key-1", "--api-key", "cli-key-2", "-l"});
+        assertEquals("cli-key-1", opts.apiKey());
+        assertEquals(List.of("cli-key-1", "cli-key-2"), opts.apiKeys());
+    }
+
+    @Test
+    void outputAndFields() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"-r", "10000", "--output", "ndjson", "--fields", "id,name"});
+        assertEquals(CliParser.OutputFormat.NDJSON, opts.output());
+        assertEquals(List.of("id", "name"), opts.fields());
+
+        opts = p.parseArgs(new String[]{"-r", "10000", "--output", "TSV"});
+        assertEquals(CliParser.OutputFormat.TSV, opts.output());
+        assertEquals(List.of("id", "type", "name", "value", "ttl"), opts.fields());
+        assertEquals(List.of("id", "name"), p.parseArgs(new String[]{"-l", "--output", "tsv"}).fields());
+        assertEquals(CliParser.OutputFormat.JSON, p.parseArgs(new String[]{"-l"}).output());
+
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-l", "--output", "tsv", "--fields", "id,type"}));
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-r", "10000", "--fields", "id"}));
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-r", "10000", "--output", "xml"}));
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"--export-zone", "all", "--output", "ndjson"}));
+    }
+
     @Test
     void missingApiKeyFailsWhenNotHelpOrVersion() {
         CliParser p = parser(Map.of());
@@ -274,6 +308,126 @@ class CliParserTest {
         assertDoesNotThrow(() -> p.parseArgs(new String[]{flag}));
     }
 
+    @Test
+    void batchWithParallelism() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"--batch", "-", "--parallelism", "32"});
+        assertEquals("-", opts.batch());
+        assertEquals(32, opts.parallelism());
+        assertEquals(CliParser.DEFAULT_PARALLELISM, p.parseArgs(new String[]{"--batch", "ops.txt"}).parallelism());
+    }
+
+    @Test
+    void exportZone() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"--export-zone", "10000", "--output-file", "marton.cloud.zone"});
+        assertEquals("10000", opts.exportZone());
+        assertEquals("marton.cloud.zone", opts.outputFile());
+        assertEquals("all", p.parseArgs(new String[]{"--export-zone", "all"}).exportZone());
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"--export-zone", "marton.cloud"}));
+    }
+
+    @Test
+    void importIntoZone() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"--import", "marton.cloud.zone", "--zone", "10000"});
+        assertEquals("marton.cloud.zone", opts.importFile());
+        assertEquals(10000, opts.zone());
+        CliParserException e = assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"--import", "marton.cloud.zone"}));
+        assertEquals("--import requires --zone", e.getMessage());
+    }
+
+    @Test
+    void metricsFile() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        assertEquals("metrics.prom", p.parseArgs(new String[]{"--list-zones", "--metrics-file", "metrics.prom"}).metricsFile());
+        assertNull(p.parseArgs(new String[]{"--list-zones"}).metricsFile());
+    }
+
+    @Test
+    void waitPropagation() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k", "HOSTUP_DNS_CLIENT_WAIT_PROPAGATION", "120"));
+        CliOptions lego = p.parseArgs(new String[]{"present", "_acme-challenge.my.example.org.", "value"});
+        assertEquals(Duration.ofSeconds(120), lego.waitPropagation());
+        assertNull(lego.resolver());
+        CliOptions opts = p.parseArgs(new String[]{"--wait-propagation", "30", "--resolver", "127.0.0.1:5353"});
+        assertEquals(Duration.ofSeconds(30), opts.waitPropagation());
+        assertEquals("127.0.0.1:5353", opts.resolver());
+        assertEquals(Duration.ZERO, parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k")).parseArgs(new String[]{"-l"}).waitPropagation());
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"--wait-propagation", "-1"}));
+    }
+
+    @Test
+    void applyWithDryRun() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"--apply", "zones.json", "--dry-run"});
+        assertEquals("zones.json", opts.apply());
+        assertTrue(opts.dryRun());
+        assertFalse(p.parseArgs(new String[]{"--apply", "zones.json"}).dryRun());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-1"})
+    void parallelismMustBePositive(String parallelism) {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliParserException ex = assertThrows(CliParserException.class,
+                () -> p.parseArgs(new String[]{"--batch", "-", "--parallelism", parallelism}));
+        assertTrue(ex.getMessage().contains("at least 1"));
+    }
+
+    @Test
+    void rateLimit() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        assertEquals(CliParser.DEFAULT_RATE_LIMIT, p.parseArgs(new String[]{"-l"}).rateLimit());
+        assertEquals(3, p.parseArgs(new String[]{"-l", "--rate-limit", "3"}).rateLimit());
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-l", "--rate-limit", "0"}));
+    }
+
+    @Test
+    void maxInFlight() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        assertEquals(HostupApiClient.DEFAULT_MAX_IN_FLIGHT, p.parseArgs(new String[]{"-l"}).maxInFlight());
+        assertEquals(64, p.parseArgs(new String[]{"-l", "--max-in-flight", "64"}).maxInFlight());
+        assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-l", "--max-in-flight", "0"}));
+    }
+
+    @Test
+    void hedge() throws Exception {
+        assertFalse(parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k")).parseArgs(new String[]{"-l"}).hedge());
+        assertTrue(parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k")).parseArgs(new String[]{"-l", "--hedge"}).hedge());
+        assertTrue(parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k", "HOSTUP_DNS_CLIENT_HEDGE", "true"))
+                .parseArgs(new String[]{"present", "_acme-challenge.example.", "token"}).hedge());
+    }
+
+    @Test
+    void zoneCacheDefaults() throws Exception {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k"));
+        CliOptions opts = p.parseArgs(new String[]{"present", "_acme-challenge.example.", "token"});
+        assertEquals(Duration.ofSeconds(CliParser.DEFAULT_ZONE_CACHE_TTL_SECONDS), opts.zoneCacheTtl());
+        assertEquals(Duration.ofSeconds(CliParser.DEFAULT_RECORD_CACHE_TTL_SECONDS), opts.recordCacheTtl());
+        assertEquals(Path.of(System.getProperty("java.io.tmpdir"), "hostup-dns-client"), opts.cacheDir());
+    }
+
+    @Test
+    void zoneCacheFromEnv() throws Exception {
+        CliParser p = parser(Map.of(
+                "HOSTUP_DNS_CLIENT_API_KEY", "k",
+                "HOSTUP_DNS_CLIENT_CACHE_DIR", "/var/cache/hostup",
+                "HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL", "0",
+                "HOSTUP_DNS_CLIENT_RECORD_CACHE_TTL", "60"));
+        CliOptions opts = p.parseArgs(new String[]{"present", "_acme-challenge.example.", "token"});
+        assertEquals(Duration.ZERO, opts.zoneCacheTtl());
+        assertEquals(Duration.ofSeconds(60), opts.recordCacheTtl());
+        assertEquals(Path.of("/var/cache/hostup"), opts.cacheDir());
+    }
+
+    @Test
+    void invalidZoneCacheTtlFails() {
+        CliParser p = parser(Map.of("HOSTUP_DNS_CLIENT_API_KEY", "k", "HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL", "soon"));
+        CliParserException ex = assertThrows(CliParserException.class, () -> p.parseArgs(new String[]{"-l"}));
+        assertTrue(ex.getMessage().contains("HOSTUP_DNS_CLIENT_ZONE_CACHE_TTL"));
+    }
+
     @Test
     void usageNotEmpty() {
         assertFalse(CliParser.getUsage().isBlank());
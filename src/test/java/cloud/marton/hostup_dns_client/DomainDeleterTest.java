@@ -0,0 +1,115 @@
+package cloud.marton.hostup_dns_client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainDeleterTest {
+
+    private static final Path RESPONSES_DIR = Path.of("src", "test", "resources", "hostupApiResponses");
+    private static final String DELETED_BODY = """
+            {"success": true, "requestId": "mocked-request-id", "data": {"message": "DNS record deleted successfully"}}
+            """;
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() throws IOException {
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .willReturn(okJson(Files.readString(RESPONSES_DIR.resolve("listZones.json"), StandardCharsets.UTF_8))));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson("""
+                        {
+                          "success": true,
+                          "requestId": "mocked-request-id",
+                          "data": {
+                            "zone": {
+                              "id": 10000,
+                              "domain": "marton.cloud",
+                              "records": [
+                                {"id": 1, "type": "A", "name": "foo.marton.cloud", "value": "192.168.0.1", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 2, "type": "TXT", "name": "FOO.marton.cloud", "value": "\\"a\\"", "ttl": 300, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 3, "type": "TXT", "name": "foo.marton.cloud", "value": "\\"b\\"", "ttl": 300, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 4, "type": "A", "name": "bar.foo.marton.cloud", "value": "192.168.0.2", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"}
+                              ]
+                            }
+                          }
+                        }
+                        """)));
+        wireMockServer.stubFor(delete(urlPathMatching("/dns/zones/10000/records/\\d+"))
+                .willReturn(okJson(DELETED_BODY)));
+    }
+
+    @Test
+    void deletesAllRecordsWithMatchingName() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        DomainDeleter.Result result = new DomainDeleter(client, 2)
+                .deleteDomain("foo.marton.cloud.", new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertTrue(result.success(), result.message());
+        assertEquals(3, output.toString(StandardCharsets.UTF_8).lines().filter(l -> l.contains("\tOK\t200")).count());
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(3, deleteRequestedFor(urlPathMatching("/dns/zones/10000/records/[123]")));
+        wireMockServer.verify(0, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/4")));
+    }
+
+    @Test
+    void rateLimitedDeleteIsRetried() throws Exception {
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/2"))
+                .inScenario("Rate limited delete")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429))
+                .willSetStateTo("Retry"));
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/2"))
+                .inScenario("Rate limited delete")
+                .whenScenarioStateIs("Retry")
+                .willReturn(okJson(DELETED_BODY)));
+
+        DomainDeleter.Result result = new DomainDeleter(client, 3)
+                .deleteDomain("foo.marton.cloud", new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        assertTrue(result.success(), result.message());
+        wireMockServer.verify(2, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/2")));
+    }
+
+    @Test
+    void unknownDomainFails() throws Exception {
+        DomainDeleter.Result result = new DomainDeleter(client, 2)
+                .deleteDomain("foo.unknown.org", new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        assertFalse(result.success());
+        wireMockServer.verify(0, getRequestedFor(urlPathMatching("/dns/zones/.*/records")));
+    }
+}
@@ -1,15 +1,29 @@
 package cloud.marton.hostup_dns_client;
 
+import cloud.marton.hostup_dns_client.exceptions.CircuitOpenException;
 import cloud.marton.hostup_dns_client.exceptions.JsonMappingException;
 import cloud.marton.hostup_dns_client.exceptions.RateLimitException;
+import cloud.marton.hostup_dns_client.jfr.ApiRequestEvent;
+import cloud.marton.hostup_dns_client.jfr.JsonDecodeEvent;
+import cloud.marton.hostup_dns_client.metrics.ClientMetrics;
+import cloud.marton.hostup_dns_client.metrics.Endpoint;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
 import cloud.marton.hostup_dns_client.model.DeleteDnsRecordResponse;
 import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
 import cloud.marton.hostup_dns_client.model.SetRecordResponse;
 import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import cloud.marton.hostup_dns_client.ratelimit.TokenBucket;
+import cloud.marton.hostup_dns_client.retry.CircuitBreaker;
+import cloud.marton.hostup_dns_client.retry.Hedging;
+import cloud.marton.hostup_dns_client.retry.RetryPolicy;
+import cloud.marton.hostup_dns_client.retry.StandardRetryPolicy;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -20,11 +34,18 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 class HostupApiClientTest {
 
@@ -62,6 +83,17 @@ class HostupApiClientTest {
         assertEquals("mock-domain.com", zones.data().zones().get(1).domain(), "First domain should match fixture");
     }
 
+    @Test
+    void streamZones() throws Exception {
+        stubGetZones();
+        List<String> domains = new ArrayList<>();
+
+        ApiResponse apiResponse = client.streamZonesAsync(zone -> domains.add(zone.domain())).get();
+
+        assertTrue(apiResponse.success());
+        assertEquals(List.of("marton.cloud", "mock-domain.com"), domains);
+    }
+
     @Test
     void getDnsRecords() throws RateLimitException, JsonMappingException, IOException, InterruptedException {
         stubGetDnsRecords();
@@ -103,6 +135,284 @@ class HostupApiClientTest {
         client.getDnsRecords(10002);
     }
 
+    @Test
+    void getZonesAsync() throws Exception {
+        stubGetZones();
+
+        ZonesResponse zones = (ZonesResponse) client.getZonesAsync().get().parsedResponse();
+        assertEquals("marton.cloud", zones.data().zones().getFirst().domain(), "First domain should match fixture");
+    }
+
+    @Test
+    void concurrentAsyncRequests() throws Exception {
+        stubGetDnsRecords();
+
+        List<CompletableFuture<ApiResponse>> futures = IntStream.range(0, 20)
+                .mapToObj(i -> client.getDnsRecordsAsync(10000))
+                .toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        for (CompletableFuture<ApiResponse> future : futures) {
+            assertTrue(future.get().success());
+        }
+    }
+
+    @Test
+    void requestsRunOnSuppliedExecutorWithOneInFlight() throws Exception {
+        AtomicInteger tasks = new AtomicInteger();
+        Executor executor = task -> {
+            tasks.incrementAndGet();
+            HostupApiClient.defaultExecutor().execute(task);
+        };
+        HostupApiClient cappedClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .retryPolicy(RetryPolicy.standard(2, 10L))
+                .executor(executor)
+                .maxInFlight(1)
+                .build();
+        String body = readFixture("getDnsRecords.json");
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10006/records"))
+                .inScenario("In flight")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429))
+                .willSetStateTo("Retry"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10006/records"))
+                .inScenario("In flight")
+                .whenScenarioStateIs("Retry")
+                .willReturn(okJson(body)));
+
+        // The retry of the HTTP 429 needs the only permit, so it must have been released before
+        List<CompletableFuture<ApiResponse>> futures = IntStream.range(0, 10)
+                .mapToObj(i -> cappedClient.getDnsRecordsAsync(10006))
+                .toList();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get());
+        for (CompletableFuture<ApiResponse> future : futures) {
+            assertTrue(future.get().success());
+        }
+        assertTrue(tasks.get() > 0, "the HTTP client must run on the supplied executor");
+    }
+
+    @Test
+    void transientFailureOfGetIsRetried() throws Exception {
+        HostupApiClient retryingClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .retryPolicy(StandardRetryPolicy.of(2, 10L).withTransientRetries(2, Duration.ofMillis(10)))
+                .build();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10007/records"))
+                .inScenario("Transient")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503).withBody("<html>Service Unavailable</html>"))
+                .willSetStateTo("Retry"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10007/records"))
+                .inScenario("Transient")
+                .whenScenarioStateIs("Retry")
+                .willReturn(okJson(readFixture("getDnsRecords.json"))));
+
+        ApiResponse response = retryingClient.getDnsRecords(10007);
+
+        assertTrue(response.success());
+        assertEquals(1, retryingClient.metrics().responses(Endpoint.LIST_RECORDS, 503));
+        assertEquals(1, retryingClient.metrics().retries(Endpoint.LIST_RECORDS));
+    }
+
+    @Test
+    void postIsNotRetriedAfterServerError() throws Exception {
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10008/records"))
+                .willReturn(aResponse()
+                        .withStatus(503)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                                {"error":"Service Unavailable","message":"Try again later","code":"UNAVAILABLE","timestamp":"2026-01-03T20:27:22.879Z","requestId":"mocked-request-id"}
+                                """)));
+
+        ApiResponse response = client.setDnsRecord(10008, "foo.marton.cloud", "test-value");
+
+        assertFalse(response.success());
+        assertEquals(503, response.httpStatus());
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/10008/records")));
+    }
+
+    @Test
+    void slowGetIsHedged() throws Exception {
+        HostupApiClient hedgingClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .hedging(new Hedging(true, 0.95, Duration.ofMillis(100), Duration.ofMillis(100)))
+                .build();
+        String body = readFixture("getDnsRecords.json");
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10009/records"))
+                .inScenario("Hedge")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(okJson(body).withFixedDelay(20_000))
+                .willSetStateTo("Hedged"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10009/records"))
+                .inScenario("Hedge")
+                .whenScenarioStateIs("Hedged")
+                .willReturn(okJson(body)));
+
+        ApiResponse response = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> hedgingClient.getDnsRecords(10009));
+
+        assertTrue(response.success());
+        assertEquals(1, hedgingClient.metrics().hedges(Endpoint.LIST_RECORDS));
+        wireMockServer.verify(2, getRequestedFor(urlPathEqualTo("/dns/zones/10009/records")));
+    }
+
+    @Test
+    void openCircuitFailsFast() throws Exception {
+        HostupApiClient breakingClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .circuitBreaker(new CircuitBreaker(4, 2, 0.5, Duration.ofSeconds(10), 1, Duration.ofMinutes(1)))
+                .build();
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10010/records"))
+                .willReturn(aResponse().withStatus(502).withBody("<html>Bad Gateway</html>")));
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(JsonMappingException.class, () -> breakingClient.setDnsRecord(10010, "foo.marton.cloud", "test-value"));
+        }
+        CircuitOpenException exception = assertThrows(CircuitOpenException.class,
+                () -> breakingClient.setDnsRecord(10010, "foo.marton.cloud", "test-value"));
+
+        assertTrue(exception.getRetryAfter().isPositive());
+        wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/dns/zones/10010/records")));
+        assertEquals(1, breakingClient.metrics().rejections(Endpoint.SET_RECORD));
+        assertEquals("open", breakingClient.metrics().circuitState());
+    }
+
+    @Test
+    void requestsWaitingForAPermitDoNotUseUpTokens() throws Exception {
+        HostupApiClient oneAtATimeClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .rateLimiter(new TokenBucket(5, 1))
+                .maxInFlight(1)
+                .build();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10011/records"))
+                .willReturn(okJson(readFixture("getDnsRecords.json")).withFixedDelay(500)));
+
+        List<CompletableFuture<ApiResponse>> responses = IntStream.range(0, 3)
+                .mapToObj(i -> oneAtATimeClient.getDnsRecordsAsync(10011))
+                .toList();
+
+        for (CompletableFuture<ApiResponse> response : responses) {
+            assertTrue(response.get().success());
+        }
+        // Each request takes its token after the previous response, when the bucket has refilled
+        assertEquals(0, oneAtATimeClient.metrics().pacedNanos(Endpoint.LIST_RECORDS));
+    }
+
+    @Test
+    void rateLimitHeadersDoNotLimitAnUnlimitedClient() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10012/records"))
+                .willReturn(okJson(readFixture("getDnsRecords.json"))
+                        .withHeader("X-RateLimit-Remaining", "1")
+                        .withHeader("X-RateLimit-Reset", "60")));
+
+        HostupApiClient unlimitedClient = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(assertTimeoutPreemptively(Duration.ofSeconds(5), () -> unlimitedClient.getDnsRecords(10012)).success());
+        }
+        assertEquals(0, unlimitedClient.metrics().pacedNanos(Endpoint.LIST_RECORDS));
+    }
+
+    @Test
+    void getDnsRecordsAsyncRateLimitReached() {
+        stubGetDnsRecordsRateLimitReached();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> client.getDnsRecordsAsync(10001).get());
+        assertInstanceOf(RateLimitException.class, exception.getCause());
+    }
+
+    @Test
+    void rateLimitRetryHonorsRetryAfter() throws Exception {
+        HostupApiClient slowBackoffClient = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 600_000L);
+        String body = readFixture("getDnsRecords.json");
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10003/records"))
+                .inScenario("Retry-After")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429).withHeader("Retry-After", "1"))
+                .willSetStateTo("Retry"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10003/records"))
+                .inScenario("Retry-After")
+                .whenScenarioStateIs("Retry")
+                .willReturn(okJson(body)));
+
+        ApiResponse response = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> slowBackoffClient.getDnsRecords(10003));
+        assertTrue(response.success());
+    }
+
+    @Test
+    void metricsCountResponsesAndRetries() throws Exception {
+        HostupApiClient metricsClient = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+        String body = readFixture("getDnsRecords.json");
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10005/records"))
+                .inScenario("Metrics")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(429))
+                .willSetStateTo("Retry"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10005/records"))
+                .inScenario("Metrics")
+                .whenScenarioStateIs("Retry")
+                .willReturn(okJson(body)));
+
+        metricsClient.getDnsRecords(10005);
+
+        ClientMetrics metrics = metricsClient.metrics();
+        assertEquals(1, metrics.responses(Endpoint.LIST_RECORDS, 429));
+        assertEquals(1, metrics.responses(Endpoint.LIST_RECORDS, 200));
+        assertEquals(1, metrics.retries(Endpoint.LIST_RECORDS));
+        assertEquals(2, metrics.latency(Endpoint.LIST_RECORDS).count());
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, metrics.bytesReceived(Endpoint.LIST_RECORDS));
+        assertEquals(0, metrics.latency(Endpoint.ZONES).count());
+    }
+
+    @Test
+    void emitsFlightRecorderEvents() throws Exception {
+        stubGetDnsRecords();
+        Path recordingFile = Files.createTempFile("hostup-api-client", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ApiRequestEvent.class);
+            recording.enable(JsonDecodeEvent.class);
+            recording.start();
+            client.getDnsRecords(10000);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        Files.delete(recordingFile);
+        RecordedEvent request = events.stream()
+                .filter(event -> event.getEventType().getName().equals("cloud.marton.hostup_dns_client.ApiRequest"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("GET", request.getString("method"));
+        assertEquals("dns/zones/{zoneId}/records", request.getString("endpoint"));
+        assertEquals(200, request.getInt("statusCode"));
+        assertTrue(request.getLong("bytes") > 0);
+        assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("cloud.marton.hostup_dns_client.JsonDecode")
+                && event.getString("type").equals(DnsRecordsResponse.class.getName())));
+    }
+
+    @Test
+    void responseBodyIsDecodedAsUtf8() throws Exception {
+        String body = readFixture("getDnsRecords.json").replace("www.marton.cloud", "räksmörgås.marton.cloud");
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10004/records"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(body.getBytes(StandardCharsets.UTF_8))));
+
+        ApiResponse response = client.getDnsRecords(10004);
+        DnsRecordsResponse dnsRecords = (DnsRecordsResponse) response.parsedResponse();
+        assertEquals("räksmörgås.marton.cloud", dnsRecords.data().zone().records().getFirst().name());
+        assertEquals(body, response.body());
+    }
+
+    @Test
+    void setDnsRecordEscapesValue() throws Exception {
+        stubSetDnsRecord();
+
+        client.setDnsRecord(10000, "TXT", "foo.marton.cloud", "v=spf1 \"quoted\" back\\slash", 300);
+
+        wireMockServer.verify(postRequestedFor(urlPathEqualTo("/dns/zones/10000/records"))
+                .withHeader("Content-Type", equalTo("application/json; charset=UTF-8"))
+                .withRequestBody(equalToJson("""
+                        {"type":"TXT","name":"foo.marton.cloud","value":"v=spf1 \\"quoted\\" back\\\\slash","ttl":300}
+                        """)));
+    }
+
     private static void stubGetZones() throws IOException {
         String body = readFixture("listZones.json");
         wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
@@ -0,0 +1,249 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.RecordCache;
+import cloud.marton.hostup_dns_client.cache.RecordJournal;
+import cloud.marton.hostup_dns_client.cache.ZoneCache;
+import cloud.marton.hostup_dns_client.exceptions.LegoArgumentResult;
+import cloud.marton.hostup_dns_client.retry.RetryPolicy;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegoArgumentHandlerTest {
+
+    private static final Path RESPONSES_DIR = Path.of("src", "test", "resources", "hostupApiResponses");
+    private static final String CHALLENGE_DOMAIN = "_acme-challenge.foo.marton.cloud.";
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @TempDir
+    Path tempDir;
+    private ZoneCache zoneCache;
+    private RecordJournal recordJournal;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() throws IOException {
+        wireMockServer.resetAll();
+        zoneCache = new ZoneCache(tempDir.resolve("zones.properties"), Duration.ofMinutes(5), Clock.systemUTC());
+        recordJournal = new RecordJournal(tempDir.resolve("records.journal"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .willReturn(okJson(readFixture("listZones.json"))));
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(setRecordBody())));
+    }
+
+    @Test
+    void presentWithColdCacheListsZonesAndFillsCache() throws Exception {
+        LegoArgumentResult result = handler().handleLegoArgs(present());
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        assertEquals(Map.of("marton.cloud", 10000, "mock-domain.com", 10001), zoneCache.read().orElseThrow());
+    }
+
+    @Test
+    void presentWithWarmCacheNeedsOneApiCall() throws Exception {
+        zoneCache.write(Map.of("marton.cloud", 10000));
+
+        LegoArgumentResult result = handler().handleLegoArgs(present());
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(0, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+    }
+
+    @Test
+    void staleCachedZoneIdIsRefetched() throws Exception {
+        zoneCache.write(Map.of("marton.cloud", 99999));
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/99999/records"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody(notFoundBody())));
+
+        LegoArgumentResult result = handler().handleLegoArgs(present());
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/99999/records")));
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        assertEquals(10000, zoneCache.read().orElseThrow().get("marton.cloud"));
+    }
+
+    @Test
+    void unknownDomainFails() throws Exception {
+        LegoArgumentResult result = handler().handleLegoArgs(
+                new CliParser.LegoArgs(CliParser.LegoAction.PRESENT, "_acme-challenge.unknown.org.", "token"));
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getMessage().contains("unknown.org"));
+    }
+
+    @Test
+    void cleanupDeletesMatchingRecord() throws Exception {
+        zoneCache.write(Map.of("marton.cloud", 10000));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(readFixture("getDnsRecords.json"))));
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/32857634"))
+                .willReturn(okJson(deleteRecordBody())));
+
+        LegoArgumentResult result = handler().handleLegoArgs(
+                new CliParser.LegoArgs(CliParser.LegoAction.CLEANUP, "www.marton.cloud", "192.168.0.100"));
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(0, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/32857634")));
+    }
+
+    @Test
+    void cleanupAfterPresentDeletesJournaledRecordDirectly() throws Exception {
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/30000000"))
+                .willReturn(okJson(deleteRecordBody())));
+
+        assertTrue(handler().handleLegoArgs(present()).isSuccess());
+        LegoArgumentResult result = handler().handleLegoArgs(
+                new CliParser.LegoArgs(CliParser.LegoAction.CLEANUP, CHALLENGE_DOMAIN, "token"));
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(0, getRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/30000000")));
+        assertTrue(recordJournal.find(CHALLENGE_DOMAIN, "token").isEmpty());
+    }
+
+    @Test
+    void coalescedInvocationsShareOneZoneLookup() throws Exception {
+        wireMockServer.stubFor(delete(urlPathEqualTo("/dns/zones/10000/records/30000000"))
+                .willReturn(okJson(deleteRecordBody())));
+        CliParser.LegoArgs second = new CliParser.LegoArgs(CliParser.LegoAction.PRESENT, "_acme-challenge.bar.marton.cloud.", "token2");
+        CliParser.LegoArgs unknown = new CliParser.LegoArgs(CliParser.LegoAction.PRESENT, "_acme-challenge.unknown.org.", "token");
+
+        Map<Integer, LegoArgumentResult> published = new ConcurrentHashMap<>();
+        List<LegoArgumentResult> results = handler().handleAll(List.of(present(), second, unknown), 4, published::put);
+
+        assertEquals(Map.of(0, results.get(0), 1, results.get(1), 2, results.get(2)), published);
+        assertTrue(results.get(0).isSuccess(), results.get(0)::getMessage);
+        assertTrue(results.get(1).isSuccess(), results.get(1)::getMessage);
+        assertFalse(results.get(2).isSuccess());
+        assertTrue(results.get(2).getMessage().contains("unknown.org"));
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+
+        results = handler().handleAll(List.of(new CliParser.LegoArgs(CliParser.LegoAction.CLEANUP, CHALLENGE_DOMAIN, "token")), 4);
+
+        assertTrue(results.getFirst().isSuccess(), results.getFirst()::getMessage);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/30000000")));
+    }
+
+    @Test
+    void cleanupUsesRecordCacheOfClient() throws Exception {
+        HostupApiClient cachingClient = HostupApiClient.builder("test-api-key", URI.create(wireMockServer.baseUrl() + "/"))
+                .retryPolicy(RetryPolicy.standard(2, 10L))
+                .recordCache(new RecordCache())
+                .build();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(readFixture("getDnsRecords.json"))));
+        wireMockServer.stubFor(delete(urlPathMatching("/dns/zones/10000/records/\\d+"))
+                .willReturn(okJson(deleteRecordBody())));
+        zoneCache.write(Map.of("marton.cloud", 10000));
+        cachingClient.getDnsRecords(10000);
+        cachingClient.setDnsRecord(10000, CHALLENGE_DOMAIN, "token");
+
+        LegoArgumentResult result = new LegoArgumentHandler(cachingClient, zoneCache, RecordJournal.disabled()).handleLegoArgs(
+                new CliParser.LegoArgs(CliParser.LegoAction.CLEANUP, CHALLENGE_DOMAIN, "token"));
+
+        assertTrue(result.isSuccess(), result::getMessage);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/30000000")));
+        assertTrue(cachingClient.recordCache().get(10000).orElseThrow().findByName(CHALLENGE_DOMAIN).isEmpty());
+    }
+
+    private LegoArgumentHandler handler() {
+        return new LegoArgumentHandler(client, zoneCache, recordJournal);
+    }
+
+    private static CliParser.LegoArgs present() {
+        return new CliParser.LegoArgs(CliParser.LegoAction.PRESENT, CHALLENGE_DOMAIN, "token");
+    }
+
+    private static String setRecordBody() {
+        return """
+                {
+                  "success": true,
+                  "requestId": "mocked-request-id",
+                  "data": {
+                    "record": {
+                      "id": 30000000,
+                      "type": "TXT",
+                      "name": "_acme-challenge.foo.marton.cloud",
+                      "value": "\\"token\\"",
+                      "ttl": 300,
+                      "status": "pending"
+                    }
+                  }
+                }
+                """;
+    }
+
+    private static String deleteRecordBody() {
+        return """
+                {
+                  "success": true,
+                  "requestId": "mocked-request-id",
+                  "data": {
+                    "message": "DNS record deleted successfully"
+                  }
+                }
+                """;
+    }
+
+    private static String notFoundBody() {
+        return """
+                {
+                  "error": "Not Found",
+                  "message": "dns.zone_not_found not found",
+                  "code": "NOT_FOUND",
+                  "timestamp": "2026-01-04T09:09:03.358Z",
+                  "requestId": "mocked-request-id"
+                }
+                """;
+    }
+
+    private static String readFixture(String filename) throws IOException {
+        return Files.readString(RESPONSES_DIR.resolve(filename), StandardCharsets.UTF_8);
+    }
+}
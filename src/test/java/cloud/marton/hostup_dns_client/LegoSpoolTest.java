@@ -0,0 +1,165 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.exceptions.LegoArgumentResult;
+import cloud.marton.hostup_dns_client.model.ApiResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegoSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<List<CliParser.LegoArgs>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void concurrentInvocationsAreHandledInOneBatch() throws Exception {
+        LegoSpool spool = new LegoSpool(tempDir, Duration.ofMillis(500), Duration.ofSeconds(10));
+        List<Future<LegoArgumentResult>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(5)) {
+            for (int i = 0; i < 5; i++) {
+                CliParser.LegoArgs legoArgs = present("_acme-challenge.san" + i + ".example.org.");
+                results.add(executor.submit(() -> spool.submit(legoArgs, this::handle)));
+            }
+            for (int i = 0; i < 5; i++) {
+                LegoArgumentResult result = results.get(i).get();
+                assertTrue(result.isSuccess());
+                assertEquals("Handled _acme-challenge.san" + i + ".example.org.", result.getMessage());
+                assertEquals("body _acme-challenge.san" + i + ".example.org.", result.getApiResponse().body());
+            }
+        }
+        assertEquals(1, batches.size());
+        assertEquals(5, batches.getFirst().size());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of("leader.lock"), files.map(file -> file.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void failureOfLeaderIsReportedToFollowers() throws Exception {
+        LegoSpool spool = new LegoSpool(tempDir, Duration.ofMillis(500), Duration.ofSeconds(10));
+        LegoSpool.BatchHandler failing = (batch, listener) -> {
+            throw new IOException("connection refused");
+        };
+        List<Future<?>> outcomes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            for (int i = 0; i < 2; i++) {
+                CliParser.LegoArgs legoArgs = present("_acme-challenge.san" + i + ".example.org.");
+                outcomes.add(executor.submit(() -> spool.submit(legoArgs, failing)));
+            }
+            int thrown = 0;
+            int failedResults = 0;
+            for (Future<?> outcome : outcomes) {
+                try {
+                    LegoArgumentResult result = (LegoArgumentResult) outcome.get();
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.getMessage().contains("connection refused"), result::getMessage);
+                    failedResults++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IOException.class, e.getCause());
+                    thrown++;
+                }
+            }
+            assertEquals(1, thrown);
+            assertEquals(1, failedResults);
+        }
+    }
+
+    @Test
+    void followerGetsItsResultBeforeTheBatchIsDone() throws Exception {
+        LegoSpool spool = new LegoSpool(tempDir, Duration.ofMillis(500), Duration.ofSeconds(10));
+        CountDownLatch followerDone = new CountDownLatch(1);
+        AtomicBoolean doneEarly = new AtomicBoolean();
+        LegoSpool.BatchHandler slow = (batch, listener) -> {
+            List<LegoArgumentResult> results = handle(batch, listener);
+            // E.g. the leader's own propagation check is still running
+            doneEarly.set(followerDone.await(5, TimeUnit.SECONDS));
+            return results;
+        };
+        List<Future<LegoArgumentResult>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            for (int i = 0; i < 2; i++) {
+                CliParser.LegoArgs legoArgs = present("_acme-challenge.san" + i + ".example.org.");
+                results.add(executor.submit(() -> {
+                    LegoArgumentResult result = spool.submit(legoArgs, slow);
+                    followerDone.countDown();
+                    return result;
+                }));
+            }
+            for (Future<LegoArgumentResult> result : results) {
+                assertTrue(result.get().isSuccess());
+            }
+        }
+        assertTrue(doneEarly.get(), "the follower returned while the leader was still handling the batch");
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void requestOfDeadLeaderIsDropped() throws Exception {
+        writeRequest("999999999-dead.claimed", present("_acme-challenge.dead.example.org."));
+        writeRequest(ProcessHandle.current().pid() + "-waiting.claimed", present("_acme-challenge.waiting.example.org."));
+        LegoSpool spool = new LegoSpool(tempDir, Duration.ZERO, Duration.ofSeconds(10));
+
+        LegoArgumentResult result = spool.submit(present("_acme-challenge.own.example.org."), this::handle);
+
+        assertEquals("Handled _acme-challenge.own.example.org.", result.getMessage());
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.getFirst().size());
+        assertTrue(Files.exists(tempDir.resolve(ProcessHandle.current().pid() + "-waiting.result")));
+        assertFalse(Files.exists(tempDir.resolve("999999999-dead.claimed")));
+    }
+
+    @Test
+    void disabledSpoolHandlesInvocationAlone() throws Exception {
+        LegoArgumentResult result = LegoSpool.disabled().submit(present("_acme-challenge.example.org."), this::handle);
+
+        assertTrue(result.isSuccess());
+        assertEquals(List.of(List.of(present("_acme-challenge.example.org."))), batches);
+    }
+
+    private List<LegoArgumentResult> handle(List<CliParser.LegoArgs> batch, LegoSpool.ResultListener listener) {
+        batches.add(batch);
+        List<LegoArgumentResult> results = batch.stream()
+                .map(legoArgs -> new LegoArgumentResult(true, "Handled " + legoArgs.domain(),
+                        new ApiResponse(true, 200, ("body " + legoArgs.domain()).getBytes(StandardCharsets.UTF_8), null)))
+                .toList();
+        for (int i = 0; i < results.size(); i++) {
+            listener.completed(i, results.get(i));
+        }
+        return results;
+    }
+
+    private void writeRequest(String fileName, CliParser.LegoArgs legoArgs) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("action", legoArgs.action().name());
+        properties.setProperty("domain", legoArgs.domain());
+        properties.setProperty("value", legoArgs.value());
+        try (OutputStream output = Files.newOutputStream(tempDir.resolve(fileName))) {
+            properties.store(output, null);
+        }
+    }
+
+    private static CliParser.LegoArgs present(String domain) {
+        return new CliParser.LegoArgs(CliParser.LegoAction.PRESENT, domain, "token");
+    }
+}
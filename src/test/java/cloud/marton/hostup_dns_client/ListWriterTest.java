@@ -0,0 +1,58 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListWriterTest {
+
+    private static final DnsRecordsResponse.Record TXT = new DnsRecordsResponse.Record(
+            32857634, "TXT", "_acme-challenge.marton.cloud", "\"quoted\"\tand tab", 300, "active", "2025-12-28 19:49:08");
+    private static final DnsRecordsResponse.Record A = new DnsRecordsResponse.Record(
+            32857635, "A", "www.marton.cloud", "192.168.0.100", 3600, "active", "2025-12-28 19:49:08");
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Test
+    void recordsAsNdjson() throws Exception {
+        ListWriter writer = new ListWriter(CliParser.OutputFormat.NDJSON, List.of("id", "name", "value"), output);
+
+        writer.writeRecord(TXT);
+        writer.writeRecord(A);
+
+        assertEquals("""
+                {"id":32857634,"name":"_acme-challenge.marton.cloud","value":"\\"quoted\\"\\tand tab"}
+                {"id":32857635,"name":"www.marton.cloud","value":"192.168.0.100"}
+                """, output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void recordsAsTsv() throws Exception {
+        ListWriter writer = new ListWriter(CliParser.OutputFormat.TSV, List.of("type", "ttl", "value"), output);
+
+        writer.writeRecord(TXT);
+        writer.writeRecord(A);
+
+        assertEquals("TXT\t300\t\"quoted\" and tab\nA\t3600\t192.168.0.100\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void zonesAsTsv() throws Exception {
+        ListWriter writer = new ListWriter(CliParser.OutputFormat.TSV, List.of("id", "name"), output);
+
+        writer.writeZone(new ZonesResponse.Zone(20, 1234, 10000, "marton.cloud"));
+
+        assertEquals("10000\tmarton.cloud\n", output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void jsonIsNotWrittenPerElement() {
+        assertThrows(IllegalArgumentException.class, () -> new ListWriter(CliParser.OutputFormat.JSON, List.of("id"), output));
+    }
+}
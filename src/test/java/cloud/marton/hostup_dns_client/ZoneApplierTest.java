@@ -0,0 +1,162 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.model.DesiredState;
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneApplierTest {
+
+    private static final String SET_RECORD_BODY = """
+            {"success": true, "requestId": "mocked-request-id", "data": {"record": {"id": 30000000, "type": "A", "name": "new.marton.cloud", "value": "192.168.0.3", "ttl": 3600, "status": "pending"}}}
+            """;
+    private static final String DELETED_BODY = """
+            {"success": true, "requestId": "mocked-request-id", "data": {"message": "DNS record deleted successfully"}}
+            """;
+    private static final String DESIRED_STATE = """
+            {"zones": [{"zoneId": 10000, "records": [
+              {"type": "A", "name": "www.marton.cloud.", "value": "192.168.0.1", "ttl": 3600},
+              {"type": "TXT", "name": "marton.cloud", "value": "v=spf1 -all", "ttl": 300},
+              {"type": "A", "name": "new.marton.cloud", "value": "192.168.0.3", "ttl": 3600},
+              {"type": "CNAME", "name": "alias.marton.cloud", "value": "www.marton.cloud", "ttl": 600}
+            ]}]}
+            """;
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() {
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson("""
+                        {
+                          "success": true,
+                          "requestId": "mocked-request-id",
+                          "data": {
+                            "zone": {
+                              "id": 10000,
+                              "domain": "marton.cloud",
+                              "records": [
+                                {"id": 1, "type": "A", "name": "WWW.marton.cloud", "value": "192.168.0.1", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 2, "type": "TXT", "name": "marton.cloud", "value": "\\"v=spf1 -all\\"", "ttl": 300, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 3, "type": "CNAME", "name": "alias.marton.cloud", "value": "www.marton.cloud.", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 4, "type": "A", "name": "old.marton.cloud", "value": "192.168.0.4", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 5, "type": "NS", "name": "marton.cloud", "value": "ns1.hostup.se", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"}
+                              ]
+                            }
+                          }
+                        }
+                        """)));
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(SET_RECORD_BODY)));
+        wireMockServer.stubFor(delete(urlPathMatching("/dns/zones/10000/records/\\d+"))
+                .willReturn(okJson(DELETED_BODY)));
+    }
+
+    @Test
+    void planSkipsUnchangedAndNeverDeletesNs() {
+        List<DnsRecordsResponse.Record> current = List.of(
+                record(1, "A", "www.marton.cloud", "192.168.0.1", 3600),
+                record(2, "A", "www.marton.cloud", "192.168.0.1", 3600),
+                record(3, "TXT", "marton.cloud", "\"token\"", 300),
+                record(4, "NS", "marton.cloud", "ns1.hostup.se", 3600),
+                record(5, "SOA", "marton.cloud", "ns1.hostup.se hostmaster.hostup.se", 3600));
+        List<DesiredState.Record> desired = List.of(
+                new DesiredState.Record("A", "www.marton.cloud", "192.168.0.1", 3600),
+                new DesiredState.Record("A", "www.marton.cloud", "192.168.0.1", 3600),
+                new DesiredState.Record("TXT", "marton.cloud", "token", 60));
+
+        ZoneApplier.Plan plan = ZoneApplier.plan(10000, desired, current);
+
+        assertEquals(1, plan.unchanged());
+        assertEquals(List.of(new DesiredState.Record("TXT", "marton.cloud", "token", 60)), plan.creates());
+        assertEquals(List.of(2, 3), plan.deletes().stream().map(DnsRecordsResponse.Record::id).sorted().toList());
+        assertEquals(3, plan.apiCalls());
+    }
+
+    @Test
+    void dryRunMakesNoWriteCalls() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ZoneApplier.Result result = apply(true, output);
+
+        assertTrue(result.success(), result::message);
+        assertEquals("Dry run: 2 to create, 2 to delete, 2 unchanged in 1 zones, 4 write API calls", result.message());
+        String lines = output.toString(StandardCharsets.UTF_8);
+        assertTrue(lines.contains("10000\tcreate\tA\tnew.marton.cloud\t3600\t192.168.0.3\tPLANNED"), lines);
+        assertTrue(lines.contains("10000\tdelete\tA\told.marton.cloud\t3600\t192.168.0.4\tPLANNED"), lines);
+        wireMockServer.verify(0, postRequestedFor(anyUrl()));
+        wireMockServer.verify(0, deleteRequestedFor(anyUrl()));
+    }
+
+    @Test
+    void applyCreatesAndDeletesOnlyTheDifference() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ZoneApplier.Result result = apply(false, output);
+
+        assertTrue(result.success(), result::message);
+        wireMockServer.verify(1, getRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/3")));
+        wireMockServer.verify(1, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/4")));
+        wireMockServer.verify(0, deleteRequestedFor(urlPathEqualTo("/dns/zones/10000/records/5")));
+        assertEquals(4, output.toString(StandardCharsets.UTF_8).lines().filter(line -> line.endsWith("OK\t200")).count());
+    }
+
+    @Test
+    void failedFetchAppliesNothing() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                                {"error": "Not Found", "message": "dns.zone_not_found not found", "code": "NOT_FOUND", "timestamp": "2026-01-04T09:09:03.358Z", "requestId": "mocked-request-id"}
+                                """)));
+
+        ZoneApplier.Result result = apply(false, new ByteArrayOutputStream());
+
+        assertFalse(result.success());
+        assertEquals(404, result.apiResponse().httpStatus());
+        wireMockServer.verify(0, postRequestedFor(anyUrl()));
+        wireMockServer.verify(0, deleteRequestedFor(anyUrl()));
+    }
+
+    private static ZoneApplier.Result apply(boolean dryRun, ByteArrayOutputStream output) throws Exception {
+        ZoneApplier zoneApplier = new ZoneApplier(client, 4);
+        DesiredState desiredState = zoneApplier.read(new ByteArrayInputStream(DESIRED_STATE.getBytes(StandardCharsets.UTF_8)));
+        return zoneApplier.apply(desiredState, dryRun, new PrintStream(output, true, StandardCharsets.UTF_8));
+    }
+
+    private static DnsRecordsResponse.Record record(int id, String type, String name, String value, int ttl) {
+        return new DnsRecordsResponse.Record(id, type, name, value, ttl, "active", "2025-12-29T12:29:09.458Z");
+    }
+}
@@ -0,0 +1,129 @@
+package cloud.marton.hostup_dns_client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneExporterTest {
+
+    private static final Path RESPONSES_DIR = Path.of("src", "test", "resources", "hostupApiResponses");
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() throws IOException {
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones"))
+                .willReturn(okJson(readFixture("listZones.json"))));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson(readFixture("getDnsRecords.json"))));
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10001/records"))
+                .willReturn(okJson("""
+                        {
+                          "success": true,
+                          "requestId": "mocked-request-id",
+                          "data": {
+                            "zone": {
+                              "id": 10001,
+                              "domain": "mock-domain.com",
+                              "records": [
+                                {"id": 1, "type": "MX", "name": "mock-domain.com", "value": "10 mail.mock-domain.com", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"},
+                                {"id": 2, "type": "TXT", "name": "mock-domain.com", "value": "\\"v=spf1 -all\\"", "ttl": 300, "status": "active", "created": "2025-12-29T12:29:09.458Z"}
+                              ]
+                            }
+                          }
+                        }
+                        """)));
+    }
+
+    @Test
+    void exportZoneWritesOneLinePerRecord() throws Exception {
+        StringWriter output = new StringWriter();
+
+        ZoneExporter.Result result = new ZoneExporter(client, 4).exportZone(10000, output);
+
+        assertTrue(result.success(), result::message);
+        assertEquals(List.of(
+                "; zone 10000",
+                "www.marton.cloud.\t3600\tIN\tA\t192.168.0.100",
+                "*.marton.cloud.\t3600\tIN\tA\t192.168.0.100",
+                "marton.cloud.\t14400\tIN\tA\t192.168.0.100"), output.toString().lines().toList());
+    }
+
+    @Test
+    void exportAllWritesZonesInOrder() throws Exception {
+        StringWriter output = new StringWriter();
+
+        ZoneExporter.Result result = new ZoneExporter(client, 4).exportAll(output);
+
+        assertTrue(result.success(), result::message);
+        assertEquals(List.of(
+                "; zone marton.cloud (10000)",
+                "$ORIGIN marton.cloud.",
+                "www.marton.cloud.\t3600\tIN\tA\t192.168.0.100",
+                "*.marton.cloud.\t3600\tIN\tA\t192.168.0.100",
+                "marton.cloud.\t14400\tIN\tA\t192.168.0.100",
+                "; zone mock-domain.com (10001)",
+                "$ORIGIN mock-domain.com.",
+                "mock-domain.com.\t3600\tIN\tMX\t10 mail.mock-domain.com.",
+                "mock-domain.com.\t300\tIN\tTXT\t\"v=spf1 -all\""), output.toString().lines().toList());
+    }
+
+    @Test
+    void exportOfUnknownZoneFails() throws Exception {
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/99999/records"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("""
+                                {"error": "Not Found", "message": "dns.zone_not_found not found", "code": "NOT_FOUND", "timestamp": "2026-01-04T09:09:03.358Z", "requestId": "mocked-request-id"}
+                                """)));
+
+        ZoneExporter.Result result = new ZoneExporter(client, 4).exportZone(99999, new StringWriter());
+
+        assertFalse(result.success());
+        assertEquals(404, result.apiResponse().httpStatus());
+    }
+
+    @Test
+    void rdata() {
+        assertEquals("\"some \\\"quoted\\\" text\"", ZoneExporter.rdata("TXT", "some \"quoted\" text"));
+        assertEquals("\"already quoted\"", ZoneExporter.rdata("TXT", "\"already quoted\""));
+        assertEquals("\"" + "a".repeat(255) + "\" \"bb\"", ZoneExporter.rdata("TXT", "a".repeat(255) + "bb"));
+        assertEquals("www.marton.cloud.", ZoneExporter.rdata("CNAME", "www.marton.cloud"));
+        assertEquals("10 5 443 sip.marton.cloud.", ZoneExporter.rdata("SRV", "10 5 443 sip.marton.cloud."));
+        assertEquals("2001:db8::1", ZoneExporter.rdata("AAAA", "2001:db8::1"));
+    }
+
+    private static String readFixture(String filename) throws IOException {
+        return Files.readString(RESPONSES_DIR.resolve(filename), StandardCharsets.UTF_8);
+    }
+}
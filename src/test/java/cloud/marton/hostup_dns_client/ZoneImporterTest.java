@@ -0,0 +1,123 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.cache.ImportCheckpoint;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneImporterTest {
+
+    private static final String ZONE_FILE = """
+            $ORIGIN marton.cloud.
+            $TTL 3600
+            @       IN SOA ns1.hostup.se. hostmaster.marton.cloud. ( 1 7200 3600 1209600 3600 )
+            www     IN A     192.168.0.1
+            new     IN A     192.168.0.3
+            new     IN A     192.168.0.3
+            mail    300 IN MX 10 mx.marton.cloud.
+            """;
+    private static WireMockServer wireMockServer;
+    private static HostupApiClient client;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        wireMockServer.start();
+        client = new HostupApiClient("test-api-key", URI.create(wireMockServer.baseUrl() + "/"), 2, 10L);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (wireMockServer != null) {
+            wireMockServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void resetStubs() {
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(get(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson("""
+                        {
+                          "success": true,
+                          "requestId": "mocked-request-id",
+                          "data": {
+                            "zone": {
+                              "id": 10000,
+                              "domain": "marton.cloud",
+                              "records": [
+                                {"id": 1, "type": "A", "name": "WWW.marton.cloud", "value": "192.168.0.1", "ttl": 3600, "status": "active", "created": "2025-12-29T12:29:09.458Z"}
+                              ]
+                            }
+                          }
+                        }
+                        """)));
+        wireMockServer.stubFor(post(urlPathEqualTo("/dns/zones/10000/records"))
+                .willReturn(okJson("""
+                        {"success": true, "requestId": "mocked-request-id", "data": {"record": {"id": 30000000, "type": "A", "name": "new.marton.cloud", "value": "192.168.0.3", "ttl": 3600, "status": "pending"}}}
+                        """)));
+    }
+
+    @Test
+    void importSkipsExistingRecordsAndSoa() throws Exception {
+        Path zoneFile = Files.writeString(tempDir.resolve("marton.cloud.zone"), ZONE_FILE);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ZoneImporter.Result result = new ZoneImporter(client, 2, ImportCheckpoint.disabled())
+                .importFile(10000, zoneFile, new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        assertTrue(result.success(), result.message());
+        assertEquals("Import complete: 2 created, 3 skipped, 0 failed", result.message());
+        String lines = output.toString(StandardCharsets.UTF_8);
+        assertTrue(lines.contains("3\tSOA\tmarton.cloud\tSKIPPED\t"), lines);
+        assertTrue(lines.contains("4\tA\twww.marton.cloud\tEXISTS\t"), lines);
+        assertTrue(lines.contains("6\tA\tnew.marton.cloud\tEXISTS\t"), lines);
+        assertTrue(lines.contains("5\tA\tnew.marton.cloud\tCREATED\trecordId=30000000"), lines);
+        wireMockServer.verify(2, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(postRequestedFor(urlPathEqualTo("/dns/zones/10000/records"))
+                .withRequestBody(equalToJson("""
+                        {"type": "MX", "name": "mail.marton.cloud", "value": "10 mx.marton.cloud", "ttl": 300}
+                        """)));
+    }
+
+    @Test
+    void importContinuesFromCheckpoint() throws Exception {
+        Path csvFile = Files.writeString(tempDir.resolve("records.csv"), """
+                name,type,value,ttl
+                new.marton.cloud,A,192.168.0.3,3600
+                other.marton.cloud,A,192.168.0.5,3600
+                """);
+        Path cacheDir = tempDir.resolve("cache");
+        ImportCheckpoint.forImport(cacheDir, 10000, csvFile).created("new.marton.cloud", "A", "192.168.0.3", 30000000);
+
+        ImportCheckpoint checkpoint = ImportCheckpoint.forImport(cacheDir, 10000, csvFile);
+        ZoneImporter.Result result = new ZoneImporter(client, 2, checkpoint)
+                .importFile(10000, csvFile, new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8));
+
+        assertTrue(result.success(), result.message());
+        assertEquals("Import complete: 1 created, 1 skipped, 0 failed", result.message());
+        wireMockServer.verify(1, postRequestedFor(urlPathEqualTo("/dns/zones/10000/records")));
+        wireMockServer.verify(postRequestedFor(urlPathEqualTo("/dns/zones/10000/records"))
+                .withRequestBody(matchingJsonPath("$.name", equalTo("other.marton.cloud"))));
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(0, files.count(), "checkpoint is deleted after a complete import");
+        }
+    }
+}
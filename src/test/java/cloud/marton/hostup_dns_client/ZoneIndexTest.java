@@ -0,0 +1,65 @@
+package cloud.marton.hostup_dns_client;
+
+import cloud.marton.hostup_dns_client.model.ZonesResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneIndexTest {
+
+    private final ZoneIndex<Integer> index = ZoneIndex.ofZoneIds(Map.of(
+            "example.org", 1,
+            "sub.example.org", 2,
+            "example.co.uk", 3,
+            "Upper.Example.NET.", 4));
+
+    @Test
+    void findsLongestMatchingZone() {
+        assertEquals(Optional.of(1), index.get("example.org"));
+        assertEquals(Optional.of(1), index.get("_acme-challenge.www.example.org."));
+        assertEquals(Optional.of(2), index.get("_acme-challenge.sub.example.org"));
+        assertEquals(Optional.of(2), index.get("deep.www.sub.example.org"));
+        assertEquals(Optional.of(3), index.get("_acme-challenge.shop.example.co.uk."));
+        assertEquals(new ZoneIndex.Match<>("sub.example.org", 2), index.find("www.sub.example.org").orElseThrow());
+    }
+
+    @Test
+    void ignoresCaseAndTrailingDot() {
+        assertEquals(Optional.of(4), index.get("WWW.upper.example.net."));
+        assertEquals(Optional.of(2), index.get("Sub.EXAMPLE.org."));
+        assertEquals("upper.example.net", index.find("upper.example.net").orElseThrow().domain());
+    }
+
+    @Test
+    void doesNotMatchPartialLabelsOrParents() {
+        assertTrue(index.get("notexample.org").isEmpty());
+        assertTrue(index.get("org").isEmpty());
+        assertTrue(index.get("co.uk").isEmpty());
+        assertTrue(index.get("example.com").isEmpty());
+        assertTrue(index.get("").isEmpty());
+    }
+
+    @Test
+    void firstZoneWinsForDuplicateDomains() {
+        ZoneIndex<ZonesResponse.Zone> zones = ZoneIndex.of(List.of(
+                new ZonesResponse.Zone(20, 1234, 10000, "example.org"),
+                new ZonesResponse.Zone(20, 1234, 10001, "EXAMPLE.org")));
+
+        assertEquals(1, zones.size());
+        assertEquals(10000, zones.get("www.example.org").orElseThrow().domain_id());
+    }
+
+    @Test
+    void zoneIdsAreNormalizedAndFirstZoneWins() {
+        Map<String, Integer> zoneIds = ZoneIndex.zoneIds(List.of(
+                new ZonesResponse.Zone(20, 1234, 10000, "Example.org."),
+                new ZonesResponse.Zone(20, 1234, 10001, "example.org"),
+                new ZonesResponse.Zone(20, 1234, 10002, "example.net")));
+
+        assertEquals(Map.of("example.org", 10000, "example.net", 10002), zoneIds);
+    }
+}
@@ -0,0 +1,125 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import cloud.marton.hostup_dns_client.model.DnsRecordsResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordCacheTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void findsRecordsByNameAndByNameTypeValue() {
+        RecordCache cache = new RecordCache(Duration.ofMinutes(5), 10, Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.put(10000, List.of(
+                record(1, "A", "www.marton.cloud", "192.168.0.100"),
+                record(2, "TXT", "_acme-challenge.marton.cloud", "\"token-1\""),
+                record(3, "TXT", "_acme-challenge.marton.cloud", "\"token-2\""),
+                record(4, "CNAME", "docs.marton.cloud", "www.marton.cloud.")));
+
+        RecordCache.ZoneRecords records = cache.get(10000).orElseThrow();
+        assertEquals(4, records.size());
+        assertEquals(List.of(1), ids(records.findByName("WWW.marton.cloud.")));
+        assertEquals(List.of(2, 3), ids(records.findByName("_acme-challenge.marton.cloud")));
+        assertEquals(3, records.find("_acme-challenge.marton.cloud.", "txt", "token-2").orElseThrow().id());
+        assertEquals(3, records.find("_acme-challenge.marton.cloud", "TXT", "\"token-2\"").orElseThrow().id());
+        assertTrue(records.find("www.marton.cloud", "A", "10.0.0.1").isEmpty());
+        assertEquals(4, records.find("docs.marton.cloud", "CNAME", "WWW.marton.cloud").orElseThrow().id(), "like --apply");
+    }
+
+    @Test
+    void addedAndRemovedRecordsUpdateCachedZone() {
+        RecordCache cache = new RecordCache(Duration.ofMinutes(5), 10, Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.put(10000, List.of(record(1, "A", "www.marton.cloud", "192.168.0.100")));
+
+        cache.added(10000, record(2, "TXT", "_acme-challenge.marton.cloud", "\"token\""));
+        cache.removed(10000, 1);
+
+        RecordCache.ZoneRecords records = cache.get(10000).orElseThrow();
+        assertEquals(1, records.size());
+        assertTrue(records.findByName("www.marton.cloud").isEmpty());
+        assertEquals(2, records.find("_acme-challenge.marton.cloud", "TXT", "token").orElseThrow().id());
+    }
+
+    @Test
+    void recordsOfUncachedZoneAreIgnored() {
+        RecordCache cache = new RecordCache(Duration.ofMinutes(5), 10, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        cache.added(10000, record(2, "TXT", "_acme-challenge.marton.cloud", "\"token\""));
+
+        assertTrue(cache.get(10000).isEmpty());
+    }
+
+    @Test
+    void expiredZoneIsEmpty() {
+        MutableClock clock = new MutableClock(NOW);
+        RecordCache cache = new RecordCache(Duration.ofMinutes(5), 10, clock);
+        cache.put(10000, List.of(record(1, "A", "www.marton.cloud", "192.168.0.100")));
+
+        clock.instant = NOW.plusSeconds(301);
+
+        assertTrue(cache.get(10000).isEmpty());
+    }
+
+    @Test
+    void leastRecentlyUsedZoneIsEvicted() {
+        RecordCache cache = new RecordCache(Duration.ofMinutes(5), 2, Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.put(1, List.of());
+        cache.put(2, List.of());
+        cache.get(1);
+        cache.put(3, List.of());
+
+        assertTrue(cache.get(1).isPresent());
+        assertTrue(cache.get(2).isEmpty());
+        assertTrue(cache.get(3).isPresent());
+    }
+
+    @Test
+    void disabledCacheIsAlwaysEmpty() {
+        RecordCache cache = RecordCache.disabled();
+        cache.put(10000, List.of(record(1, "A", "www.marton.cloud", "192.168.0.100")));
+
+        assertFalse(cache.isEnabled());
+        assertTrue(cache.get(10000).isEmpty());
+    }
+
+    private static DnsRecordsResponse.Record record(int id, String type, String name, String value) {
+        return new DnsRecordsResponse.Record(id, type, name, value, 300, "active", "2026-01-01T00:00:00.000Z");
+    }
+
+    private static List<Integer> ids(List<DnsRecordsResponse.Record> records) {
+        return records.stream().map(DnsRecordsResponse.Record::id).toList();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void findReturnsRecordedEntry() {
+        RecordJournal journal = new RecordJournal(tempDir.resolve("records.journal"));
+        journal.record("_acme-challenge.Example.org.", "token\twith tab", 10000, 30000);
+
+        Optional<RecordJournal.Entry> entry = journal.find("_acme-challenge.example.org", "token\twith tab");
+        assertTrue(entry.isPresent());
+        assertEquals(10000, entry.get().zoneId());
+        assertEquals(30000, entry.get().recordId());
+        assertTrue(journal.find("_acme-challenge.example.org", "other-token").isEmpty());
+    }
+
+    @Test
+    void removedEntryIsNotFound() {
+        RecordJournal journal = new RecordJournal(tempDir.resolve("records.journal"));
+        journal.record("_acme-challenge.example.org", "a", 10000, 30000);
+        journal.record("_acme-challenge.example.org", "b", 10000, 30001);
+
+        journal.remove(journal.find("_acme-challenge.example.org", "a").orElseThrow());
+
+        assertTrue(journal.find("_acme-challenge.example.org", "a").isEmpty());
+        assertEquals(30001, journal.find("_acme-challenge.example.org", "b").orElseThrow().recordId());
+    }
+
+    @Test
+    void journalIsTruncatedWhenEmpty() throws IOException {
+        Path file = tempDir.resolve("records.journal");
+        RecordJournal journal = new RecordJournal(file);
+        journal.record("_acme-challenge.example.org", "a", 10000, 30000);
+
+        journal.remove(journal.find("_acme-challenge.example.org", "a").orElseThrow());
+
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    void disabledJournalFindsNothing() {
+        RecordJournal journal = RecordJournal.disabled();
+        journal.record("_acme-challenge.example.org", "a", 10000, 30000);
+
+        assertTrue(journal.find("_acme-challenge.example.org", "a").isEmpty());
+    }
+}
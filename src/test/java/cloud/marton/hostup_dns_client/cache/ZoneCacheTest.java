@@ -0,0 +1,80 @@
+package cloud.marton.hostup_dns_client.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writeThenRead() {
+        ZoneCache cache = ZoneCache.forAccount(tempDir, Duration.ofMinutes(5), URI.create("https://example.org/api/"), "key");
+        cache.write(Map.of("Marton.Cloud", 10000, "mock-domain.com", 10001));
+
+        Optional<Map<String, Integer>> zones = cache.read();
+        assertTrue(zones.isPresent());
+        assertEquals(10000, zones.get().get("marton.cloud"));
+        assertEquals(10001, zones.get().get("mock-domain.com"));
+    }
+
+    @Test
+    void expiredCacheIsEmpty() {
+        Path file = tempDir.resolve("zones.properties");
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        new ZoneCache(file, Duration.ofMinutes(5), Clock.fixed(now, ZoneOffset.UTC)).write(Map.of("marton.cloud", 10000));
+
+        ZoneCache later = new ZoneCache(file, Duration.ofMinutes(5), Clock.fixed(now.plusSeconds(301), ZoneOffset.UTC));
+        assertTrue(later.read().isEmpty());
+    }
+
+    @Test
+    void invalidateRemovesCache() {
+        ZoneCache cache = new ZoneCache(tempDir.resolve("zones.properties"), Duration.ofMinutes(5), Clock.systemUTC());
+        cache.write(Map.of("marton.cloud", 10000));
+        cache.invalidate();
+
+        assertTrue(cache.read().isEmpty());
+    }
+
+    @Test
+    void disabledCacheNeverWrites() throws IOException {
+        ZoneCache cache = new ZoneCache(tempDir.resolve("zones.properties"), Duration.ZERO, Clock.systemUTC());
+        cache.write(Map.of("marton.cloud", 10000));
+
+        assertTrue(cache.read().isEmpty());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void corruptCacheIsIgnored() throws IOException {
+        Path file = tempDir.resolve("zones.properties");
+        Files.writeString(file, "fetched-at=" + System.currentTimeMillis() + "\nzone.marton.cloud=not-a-number\n");
+
+        assertTrue(new ZoneCache(file, Duration.ofMinutes(5), Clock.systemUTC()).read().isEmpty());
+    }
+
+    @Test
+    void accountKeyDependsOnApiKeyAndBaseUri() {
+        URI baseUri = URI.create("https://example.org/api/");
+        assertEquals(ZoneCache.accountKey(baseUri, "a"), ZoneCache.accountKey(baseUri, "a"));
+        assertNotEquals(ZoneCache.accountKey(baseUri, "a"), ZoneCache.accountKey(baseUri, "b"));
+        assertNotEquals(ZoneCache.accountKey(baseUri, "a"), ZoneCache.accountKey(URI.create("https://other.org/"), "a"));
+    }
+}
@@ -0,0 +1,30 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainNamesTest {
+
+    @Test
+    void normalizeLowercasesAndStripsTrailingDot() {
+        assertEquals("www.example.org", DomainNames.normalize("WWW.Example.org."));
+        assertEquals("example.org", DomainNames.normalize("example.org"));
+        assertEquals("", DomainNames.normalize("."));
+    }
+
+    @Test
+    void unquoteStripsOnePairOfQuotes() {
+        assertEquals("v=spf1 -all", DomainNames.unquote("\"v=spf1 -all\""));
+        assertEquals("\"inner\"", DomainNames.unquote("\"\"inner\"\""));
+        assertEquals("\"", DomainNames.unquote("\""));
+        assertEquals("unquoted", DomainNames.unquote("unquoted"));
+    }
+
+    @Test
+    void normalizeValueDependsOnType() {
+        assertEquals("Token-1", DomainNames.normalizeValue("txt", "\"Token-1\""));
+        assertEquals("www.example.org", DomainNames.normalizeValue("CNAME", "WWW.example.org."));
+        assertEquals("10 mail.example.org", DomainNames.normalizeValue("MX", "10 Mail.example.org."));
+    }
+}
@@ -0,0 +1,183 @@
+package cloud.marton.hostup_dns_client.dns;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropagationCheckerTest {
+
+    private static final String CHALLENGE = "_acme-challenge.www.example.org";
+    private static final String VALUE = "MsijOYZxqyjGnFGwhjrhfg-Xgbl5r68WPda0J9EgqqI";
+
+    private DatagramSocket socket;
+    private Thread server;
+    // The TXT record is served from this query on, 0 never
+    private volatile int servedFromQuery;
+    private final AtomicInteger txtQueries = new AtomicInteger();
+
+    @BeforeEach
+    void startStubDns() throws IOException {
+        socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server = Thread.ofPlatform().daemon().start(this::serve);
+    }
+
+    @AfterEach
+    void stopStubDns() throws InterruptedException {
+        socket.close();
+        server.join();
+    }
+
+    @Test
+    void returnsOnceAllNameserversServeTheRecord() throws Exception {
+        servedFromQuery = 3;
+
+        PropagationChecker.Result result = checker(Duration.ofSeconds(10)).await(CHALLENGE + ".", "\"" + VALUE + "\"");
+
+        assertTrue(result.propagated(), result.toString());
+        assertEquals(List.of(), result.pending());
+        assertEquals(3, txtQueries.get());
+    }
+
+    @Test
+    void reportsNameserversThatDoNotServeTheRecordInTime() throws Exception {
+        servedFromQuery = 0;
+
+        PropagationChecker.Result result = checker(Duration.ofMillis(300)).await(CHALLENGE, VALUE);
+
+        assertFalse(result.propagated());
+        assertEquals(List.of("ns1.example.org"), result.pending());
+        assertTrue(txtQueries.get() >= 2, "polls until the timeout");
+    }
+
+    @Test
+    void disabledDoesNotQuery() throws Exception {
+        assertTrue(PropagationChecker.disabled().await(CHALLENGE, VALUE).propagated());
+        assertEquals(0, txtQueries.get());
+    }
+
+    @Test
+    void parsesResolverAddress() throws Exception {
+        assertEquals(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 5353), PropagationChecker.resolver("127.0.0.1:5353"));
+        assertEquals(new InetSocketAddress(InetAddress.getByName("::1"), 53), PropagationChecker.resolver("[::1]"));
+        assertThrows(IOException.class, () -> PropagationChecker.resolver("127.0.0.1:dns"));
+    }
+
+    private PropagationChecker checker(Duration timeout) {
+        InetSocketAddress address = (InetSocketAddress) socket.getLocalSocketAddress();
+        return new PropagationChecker(address, address.getPort(), timeout, Duration.ofMillis(50));
+    }
+
+    /**
+     * Resolver and the only nameserver of example.org in one
+     */
+    private void serve() {
+        byte[] buffer = new byte[512];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                ByteBuffer query = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+                int id = Short.toUnsignedInt(query.getShort());
+                query.position(12);
+                String name = readName(query);
+                int type = Short.toUnsignedInt(query.getShort());
+                byte[] response = respond(id, name, type);
+                socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private byte[] respond(int id, String name, int type) {
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        ByteArrayOutputStream additionals = new ByteArrayOutputStream();
+        int answerCount = 0;
+        int additionalCount = 0;
+        if (type == DnsMessage.TYPE_NS && name.equals("example.org")) {
+            answerCount = 1;
+            writeRecord(answers, DnsMessage.TYPE_NS, encodeName("ns1.example.org"));
+            additionalCount = 1;
+            additionals.writeBytes(encodeName("ns1.example.org"));
+            writeRecordTail(additionals, DnsMessage.TYPE_A, new byte[]{127, 0, 0, 1});
+        } else if (type == DnsMessage.TYPE_TXT && name.equals(CHALLENGE)) {
+            int queries = txtQueries.incrementAndGet();
+            if (servedFromQuery > 0 && queries >= servedFromQuery) {
+                answerCount = 1;
+                byte[] text = VALUE.getBytes(StandardCharsets.US_ASCII);
+                byte[] rdata = new byte[text.length + 1];
+                rdata[0] = (byte) text.length;
+                System.arraycopy(text, 0, rdata, 1, text.length);
+                writeRecord(answers, DnsMessage.TYPE_TXT, rdata);
+            }
+        }
+        ByteBuffer response = ByteBuffer.allocate(512);
+        response.putShort((short) id);
+        response.putShort((short) 0x8400);
+        response.putShort((short) 1);
+        response.putShort((short) answerCount);
+        response.putShort((short) 0);
+        response.putShort((short) additionalCount);
+        response.put(encodeName(name));
+        response.putShort((short) type);
+        response.putShort((short) 1);
+        response.put(answers.toByteArray());
+        response.put(additionals.toByteArray());
+        byte[] bytes = new byte[response.position()];
+        response.flip().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * The owner is a compression pointer to the name of the question
+     */
+    private static void writeRecord(ByteArrayOutputStream output, int type, byte[] rdata) {
+        output.write(0xC0);
+        output.write(12);
+        writeRecordTail(output, type, rdata);
+    }
+
+    private static void writeRecordTail(ByteArrayOutputStream output, int type, byte[] rdata) {
+        ByteBuffer tail = ByteBuffer.allocate(10 + rdata.length);
+        tail.putShort((short) type).putShort((short) 1).putInt(300).putShort((short) rdata.length).put(rdata);
+        output.writeBytes(tail.array());
+    }
+
+    private static byte[] encodeName(String name) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (String label : name.split("\\.")) {
+            output.write(label.length());
+            output.writeBytes(label.getBytes(StandardCharsets.US_ASCII));
+        }
+        output.write(0);
+        return output.toByteArray();
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        StringBuilder name = new StringBuilder();
+        int length;
+        while ((length = buffer.get()) != 0) {
+            byte[] label = new byte[length];
+            buffer.get(label);
+            name.append(name.isEmpty() ? "" : ".").append(new String(label, StandardCharsets.US_ASCII));
+        }
+        return name.toString().toLowerCase();
+    }
+}
@@ -3,12 +3,17 @@ package cloud.marton.hostup_dns_client.json;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -17,6 +22,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  */
 class DslJsonFactoryTest {
 
+    private static final Path FACTORY_SOURCE =
+            Path.of("src", "main", "java", "cloud", "marton", "hostup_dns_client", "json", "DslJsonFactory.java");
+    private static final Path NATIVE_IMAGE_PROPERTIES =
+            Path.of("src", "main", "resources", "META-INF", "native-image", "cloud.marton", "hostup-dns-client", "native-image.properties");
+    private static final Pattern REGISTERED_CONVERTER =
+            Pattern.compile("new (cloud\\.marton\\.hostup_dns_client\\.model\\._[\\w$]+_DslJsonConverter)\\(\\)");
+    private static final String INITIALIZE_AT_BUILD_TIME = "--initialize-at-build-time=";
+
     @Test
     void allGeneratedConvertersAreRegistered() throws IOException {
         Path generatedDir = Path.of(
@@ -39,9 +52,7 @@ class DslJsonFactoryTest {
                     .map(name -> name.substring(0, name.length() - ".java".length()))
                     .collect(Collectors.toSet());
 
-            String factorySource = Files.readString(
-                    Path.of("src", "main", "java", "cloud", "marton", "hostup_dns_client", "json", "DslJsonFactory.java")
-            );
+            String factorySource = Files.readString(FACTORY_SOURCE);
 
             for (String converter : converterClasses) {
                 String fqdn = "cloud.marton.hostup_dns_client.model." + converter;
@@ -52,4 +63,31 @@ class DslJsonFactoryTest {
             }
         }
     }
+
+    /**
+     * A converter registered in {@link DslJsonFactory} but not initialized at build time fails the native image build,
+     * one initialized but no longer generated too
+     */
+    @Test
+    void nativeImageInitializesExactlyTheRegisteredConvertersAtBuildTime() throws IOException {
+        Set<String> registered = REGISTERED_CONVERTER.matcher(Files.readString(FACTORY_SOURCE))
+                .results()
+                .map(match -> match.group(1))
+                .collect(Collectors.toSet());
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(NATIVE_IMAGE_PROPERTIES)) {
+            properties.load(reader);
+        }
+        Set<String> initializedAtBuildTime = Arrays.stream(properties.getProperty("Args").split("\\s+"))
+                .filter(arg -> arg.startsWith(INITIALIZE_AT_BUILD_TIME))
+                .flatMap(arg -> Arrays.stream(arg.substring(INITIALIZE_AT_BUILD_TIME.length()).split(",")))
+                .map(String::strip)
+                .collect(Collectors.toSet());
+
+        assertTrue(initializedAtBuildTime.contains(DslJsonFactory.class.getName()));
+        assertEquals(registered, initializedAtBuildTime.stream()
+                .filter(className -> className.endsWith("_DslJsonConverter"))
+                .collect(Collectors.toSet()));
+    }
 }
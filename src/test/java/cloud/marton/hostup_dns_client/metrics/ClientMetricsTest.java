@@ -0,0 +1,136 @@
+package cloud.marton.hostup_dns_client.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientMetricsTest {
+
+    @Test
+    void histogramBucketsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        long[] counts = histogram.cumulativeCounts();
+        assertEquals(2, counts[0], "le=0.005 includes the bound");
+        assertEquals(2, counts[2]);
+        assertEquals(3, counts[3]);
+        assertEquals(3, counts[counts.length - 2]);
+        assertEquals(4, counts[counts.length - 1]);
+        assertEquals(4, histogram.count());
+        assertEquals(60.048, histogram.sumSeconds(), 1e-9);
+    }
+
+    @Test
+    void quantileIsInterpolatedInsideBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertTrue(histogram.quantileNanos(0.95).isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(60));
+        }
+        // All observations are in the bucket from 50ms to 100ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(75), histogram.quantileNanos(0.5).orElseThrow());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.quantileNanos(1).orElseThrow());
+
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+        assertEquals(TimeUnit.SECONDS.toNanos(30), histogram.quantileNanos(1).orElseThrow(), "capped at the largest bound");
+    }
+
+    @Test
+    void writesPrometheusText() throws Exception {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.response(Endpoint.LIST_RECORDS, 429, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.response(Endpoint.LIST_RECORDS, 200, TimeUnit.MILLISECONDS.toNanos(80));
+        metrics.retry(Endpoint.LIST_RECORDS);
+        metrics.hedge(Endpoint.LIST_RECORDS);
+        metrics.backoff(Endpoint.LIST_RECORDS, TimeUnit.MILLISECONDS.toNanos(1500));
+        metrics.bytesReceived(Endpoint.LIST_RECORDS, 1234);
+
+        StringWriter output = new StringWriter();
+        metrics.writePrometheus(output);
+        String text = output.toString();
+
+        assertTrue(text.contains("# TYPE hostup_api_request_duration_seconds histogram\n"), text);
+        assertTrue(text.contains("hostup_api_request_duration_seconds_bucket{endpoint=\"records_list\",le=\"0.05\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_request_duration_seconds_bucket{endpoint=\"records_list\",le=\"0.1\"} 2\n"), text);
+        assertTrue(text.contains("hostup_api_request_duration_seconds_bucket{endpoint=\"records_list\",le=\"+Inf\"} 2\n"), text);
+        assertTrue(text.contains("hostup_api_request_duration_seconds_count{endpoint=\"records_list\"} 2\n"), text);
+        assertTrue(text.contains("hostup_api_responses_total{endpoint=\"records_list\",code=\"200\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_responses_total{endpoint=\"records_list\",code=\"429\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_retries_total{endpoint=\"records_list\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_hedged_requests_total{endpoint=\"records_list\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_backoff_seconds_total{endpoint=\"records_list\"} 1.5\n"), text);
+        assertTrue(text.contains("hostup_api_response_bytes_total{endpoint=\"records_list\"} 1234\n"), text);
+        assertTrue(text.contains("hostup_api_retries_total{endpoint=\"zones\"} 0\n"), text);
+        assertTrue(text.indexOf("code=\"200\"") < text.indexOf("code=\"429\""), "status codes are sorted");
+    }
+
+    @Test
+    void writesCircuitState() throws Exception {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.circuitState("open");
+        metrics.rejected(Endpoint.ZONES);
+        metrics.circuitState("half_open");
+
+        StringWriter output = new StringWriter();
+        metrics.writePrometheus(output);
+        String text = output.toString();
+
+        assertTrue(text.contains("hostup_api_circuit_state{state=\"closed\"} 0\n"), text);
+        assertTrue(text.contains("hostup_api_circuit_state{state=\"half_open\"} 1\n"), text);
+        assertTrue(text.contains("hostup_api_circuit_opened_total 1\n"), text);
+        assertTrue(text.contains("hostup_api_rejected_requests_total{endpoint=\"zones\"} 1\n"), text);
+        assertThrows(IllegalArgumentException.class, () -> metrics.circuitState("ajar"));
+    }
+
+    @Test
+    void sumAddsUpClients() throws Exception {
+        ClientMetrics first = new ClientMetrics();
+        first.response(Endpoint.ZONES, 200, TimeUnit.MILLISECONDS.toNanos(20));
+        first.retry(Endpoint.ZONES);
+        ClientMetrics second = new ClientMetrics();
+        second.response(Endpoint.ZONES, 200, TimeUnit.MILLISECONDS.toNanos(40));
+        second.response(Endpoint.ZONES, 503, TimeUnit.MILLISECONDS.toNanos(40));
+        second.circuitState("open");
+
+        ClientMetrics sum = ClientMetrics.sum(List.of(first, second));
+
+        assertEquals(2, sum.responses(Endpoint.ZONES, 200));
+        assertEquals(1, sum.responses(Endpoint.ZONES, 503));
+        assertEquals(1, sum.retries(Endpoint.ZONES));
+        assertEquals(3, sum.latency(Endpoint.ZONES).count());
+        assertEquals(0.1, sum.latency(Endpoint.ZONES).sumSeconds(), 1e-9);
+        assertEquals("open", sum.circuitState(), "the least healthy client");
+        StringWriter output = new StringWriter();
+        sum.writePrometheus(output);
+        assertTrue(output.toString().contains("hostup_api_circuit_opened_total 1\n"), output.toString());
+    }
+
+    @Test
+    void writeToReplacesFile(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("hostup_dns_client.prom");
+        Files.writeString(file, "stale");
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.retry(Endpoint.SET_RECORD);
+
+        metrics.writeTo(file);
+
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        assertTrue(text.contains("hostup_api_retries_total{endpoint=\"record_set\"} 1\n"), text);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "no temporary file is left behind");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cloud.marton.hostup_dns_client.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApiResponseTest {
+
+    @Test
+    void responsesWithEqualBodiesAreEqual() {
+        ApiResponse response = new ApiResponse(true, 200, "{\"success\":true}".getBytes(StandardCharsets.UTF_8), null);
+        ApiResponse same = new ApiResponse(true, 200, "{\"success\":true}".getBytes(StandardCharsets.UTF_8), null);
+
+        assertEquals(response, same);
+        assertEquals(response.hashCode(), same.hashCode());
+        assertNotEquals(response, new ApiResponse(true, 200, "{}".getBytes(StandardCharsets.UTF_8), null));
+    }
+
+    @Test
+    void stringBodyIsEncodedAsUtf8() {
+        ApiResponse response = new ApiResponse(false, 404, "{\"message\":\"R\u00e4ttigheter saknas\"}", null);
+
+        assertEquals("{\"message\":\"R\u00e4ttigheter saknas\"}", response.body());
+        assertArrayEquals("{\"message\":\"R\u00e4ttigheter saknas\"}".getBytes(StandardCharsets.UTF_8), response.rawBody());
+    }
+
+    @Test
+    void toStringShowsTheBody() {
+        ApiResponse response = new ApiResponse(false, 500, "Internal Server Error", null);
+
+        assertEquals("ApiResponse[success=false, httpStatus=500, body=Internal Server Error, parsedResponse=null]",
+                response.toString());
+    }
+}
@@ -0,0 +1,49 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightLimitTest {
+
+    @Test
+    void permitsAreHandedOutUpToTheLimit() {
+        InFlightLimit limit = new InFlightLimit(2);
+
+        assertTrue(limit.acquire().isDone());
+        assertTrue(limit.acquire().isDone());
+        CompletableFuture<Void> third = limit.acquire();
+
+        assertFalse(third.isDone());
+        assertEquals(2, limit.inFlight());
+        assertEquals(1, limit.waiting());
+    }
+
+    @Test
+    void releaseHandsPermitToLongestWaiting() {
+        InFlightLimit limit = new InFlightLimit(1);
+        limit.acquire();
+        CompletableFuture<Void> second = limit.acquire();
+        CompletableFuture<Void> third = limit.acquire();
+
+        limit.release();
+
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1, limit.inFlight());
+
+        limit.release();
+        limit.release();
+
+        assertTrue(third.isDone());
+        assertEquals(0, limit.inFlight());
+        assertTrue(limit.acquire().isDone());
+    }
+
+    @Test
+    void limitMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new InFlightLimit(0));
+    }
+}
@@ -0,0 +1,62 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitHeadersTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-01-04T09:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    void parsesRetryAfterSecondsAndRateLimitHeaders() {
+        RateLimitHeaders headers = RateLimitHeaders.from(headers(Map.of(
+                "Retry-After", "7",
+                "X-RateLimit-Limit", "60",
+                "X-RateLimit-Remaining", "0",
+                "X-RateLimit-Reset", "42")), CLOCK);
+
+        assertEquals(Optional.of(Duration.ofSeconds(7)), headers.retryAfter());
+        assertEquals(60, headers.limit().orElseThrow());
+        assertEquals(0, headers.remaining().orElseThrow());
+        assertEquals(Optional.of(Duration.ofSeconds(42)), headers.reset());
+    }
+
+    @Test
+    void parsesHttpDateAndEpochReset() {
+        long epochReset = CLOCK.instant().getEpochSecond() + 30;
+        RateLimitHeaders headers = RateLimitHeaders.from(headers(Map.of(
+                "Retry-After", "Sun, 04 Jan 2026 09:00:15 GMT",
+                "X-RateLimit-Reset", Long.toString(epochReset))), CLOCK);
+
+        assertEquals(Optional.of(Duration.ofSeconds(15)), headers.retryAfter());
+        assertEquals(Optional.of(Duration.ofSeconds(30)), headers.reset());
+    }
+
+    @Test
+    void missingAndMalformedHeadersAreEmpty() {
+        RateLimitHeaders headers = RateLimitHeaders.from(headers(Map.of(
+                "Retry-After", "soon",
+                "X-RateLimit-Remaining", "many")), CLOCK);
+
+        assertTrue(headers.retryAfter().isEmpty());
+        assertTrue(headers.remaining().isEmpty());
+        assertTrue(headers.limit().isEmpty());
+        assertTrue(headers.reset().isEmpty());
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        return HttpHeaders.of(values.entrySet().stream()
+                        .collect(java.util.stream.Collectors.toMap(Map.Entry::getKey, e -> List.of(e.getValue()))),
+                (name, value) -> true);
+    }
+}
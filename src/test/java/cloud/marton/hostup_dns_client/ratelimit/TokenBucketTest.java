@@ -0,0 +1,68 @@
+package cloud.marton.hostup_dns_client.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void burstIsFreeThenRequestsArePaced() {
+        TokenBucket bucket = new TokenBucket(2, 2, now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), bucket.reserve());
+    }
+
+    @Test
+    void tokensRefillOverTime() {
+        TokenBucket bucket = new TokenBucket(2, 2, now::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertTrue(bucket.reserve() > 0, "refill must not exceed capacity");
+    }
+
+    @Test
+    void adjustRateNeverExceedsConfiguredMaximum() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+
+        bucket.adjustRate(100);
+        assertEquals(10, bucket.rate());
+
+        bucket.adjustRate(1);
+        assertEquals(1, bucket.rate());
+        bucket.reserve();
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve());
+    }
+
+    @Test
+    void unlimitedNeverWaits() {
+        TokenBucket bucket = TokenBucket.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, bucket.reserve());
+        }
+    }
+
+    @Test
+    void unlimitedIgnoresRateAdjustments() {
+        TokenBucket bucket = TokenBucket.unlimited();
+
+        bucket.adjustRate(1);
+
+        assertEquals(Double.POSITIVE_INFINITY, bucket.rate());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+    }
+}
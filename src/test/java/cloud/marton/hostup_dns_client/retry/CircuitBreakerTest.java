@@ -0,0 +1,136 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(true, 4, 2, 0.5, Duration.ofSeconds(1), 0.75, Duration.ofSeconds(30), now::get);
+
+    @Test
+    void opensWhenFailureRateIsReached() {
+        long permit = acquire();
+        breaker.onResult(permit, true, FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state(), "fewer than the minimum calls");
+
+        permit = acquire();
+        breaker.onResult(permit, false, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertTrue(breaker.isOpen());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(Duration.ofSeconds(30), breaker.remainingOpen());
+    }
+
+    @Test
+    void opensWhenRequestsAreSlow() {
+        for (int i = 0; i < 2; i++) {
+            breaker.onResult(acquire(), false, TimeUnit.SECONDS.toNanos(2));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        for (boolean failure : new boolean[]{false, false, true, false, false, false, false, true}) {
+            breaker.onResult(acquire(), failure, FAST);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state(), "1 of the last 4 failed");
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThrough() {
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        breaker.addListener((from, to) -> states.add(to));
+        open();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        assertFalse(breaker.isOpen());
+        long probe = acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(), "only one probe at a time");
+
+        breaker.onResult(probe, false, FAST);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        acquire();
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), states);
+    }
+
+    @Test
+    void failedProbeOpensAgain() {
+        open();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        long probe = acquire();
+
+        breaker.onResult(probe, true, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(Duration.ofSeconds(30), breaker.remainingOpen());
+    }
+
+    @Test
+    void staleSuccessDoesNotCloseWhileHalfOpen() {
+        long stale = acquire();
+        open();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        long probe = acquire();
+
+        breaker.onResult(stale, false, FAST);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state(), "sent before the circuit opened");
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire(), "the probe is still in flight");
+
+        breaker.onResult(probe, true, FAST);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void cancelledProbeLetsNextOneThrough() {
+        open();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        long probe = acquire();
+
+        breaker.onCancelled(probe);
+
+        acquire();
+    }
+
+    @Test
+    void disabledNeverOpens() {
+        CircuitBreaker disabled = CircuitBreaker.disabled();
+        for (int i = 0; i < 100; i++) {
+            long permit = disabled.tryAcquire();
+            assertNotEquals(CircuitBreaker.REJECTED, permit);
+            disabled.onResult(permit, true, FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, disabled.state());
+    }
+
+    private long acquire() {
+        long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, permit);
+        return permit;
+    }
+
+    private void open() {
+        for (int i = 0; i < 2; i++) {
+            breaker.onResult(acquire(), true, FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+}
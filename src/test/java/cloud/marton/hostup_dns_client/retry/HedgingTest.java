@@ -0,0 +1,37 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import cloud.marton.hostup_dns_client.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingTest {
+
+    @Test
+    void delayIsMaxUntilEnoughSamples() {
+        LatencyHistogram latency = new LatencyHistogram();
+        latency.record(TimeUnit.MILLISECONDS.toNanos(60));
+
+        assertEquals(Duration.ofSeconds(5).toNanos(), Hedging.p95().delayNanos(latency));
+    }
+
+    @Test
+    void delayFollowsQuantileWithinBounds() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        LatencyHistogram typical = new LatencyHistogram();
+        for (int i = 0; i < Hedging.MIN_SAMPLES; i++) {
+            fast.record(TimeUnit.MILLISECONDS.toNanos(1));
+            slow.record(TimeUnit.SECONDS.toNanos(20));
+            typical.record(TimeUnit.MILLISECONDS.toNanos(200));
+        }
+
+        assertEquals(Duration.ofMillis(50).toNanos(), Hedging.p95().delayNanos(fast));
+        assertEquals(Duration.ofSeconds(5).toNanos(), Hedging.p95().delayNanos(slow));
+        long delay = Hedging.p95().delayNanos(typical);
+        assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(100) && delay <= TimeUnit.MILLISECONDS.toNanos(250), () -> "delay: " + delay);
+    }
+}
@@ -0,0 +1,74 @@
+package cloud.marton.hostup_dns_client.retry;
+
+import cloud.marton.hostup_dns_client.model.ErrorResponse;
+import cloud.marton.hostup_dns_client.retry.RetryPolicy.Classification;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StandardRetryPolicyTest {
+
+    private final StandardRetryPolicy policy = StandardRetryPolicy.of(6, 1000L);
+
+    @Test
+    void statusCodesAreClassified() {
+        assertEquals(Classification.RATE_LIMITED, policy.classify("POST", 429, null));
+        assertEquals(Classification.TRANSIENT, policy.classify("GET", 503, null));
+        assertEquals(Classification.FATAL, policy.classify("POST", 503, null), "the record may have been added");
+        assertEquals(Classification.FATAL, policy.classify("GET", 404, null));
+    }
+
+    @Test
+    void errorCodesAreClassified() {
+        ErrorResponse busy = new ErrorResponse("Busy", "Try again", "TEMPORARILY_UNAVAILABLE", "2025-01-01T00:00:00Z", "1");
+        assertEquals(Classification.FATAL, policy.classify("GET", 400, busy));
+
+        StandardRetryPolicy withErrorCodes = policy.withTransientErrorCodes(Set.of("TEMPORARILY_UNAVAILABLE"));
+
+        assertEquals(Classification.TRANSIENT, withErrorCodes.classify("GET", 400, busy));
+        assertEquals(Classification.FATAL, withErrorCodes.classify("DELETE", 400, busy));
+    }
+
+    @Test
+    void exceptionsAreClassified() {
+        assertEquals(Classification.TRANSIENT, policy.classify("POST", new ConnectException("Connection refused")));
+        assertEquals(Classification.TRANSIENT, policy.classify("GET", new CompletionException(new HttpTimeoutException("request timed out"))));
+        assertEquals(Classification.FATAL, policy.classify("POST", new HttpTimeoutException("request timed out")));
+        assertEquals(Classification.FATAL, policy.classify("GET", new IllegalStateException()));
+    }
+
+    @Test
+    void budgetsAreSeparate() {
+        StandardRetryPolicy twoTransient = policy.withTransientRetries(2, Duration.ofMillis(100));
+
+        assertEquals(6, twoTransient.maxRetries(Classification.RATE_LIMITED));
+        assertEquals(2, twoTransient.maxRetries(Classification.TRANSIENT));
+        assertEquals(0, twoTransient.maxRetries(Classification.FATAL));
+    }
+
+    @Test
+    void backoffDoublesUpToTwoMinutes() {
+        long first = policy.backoff(Classification.RATE_LIMITED, 1).toMillis();
+        long third = policy.backoff(Classification.RATE_LIMITED, 3).toMillis();
+        long late = policy.backoff(Classification.RATE_LIMITED, 20).toMillis();
+
+        assertTrue(first >= 1000 && first < 1500, () -> "first: " + first);
+        assertTrue(third >= 4000 && third < 4500, () -> "third: " + third);
+        assertTrue(late >= 120_000 && late < 120_500, () -> "late: " + late);
+    }
+
+    @Test
+    void retryBudgetAddsUpAllBackoffs() {
+        StandardRetryPolicy small = StandardRetryPolicy.of(2, 1000L).withTransientRetries(1, Duration.ofMillis(100));
+
+        long budget = small.retryBudget().toMillis();
+
+        assertTrue(budget >= 3100 && budget < 4600, () -> "budget: " + budget);
+    }
+}
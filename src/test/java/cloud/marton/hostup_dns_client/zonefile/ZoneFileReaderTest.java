@@ -0,0 +1,98 @@
+package cloud.marton.hostup_dns_client.zonefile;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneFileReaderTest {
+
+    @Test
+    void readsRecordsOfZoneFile() throws IOException {
+        List<ParsedRecord> records = readAll(new ZoneFileReader(reader("""
+                $ORIGIN example.org.
+                $TTL 1h
+                ; the SOA spans several lines
+                @   IN  SOA ns1.example.org. hostmaster.example.org. (
+                        2026010101 ; serial
+                        7200 3600 1209600 300 )
+                @       IN  NS   ns1.hostup.se.
+                        IN  MX   10 mail
+                www 300 IN  A    192.0.2.1
+                www IN 600  AAAA 2001:db8::1
+                alias       CNAME www.example.org.
+                @           TXT  "v=spf1 include:_spf.example.org -all"
+                long        TXT  "first part " "second \\"part\\""
+                """), "fallback.org", 3600));
+
+        assertEquals(List.of(
+                new ParsedRecord(4, "example.org", "SOA", "ns1.example.org. hostmaster.example.org. 2026010101 7200 3600 1209600 300", 3600),
+                new ParsedRecord(7, "example.org", "NS", "ns1.hostup.se", 3600),
+                new ParsedRecord(8, "example.org", "MX", "10 mail.example.org", 3600),
+                new ParsedRecord(9, "www.example.org", "A", "192.0.2.1", 300),
+                new ParsedRecord(10, "www.example.org", "AAAA", "2001:db8::1", 600),
+                new ParsedRecord(11, "alias.example.org", "CNAME", "www.example.org", 3600),
+                new ParsedRecord(12, "example.org", "TXT", "v=spf1 include:_spf.example.org -all", 3600),
+                new ParsedRecord(13, "long.example.org", "TXT", "first part second \"part\"", 3600)), records);
+    }
+
+    @Test
+    void relativeNamesUseZoneWithoutOrigin() throws IOException {
+        List<ParsedRecord> records = readAll(new ZoneFileReader(reader("www IN A 192.0.2.1\n"), "Example.org.", 3600));
+
+        assertEquals(List.of(new ParsedRecord(1, "www.example.org", "A", "192.0.2.1", 3600)), records);
+    }
+
+    @Test
+    void malformedLineIsReportedAndSkipped() throws IOException {
+        ZoneFileReader reader = new ZoneFileReader(reader("""
+                www IN A
+                ftp IN A 192.0.2.2
+                """), "example.org", 3600);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, reader::next);
+        assertTrue(exception.getMessage().startsWith("Line 1"), exception.getMessage());
+        assertEquals("ftp.example.org", reader.next().name());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void parseTtl() {
+        assertEquals(3600, ZoneFileReader.parseTtl("3600").orElseThrow());
+        assertEquals(5400, ZoneFileReader.parseTtl("1h30m").orElseThrow());
+        assertEquals(604800, ZoneFileReader.parseTtl("1W").orElseThrow());
+        assertTrue(ZoneFileReader.parseTtl("IN").isEmpty());
+        assertTrue(ZoneFileReader.parseTtl("www").isEmpty());
+    }
+
+    @Test
+    void readsCsv() throws IOException {
+        List<ParsedRecord> records = readAll(new CsvRecordReader(reader("""
+                name,type,value,ttl
+                www.example.org.,a,192.0.2.1,300
+                example.org,TXT,\"""v=spf1, -all\""",
+                """), 3600));
+
+        assertEquals(List.of(
+                new ParsedRecord(2, "www.example.org", "A", "192.0.2.1", 300),
+                new ParsedRecord(3, "example.org", "TXT", "v=spf1, -all", 3600)), records);
+    }
+
+    private static BufferedReader reader(String content) {
+        return new BufferedReader(new StringReader(content));
+    }
+
+    private static List<ParsedRecord> readAll(RecordReader reader) throws IOException {
+        List<ParsedRecord> records = new ArrayList<>();
+        ParsedRecord record;
+        while ((record = reader.next()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+}